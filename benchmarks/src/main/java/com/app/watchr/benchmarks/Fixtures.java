@@ -0,0 +1,118 @@
+package com.app.watchr.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the inputs shared by the benchmarks. Tag listings use the same shape as a docker hub
+ * "/v2/repositories/{image}/tags" response and inspect payloads the shape of "docker container inspect".
+ * Everything is generated from a fixed seed so runs are comparable.
+ */
+final class Fixtures {
+    private static final String[] SUFFIXES = { "", "", "", "", "-alpine", "-slim", "-rc.1", "-beta.2" };
+    private static final String[] ARCHITECTURES = { "amd64", "arm64", "arm" };
+
+    private Fixtures() {}
+
+    /**
+     * @param count int number of tags
+     * @return List of tag names in a random order, mostly semantic versions with a few suffixes and non-version tags
+     */
+    static List<String> tagNames(final int count) {
+        final Random random = new Random(42);
+        final List<String> names = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            if(i % 100 == 0) {
+                names.add(i == 0 ? "latest" : "nightly-" + i);
+                continue;
+            }
+            names.add(random.nextInt(5) + "." + random.nextInt(40) + "." + i + SUFFIXES[random.nextInt(SUFFIXES.length)]);
+        }
+        Collections.shuffle(names, random);
+        return names;
+    }
+
+    /**
+     * @param names List of tag names
+     * @return byte[] a single tag listing page holding every tag
+     */
+    static byte[] tagPage(final List<String> names) {
+        final StringBuilder json = new StringBuilder(names.size() * 700);
+        json.append("{\"count\":").append(names.size()).append(",\"next\":null,\"previous\":null,\"results\":[");
+        for(int i = 0; i < names.size(); i++) {
+            if(i > 0) json.append(',');
+            json.append("{\"creator\":1234,\"id\":").append(100000 + i)
+                .append(",\"images\":[");
+            for(int a = 0; a < ARCHITECTURES.length; a++) {
+                if(a > 0) json.append(',');
+                json.append("{\"architecture\":\"").append(ARCHITECTURES[a]).append("\",\"features\":\"\",\"variant\":")
+                    .append("arm".equals(ARCHITECTURES[a]) ? "\"v7\"" : "null")
+                    .append(",\"digest\":\"sha256:").append(digest(i * 10 + a))
+                    .append("\",\"os\":\"linux\",\"os_features\":\"\",\"os_version\":null,\"size\":").append(25000000 + i)
+                    .append(",\"status\":\"active\",\"last_pulled\":\"2023-11-20T08:12:44.148Z\",\"last_pushed\":\"2023-11-01T10:00:00.000Z\"}");
+            }
+            json.append("],\"last_updated\":\"2023-11-01T10:00:00.").append(String.format("%06d", i)).append("Z\"")
+                .append(",\"last_updater\":5678,\"last_updater_username\":\"cbartram\",\"name\":\"").append(names.get(i))
+                .append("\",\"repository\":987,\"full_size\":").append(25000000 + i)
+                .append(",\"v2\":true,\"tag_status\":\"active\",\"tag_last_pulled\":\"2023-11-20T08:12:44.148Z\"")
+                .append(",\"tag_last_pushed\":\"2023-11-01T10:00:00.000Z\",\"media_type\":\"application/vnd.oci.image.index.v1+json\"")
+                .append(",\"content_type\":\"image\",\"digest\":\"sha256:").append(digest(i)).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param envCount int number of environment variables
+     * @param portCount int number of published ports
+     * @return byte[] an inspect payload for a single container
+     */
+    static byte[] inspect(final int envCount, final int portCount) {
+        final StringBuilder json = new StringBuilder(envCount * 64 + portCount * 96 + 4096);
+        json.append("{\"Id\":\"").append(digest(1)).append("\",\"Created\":\"2023-11-01T10:00:00.000Z\",\"Path\":\"/docker-entrypoint.sh\",")
+            .append("\"Args\":[\"nginx\",\"-g\",\"daemon off;\"],")
+            .append("\"State\":{\"Status\":\"running\",\"Running\":true,\"Paused\":false,\"Restarting\":false,\"OOMKilled\":false,\"Dead\":false,")
+            .append("\"Pid\":4242,\"ExitCode\":0,\"Error\":\"\",\"StartedAt\":\"2023-11-01T10:00:01.000Z\",\"FinishedAt\":\"0001-01-01T00:00:00Z\"},")
+            .append("\"Image\":\"sha256:").append(digest(2)).append("\",\"Name\":\"/web\",\"RestartCount\":0,\"Driver\":\"overlay2\",");
+
+        json.append("\"HostConfig\":{\"NetworkMode\":\"backend\",\"RestartPolicy\":{\"Name\":\"unless-stopped\",\"MaximumRetryCount\":0},\"PortBindings\":{");
+        for(int i = 0; i < portCount; i++) {
+            if(i > 0) json.append(',');
+            json.append('"').append(8000 + i).append("/tcp\":[{\"HostIp\":\"\",\"HostPort\":\"").append(18000 + i).append("\"}]");
+        }
+        json.append("}},");
+
+        json.append("\"Mounts\":[{\"Type\":\"bind\",\"Source\":\"/srv/web\",\"Destination\":\"/usr/share/nginx/html\",\"Mode\":\"\",\"RW\":false,\"Propagation\":\"rprivate\"},")
+            .append("{\"Type\":\"volume\",\"Name\":\"cache\",\"Source\":\"/var/lib/docker/volumes/cache/_data\",\"Destination\":\"/cache\",\"Driver\":\"local\",\"Mode\":\"z\",\"RW\":true,\"Propagation\":\"\"}],");
+
+        json.append("\"Config\":{\"Hostname\":\"web\",\"Image\":\"nginx:1.25.3\",\"Env\":[");
+        for(int i = 0; i < envCount; i++) {
+            if(i > 0) json.append(',');
+            json.append("\"SETTING_").append(i).append("=value with spaces ").append(i).append('"');
+        }
+        json.append("],\"ExposedPorts\":{");
+        for(int i = 0; i < portCount; i++) {
+            if(i > 0) json.append(',');
+            json.append('"').append(8000 + i).append("/tcp\":{}");
+        }
+        json.append("},\"Labels\":{\"com.example.team\":\"web\",\"com.example.tier\":\"frontend\"},\"StopSignal\":\"SIGQUIT\"},");
+
+        json.append("\"NetworkSettings\":{\"Ports\":{");
+        for(int i = 0; i < portCount; i++) {
+            if(i > 0) json.append(',');
+            json.append('"').append(8000 + i).append("/tcp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"").append(18000 + i).append("\"}]");
+        }
+        json.append("},\"Networks\":{\"backend\":{\"Aliases\":[\"web\"],\"IPAddress\":\"172.18.0.2\"},\"monitoring\":{\"Aliases\":null,\"IPAddress\":\"172.19.0.2\"}}}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String digest(final int seed) {
+        final StringBuilder digest = new StringBuilder(64);
+        final Random random = new Random(seed);
+        while(digest.length() < 64) digest.append(Integer.toHexString(random.nextInt() & 0xf));
+        return digest.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.app.watchr.benchmarks;
+
+import com.app.watchr.RunCommandBuilder;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.ImageTag;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding docker hub pages and container inspect payloads, and building run arguments from large inspect payloads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetaDataBenchmark {
+
+    @Param({ "10", "1000" })
+    public int size;
+
+    private final ObjectReader imageTagReader = new ObjectMapper().readerFor(ImageTag.class);
+    private final ObjectReader metaDataReader = new ObjectMapper().readerFor(ContainerMetaData.class);
+    private final RunCommandBuilder runCommandBuilder = new RunCommandBuilder();
+    private byte[] page;
+    private byte[] inspect;
+    private ContainerMetaData metaData;
+
+    @Setup
+    public void setup() throws IOException {
+        page = Fixtures.tagPage(Fixtures.tagNames(size));
+        inspect = Fixtures.inspect(size, size);
+        metaData = metaDataReader.readValue(inspect);
+    }
+
+    @Benchmark
+    public ImageTag bindImageTag() throws IOException {
+        return imageTagReader.readValue(page);
+    }
+
+    @Benchmark
+    public ContainerMetaData bindInspect() throws IOException {
+        return metaDataReader.readValue(inspect);
+    }
+
+    @Benchmark
+    public List<String> getEnv() {
+        return runCommandBuilder.getEnv(metaData);
+    }
+
+    @Benchmark
+    public List<String> getPorts() {
+        return runCommandBuilder.getPorts(metaData);
+    }
+
+    @Benchmark
+    public List<String> build() {
+        return runCommandBuilder.build("web", "nginx:1.25.4", metaData, 0);
+    }
+}
@@ -0,0 +1,110 @@
+package com.app.watchr.benchmarks;
+
+import com.app.watchr.TagFilter;
+import com.app.watchr.Version;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPolicy;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.service.TagIndex;
+import com.app.watchr.service.TagReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The getRemoteVersions pipeline over a large repository: stream the listing, parse each tag into a version, sort,
+ * and merge the listing into a tag index (a cold start and an unchanged re-poll).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagPipelineBenchmark {
+
+    @Param({ "10000" })
+    public int tags;
+
+    private final TagReader tagReader = new TagReader(new ObjectMapper());
+    private final TagFilter tagFilter = new TagFilter(new TagPolicy());
+    private byte[] page;
+    private List<String> names;
+    private List<TagRecord> records;
+    private TagIndex warmIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        names = Fixtures.tagNames(tags);
+        page = Fixtures.tagPage(names);
+        records = read();
+        warmIndex = new TagIndex(64);
+        warmIndex.apply(records, true, null, null);
+    }
+
+    private List<TagRecord> read() throws IOException {
+        final List<TagRecord> read = new ArrayList<>(tags);
+        tagReader.read(new ByteArrayInputStream(page), tag -> {
+            final Version version = Version.parse(tag.getName());
+            if(version != null) read.add(TagRecord.of(tag, version));
+        });
+        return read;
+    }
+
+    @Benchmark
+    public List<Version> sortNames() {
+        final List<Version> versions = new ArrayList<>(names.size());
+        for(String name : names) {
+            final Version version = Version.parse(name);
+            if(version != null) versions.add(version);
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+
+    @Benchmark
+    public List<Version> readParseAndSort() throws IOException {
+        final List<Version> versions = new ArrayList<>(tags);
+        tagReader.read(new ByteArrayInputStream(page), tag -> {
+            final Version version = Version.parse(tag.getName());
+            if(version != null) versions.add(version);
+        });
+        Collections.sort(versions);
+        return tagFilter.filter(versions);
+    }
+
+    @Benchmark
+    public List<Tag> readOnly() throws IOException {
+        final List<Tag> read = new ArrayList<>(tags);
+        tagReader.read(new ByteArrayInputStream(page), read::add);
+        return read;
+    }
+
+    @Benchmark
+    public TagIndex coldIndex() {
+        final TagIndex index = new TagIndex(64);
+        index.apply(records, true, null, null);
+        return index;
+    }
+
+    @Benchmark
+    public Object unchangedRepoll() {
+        return warmIndex.apply(records, true, null, null);
+    }
+}
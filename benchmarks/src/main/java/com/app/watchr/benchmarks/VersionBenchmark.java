@@ -0,0 +1,81 @@
+package com.app.watchr.benchmarks;
+
+import com.app.watchr.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Version construction (uncached and interned) and comparison
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionBenchmark {
+
+    /**
+     * Version strings for the single version benchmarks, kept out of the outer state so the listing benchmarks don't run per value
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({ "1.0.10", "2.14.3-alpine", "v3.1.0-rc.1+build.7" })
+        public String version;
+    }
+
+    private String[] names;
+    private Version[] versions;
+    private int index;
+
+    @Setup
+    public void setup() {
+        final List<String> tagNames = Fixtures.tagNames(1024);
+        names = new String[tagNames.size()];
+        versions = new Version[tagNames.size()];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = tagNames.get(i);
+            versions[i] = Version.parse(names[i]);
+            if(versions[i] == null) versions[i] = Version.of("0.0." + i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        index = 0;
+    }
+
+    @Benchmark
+    public Version construct(final Input input) {
+        return new Version(input.version);
+    }
+
+    @Benchmark
+    public Version interned(final Input input) {
+        return Version.of(input.version);
+    }
+
+    @Benchmark
+    public Version parseListing() {
+        return Version.parse(names[index++ & (names.length - 1)]);
+    }
+
+    @Benchmark
+    public void compareTo(final Blackhole blackhole) {
+        final int i = index++ & (versions.length - 1);
+        blackhole.consume(versions[i].compareTo(versions[(i + 1) & (versions.length - 1)]));
+    }
+}
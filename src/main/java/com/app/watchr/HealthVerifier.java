@@ -0,0 +1,170 @@
+package com.app.watchr;
+
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.ContainerMetaData.PortBinding;
+import com.app.watchr.model.ContainerMetaData.State;
+import com.app.watchr.model.Watch;
+import com.app.watchr.service.DockerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a freshly started container to come up. Containers with a docker healthcheck must report
+ * "healthy" while containers without one must stay running for a short grace period. Watches with a
+ * health path are also probed over HTTP on the host port bound to their health port.
+ */
+@Slf4j
+@Component
+public class HealthVerifier {
+
+    private static final String HEALTHY = "healthy";
+    private static final String UNHEALTHY = "unhealthy";
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Value("${update.health.timeout:60}")
+    private long healthTimeout;
+
+    @Value("${update.health.interval:1}")
+    private long healthInterval;
+
+    @Value("${update.health.grace:5}")
+    private long healthGrace;
+
+    @Value("${update.health.probe.host:localhost}")
+    private String probeHost;
+
+    /**
+     * Blocks until the container is healthy, has failed, or the health timeout has passed
+     * @param containerName String container name or id
+     * @return Boolean true if the container is healthy and false otherwise
+     */
+    public boolean waitUntilHealthy(final String containerName) {
+        return waitUntilHealthy(containerName, null, null);
+    }
+
+    /**
+     * Blocks until the container is healthy and answers its watch's HTTP probe, has failed, or the health timeout has passed
+     * @param containerName String container name or id
+     * @param watch Watch the watch with the optional health path and port
+     * @return Boolean true if the container is healthy and false otherwise
+     */
+    public boolean waitUntilHealthy(final String containerName, final Watch watch) {
+        return waitUntilHealthy(containerName, watch.getHealthPath(), watch.getHealthPort());
+    }
+
+    /**
+     * Blocks until the container is healthy, has failed, or the health timeout has passed. When a probe path is given the
+     * container must also answer an HTTP GET on the host port bound to the probe port with a 2xx or 3xx status.
+     * @param containerName String container name or id
+     * @param probePath String path to probe or null to skip the HTTP probe
+     * @param probePort Integer container port to probe or null for the first published port
+     * @return Boolean true if the container is healthy and false otherwise
+     */
+    public boolean waitUntilHealthy(final String containerName, final String probePath, final Integer probePort) {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(healthTimeout);
+        long runningSince = -1;
+        boolean running = false;
+        String probeUrl = null;
+
+        while(System.currentTimeMillis() < deadline) {
+            final ContainerMetaData metaData = dockerService.getMetaData(containerName);
+            final State state = metaData == null ? null : metaData.getState();
+            if(state != null) {
+                if(!state.isRunning() && !state.isRestarting() && !"created".equals(state.getStatus())) {
+                    log.error("Container: {} is {} with exit code {}", containerName, state.getStatus(), state.getExitCode());
+                    return false;
+                }
+
+                if(!running && state.getHealth() != null) {
+                    if(HEALTHY.equals(state.getHealth().getStatus())) running = true;
+                    if(UNHEALTHY.equals(state.getHealth().getStatus())) {
+                        log.error("Container: {} reported as unhealthy by its healthcheck", containerName);
+                        return false;
+                    }
+                } else if(!running && state.isRunning() && !state.isRestarting()) {
+                    if(runningSince < 0) runningSince = System.currentTimeMillis();
+                    if(System.currentTimeMillis() - runningSince >= TimeUnit.SECONDS.toMillis(healthGrace)) running = true;
+                } else if(!running) {
+                    runningSince = -1;
+                }
+
+                if(running && probePath == null) return true;
+                if(running) {
+                    if(probeUrl == null) {
+                        final String hostPort = getHostPort(metaData, probePort);
+                        if(hostPort == null) {
+                            log.error("Container: {} has no host port bound to {} to probe", containerName, probePort == null ? "any port" : probePort);
+                            return false;
+                        }
+                        probeUrl = "http://" + probeHost + ":" + hostPort + (probePath.startsWith("/") ? "" : "/") + probePath;
+                    }
+                    if(probe(probeUrl)) return true;
+                }
+            }
+
+            try {
+                TimeUnit.SECONDS.sleep(healthInterval);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        log.error("Container: {} did not become healthy within {} seconds{}", containerName, healthTimeout, probeUrl == null ? "" : ", last probe: " + probeUrl);
+        return false;
+    }
+
+    /**
+     * Finds the host port bound to a container port. Bindings docker made are preferred over the configured ones
+     * so ports picked at random are found too.
+     * @param metaData ContainerMetaData the running container
+     * @param containerPort Integer the container port or null for the first published port
+     * @return String the host port or null if the port isn't published
+     */
+    public String getHostPort(final ContainerMetaData metaData, final Integer containerPort) {
+        final String hostPort = metaData.getNetworkSettings() == null ? null : findHostPort(metaData.getNetworkSettings().getPorts(), containerPort);
+        if(hostPort != null || metaData.getHostConfig() == null) return hostPort;
+        return findHostPort(metaData.getHostConfig().getPortBindings(), containerPort);
+    }
+
+    private static String findHostPort(final Map<String, List<PortBinding>> bindings, final Integer containerPort) {
+        if(bindings == null) return null;
+        for(Map.Entry<String, List<PortBinding>> entry : bindings.entrySet()) {
+            if(containerPort != null && !entry.getKey().equals(containerPort + "/tcp")) continue;
+            if(entry.getValue() == null) continue;
+            for(PortBinding binding : entry.getValue()) {
+                if(binding.getHostPort() != null && !binding.getHostPort().isEmpty()) return binding.getHostPort();
+            }
+        }
+        return null;
+    }
+
+    private boolean probe(final String url) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout((int) Math.max(1000, TimeUnit.SECONDS.toMillis(healthInterval)));
+            connection.setReadTimeout((int) Math.max(1000, TimeUnit.SECONDS.toMillis(healthInterval)));
+            connection.setInstanceFollowRedirects(false);
+            final int status = connection.getResponseCode();
+            log.debug("Health probe: {} returned {}", url, status);
+            return status >= 200 && status < 400;
+        } catch(IOException e) {
+            log.debug("Health probe: {} failed: {}", url, e.getMessage());
+            return false;
+        } finally {
+            if(connection != null) connection.disconnect();
+        }
+    }
+}
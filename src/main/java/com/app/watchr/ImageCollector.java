@@ -0,0 +1,311 @@
+package com.app.watchr;
+
+import com.app.watchr.model.LocalImage;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.TagIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the images that updates leave behind. The newest "gc.keep" local versions of every watched image, and the
+ * version each watch currently runs, are kept so a failed update can roll back, older versions are removed oldest first.
+ * At most "gc.batch.size" images are removed per run and runs only happen while no update is in flight and within the
+ * "gc.window" (i.e. 02:00-05:00) unless the docker data root falls below "gc.min.free" percent free space, in which case
+ * batches are removed right away until the pressure is relieved. Images used by a container, or tagged with anything but
+ * a version of the watched image, are never removed.
+ */
+@Slf4j
+@Component
+public class ImageCollector {
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Autowired
+    private WatchRegistry watchRegistry;
+
+    @Autowired
+    private UpdateOrchestrator updateOrchestrator;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${gc.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${gc.keep:3}")
+    private int keep = 3;
+
+    @Value("${gc.batch.size:10}")
+    private int batchSize = 10;
+
+    @Value("${gc.interval:300}")
+    private long interval = 300;
+
+    @Value("${gc.check.interval:60}")
+    private long checkInterval = 60;
+
+    @Value("${gc.window:}")
+    private String window = "";
+
+    @Value("${gc.data.root:/var/lib/docker}")
+    private String dataRoot = "/var/lib/docker";
+
+    @Value("${gc.min.free:10}")
+    private double minFree = 10;
+
+    private ScheduledExecutorService executor;
+
+    private volatile long lastRun;
+
+    /**
+     * Bounds of "gc.window", both null when runs may happen at any time
+     */
+    private LocalTime windowStart;
+    private LocalTime windowEnd;
+
+    /**
+     * @throws IllegalArgumentException if "gc.window" isn't of the form HH:mm-HH:mm, so a typo fails startup
+     */
+    @PostConstruct
+    public void init() {
+        parseWindow();
+        if(!enabled) return;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "watchr-gc-1");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::tick, checkInterval, checkInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes a batch of images when a run is due, and keeps removing batches while disk space is low
+     */
+    private void tick() {
+        try {
+            final boolean pressure = isUnderPressure();
+            final long now = System.currentTimeMillis();
+            if(!pressure && (now - lastRun < TimeUnit.SECONDS.toMillis(interval) || !updateOrchestrator.isIdle() || !isInWindow(LocalTime.now()))) {
+                return;
+            }
+            lastRun = now;
+            if(pressure) log.warn("Docker data root {} is below {}% free space, removing old images", dataRoot, minFree);
+
+            Result result;
+            do {
+                result = collectBatch();
+            } while(result.removed > 0 && isUnderPressure());
+        } catch(RuntimeException e) {
+            log.error("Exception thrown while removing old images", e);
+        }
+    }
+
+    /**
+     * Removes a single batch of images which are no longer kept, oldest versions first
+     * @return long bytes reclaimed according to the registry, or the docker daemon when the registry didn't report sizes
+     */
+    public long collect() {
+        return collectBatch().reclaimed;
+    }
+
+    private Result collectBatch() {
+        final Map<String, Set<Version>> current = new HashMap<>();
+        for(WatchState state : watchRegistry.getAll()) {
+            final Set<Version> versions = current.computeIfAbsent(state.getImageName(), name -> new HashSet<>());
+            if(state.getCurrentVersion() != null) versions.add(state.getCurrentVersion());
+        }
+
+        final Result result = new Result();
+        for(Map.Entry<String, Set<Version>> image : current.entrySet()) {
+            final int budget = batchSize - result.removed;
+            if(budget <= 0) break;
+            try {
+                collect(image.getKey(), image.getValue(), budget, result);
+            } catch(RuntimeException e) {
+                log.error("Exception thrown while removing old images of {}", image.getKey(), e);
+            }
+        }
+        if(result.removed > 0) log.info("Removed {} old images, reclaiming about {} MB", result.removed, result.reclaimed / (1024 * 1024));
+        return result;
+    }
+
+    /**
+     * Removes up to a budget of an image's local versions which are no longer kept
+     * @param imageName String the watched image
+     * @param current Set of versions watches of the image run
+     * @param budget int how many images may still be removed in this batch
+     * @param result Result what the batch removed so far
+     */
+    private void collect(final String imageName, final Set<Version> current, final int budget, final Result result) {
+        final List<Candidate> candidates = new ArrayList<>();
+        for(LocalImage image : dockerService.listImages(imageName)) {
+            final Candidate candidate = Candidate.of(imageName, image);
+            if(candidate != null) candidates.add(candidate);
+        }
+        candidates.sort(Comparator.comparing((Candidate candidate) -> candidate.newest).reversed());
+
+        // The newest versions are kept along with the versions watches run, which are usually among them
+        final List<Candidate> expired = new ArrayList<>();
+        int kept = 0;
+        for(Candidate candidate : candidates) {
+            if(kept < keep) kept++;
+            else if(candidate.versions.stream().noneMatch(current::contains)) expired.add(candidate);
+        }
+        Collections.reverse(expired);
+
+        final TagIndex index = dockerService.getTagIndex(imageName);
+        int removed = 0;
+        for(Candidate candidate : expired) {
+            if(removed >= budget) break;
+            if(!remove(imageName, candidate)) continue;
+            removed++;
+            final long size = sizeOf(index, candidate);
+            result.removed++;
+            result.reclaimed += size;
+            meterRegistry.counter("watchr.gc.reclaimed", "image", imageName).increment(size);
+        }
+    }
+
+    /**
+     * Removes every tag of an image, the image is deleted along with its last tag
+     * @return Boolean true if the image was removed
+     */
+    private boolean remove(final String imageName, final Candidate candidate) {
+        for(String reference : candidate.references) {
+            try {
+                dockerService.removeImage(reference);
+            } catch(RuntimeException e) {
+                // Typically the image is still used by a (stopped) container
+                log.debug("Could not remove image {}: {}", reference, e.getMessage());
+                meterRegistry.counter("watchr.gc.images", "image", imageName, "outcome", "failure").increment();
+                return false;
+            }
+        }
+        log.info("Removed image {} ({})", candidate.references, candidate.image.getId());
+        meterRegistry.counter("watchr.gc.images", "image", imageName, "outcome", "removed").increment();
+        return true;
+    }
+
+    /**
+     * @return long the size the registry reported for the local platform's image of the tag, or the size the docker
+     * daemon reports when the registry didn't say
+     */
+    private long sizeOf(final TagIndex index, final Candidate candidate) {
+        if(index != null) {
+            final TagRecord record = index.get(candidate.newestTag);
+            if(record != null) {
+                final long size = record.getSize(dockerService.getPlatform());
+                if(size > 0) return size;
+            }
+        }
+        return candidate.image.getSize();
+    }
+
+    /**
+     * @return Boolean true if the docker data root is below "gc.min.free" percent free space. A data root which isn't
+     * visible (i.e. Watchr runs in a container without it mounted) is never under pressure.
+     */
+    private boolean isUnderPressure() {
+        final File root = new File(dataRoot);
+        final long total = root.getTotalSpace();
+        if(total <= 0) return false;
+        return root.getUsableSpace() * 100.0 / total < minFree;
+    }
+
+    /**
+     * @param time LocalTime the time of day
+     * @return Boolean true if "gc.window" is empty or contains the time, windows may wrap past midnight i.e. 22:00-04:00
+     */
+    public boolean isInWindow(final LocalTime time) {
+        if(windowStart == null) return true;
+        if(windowStart.isBefore(windowEnd)) return !time.isBefore(windowStart) && time.isBefore(windowEnd);
+        return !time.isBefore(windowStart) || time.isBefore(windowEnd);
+    }
+
+    private void parseWindow() {
+        if(window == null || window.trim().isEmpty()) return;
+        final String[] bounds = window.trim().split("-");
+        try {
+            if(bounds.length != 2) throw new IllegalArgumentException("expected two times");
+            windowStart = LocalTime.parse(bounds[0].trim());
+            windowEnd = LocalTime.parse(bounds[1].trim());
+        } catch(DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid gc.window: " + window + ", expected HH:mm-HH:mm i.e. 02:00-05:00", e);
+        }
+        if(windowStart.equals(windowEnd)) throw new IllegalArgumentException("Invalid gc.window: " + window + ", the window is empty");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if(executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * What a run removed
+     */
+    private static class Result {
+        private int removed;
+        private long reclaimed;
+    }
+
+    /**
+     * A local image which is only tagged with versions of the watched image
+     */
+    private static class Candidate {
+        private final LocalImage image;
+        private final List<String> references;
+        private final List<Version> versions;
+        private final Version newest;
+        private final String newestTag;
+
+        private Candidate(final LocalImage image, final List<String> references, final List<Version> versions, final String newestTag) {
+            this.image = image;
+            this.references = references;
+            this.versions = versions;
+            this.newest = Collections.max(versions);
+            this.newestTag = newestTag;
+        }
+
+        /**
+         * @return Candidate the image or null if it's untagged or has a tag which isn't a version of the watched image
+         */
+        private static Candidate of(final String imageName, final LocalImage image) {
+            if(image.getRepoTags() == null || image.getRepoTags().isEmpty()) return null;
+            final List<Version> versions = new ArrayList<>();
+            String newestTag = null;
+            for(String reference : image.getRepoTags()) {
+                if(!reference.startsWith(imageName + ":")) return null;
+                final String tag = reference.substring(imageName.length() + 1);
+                final Version version = Version.parse(tag);
+                if(version == null) return null;
+                if(versions.isEmpty() || version.compareTo(Collections.max(versions)) > 0) newestTag = tag;
+                versions.add(version);
+            }
+            return new Candidate(image, image.getRepoTags(), versions, newestTag);
+        }
+    }
+}
@@ -1,19 +1,37 @@
 package com.app.watchr;
 
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.UpdateMode;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
 import com.app.watchr.service.CommandService;
+import com.app.watchr.service.ContainerIndex;
 import com.app.watchr.service.DockerService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Getter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 @Slf4j
 @Component
@@ -25,11 +43,39 @@ public class ImageUpdater {
     @Autowired
     private CommandService commandService;
 
-    private final ObjectMapper mapper = new ObjectMapper();
-    private String containerMetadata;
+    @Autowired
+    private ContainerIndex containerIndex;
+
+    @Autowired
+    private RunCommandBuilder runCommandBuilder;
+
+    @Autowired
+    private HealthVerifier healthVerifier;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
-    @Getter
-    private Version latestVersion;
+    @Value("${update.stop.timeout:10}")
+    private int stopTimeout = 10;
+
+    @Value("${update.overlap.pull:true}")
+    private boolean overlapPull = true;
+
+    private static final String NEXT_SUFFIX = "_next";
+
+    /**
+     * Runs the pull of an update which pulls its own image while the old container is stopped
+     */
+    private final ExecutorService stageExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "watchr-stage-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /**
      * Stops a currently running container given either the container name or id
@@ -39,7 +85,31 @@ public class ImageUpdater {
     public boolean stopContainer(final String containerName) {
         try {
             log.info("Attempting to stop container: {}", containerName);
-            commandService.exec("docker container stop " + containerName);
+            dockerService.stopContainer(containerName);
+            log.info("Container: {} stopped successfully.", containerName);
+            return true;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while attempting to stop container: {}", containerName, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops a watched container gracefully. It's sent the watch's stop signal (or its own StopSignal) and given the
+     * watch's stop timeout, its own StopTimeout or "update.stop.timeout" seconds to drain before it's killed.
+     * @param watch Watch the watch the container belongs to
+     * @param containerName String container name or id
+     * @param metaData ContainerMetaData meta-data of the container or null if it isn't known
+     * @return Boolean True if the container was stopped successfully and false otherwise
+     */
+    public boolean stopContainer(final Watch watch, final String containerName, final ContainerMetaData metaData) {
+        Integer timeout = watch.getStopTimeout();
+        if(timeout == null && metaData != null && metaData.getConfig() != null) timeout = metaData.getConfig().getStopTimeout();
+        if(timeout == null) timeout = stopTimeout;
+
+        try {
+            log.info("Attempting to stop container: {} allowing {}s to shut down", containerName, timeout);
+            dockerService.stopContainer(containerName, timeout, watch.getStopSignal());
             log.info("Container: {} stopped successfully.", containerName);
             return true;
         } catch(RuntimeException e) {
@@ -48,6 +118,23 @@ public class ImageUpdater {
         }
     }
 
+    /**
+     * Starts a container which was stopped for an update that couldn't go ahead
+     * @param containerName String container name or id
+     * @return Boolean true if the container is running again and false otherwise
+     */
+    public boolean restartContainer(final String containerName) {
+        try {
+            log.info("Attempting to start stopped container: {}", containerName);
+            dockerService.startContainer(containerName);
+            log.info("Container: {} is running again.", containerName);
+            return true;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while attempting to start stopped container: {}", containerName, e);
+            return false;
+        }
+    }
+
     /**
      * Deletes a previously stopped container freeing up the container name to be used by
      * a new container
@@ -57,7 +144,7 @@ public class ImageUpdater {
     public boolean deleteContainer(final String containerName) {
         try {
             log.info("Attempting to delete container: {}", containerName);
-            commandService.exec("docker container rm " + containerName);
+            dockerService.removeContainer(containerName);
             log.info("Container: {} deleted successfully.", containerName);
             return true;
         } catch(RuntimeException e) {
@@ -71,14 +158,41 @@ public class ImageUpdater {
      * @param containerName String the container name to run the container as (same as currently running container name)
      * @param imageName String the image name for this image from docker hub.
      * @param version String the new version of this container to start
+     * @param containerMetadata ContainerMetaData meta-data of the container being replaced
      */
-    public boolean startContainer(final String containerName, final String imageName, final Version version) {
-        String containerId = dockerService.getContainerId(containerName);
-        this.containerMetadata = dockerService.getMetaData(containerId);
+    public boolean startContainer(final String containerName, final String imageName, final Version version, final ContainerMetaData containerMetadata) {
+        return startContainer(containerName, imageName, version, containerMetadata, 0);
+    }
+
+    /**
+     * Starts a new container with every published host port shifted by an offset
+     * @param containerName String the container name to run the container as
+     * @param imageName String the image name for this image from docker hub.
+     * @param version String the new version of this container to start
+     * @param containerMetadata ContainerMetaData meta-data of the container being replaced
+     * @param portOffset int added to every fixed host port of the container being replaced
+     */
+    public boolean startContainer(final String containerName, final String imageName, final Version version, final ContainerMetaData containerMetadata, final int portOffset) {
+        return startContainer(containerName, imageName + ":" + version.getVersion(), containerMetadata, portOffset);
+    }
+
+    /**
+     * Starts a new container from an image reference i.e. "app:1.2.0" or an image id
+     * @param containerName String the container name to run the container as
+     * @param image String the image reference to run
+     * @param containerMetadata ContainerMetaData meta-data of the container being replaced
+     * @param portOffset int added to every fixed host port of the container being replaced
+     */
+    public boolean startContainer(final String containerName, final String image, final ContainerMetaData containerMetadata, final int portOffset) {
         try {
-            final String run = getRunCommand(containerName,  imageName, version, getContainerPort(), getEnv());
-            log.info("Attempting to start new container using command: {}", run);
+            final List<String> run = runCommandBuilder.build(containerName, image, containerMetadata, portOffset,
+                    containerMetadata.getImage() == null ? null : dockerService.getImageLabels(containerMetadata.getImage()));
+            log.info("Attempting to start new container using command: {}", String.join(" ", run));
             commandService.exec(run);
+            for(String network : runCommandBuilder.getAdditionalNetworks(containerMetadata)) {
+                log.info("Connecting container: {} to network: {}", containerName, network);
+                commandService.exec(Arrays.asList("docker", "network", "connect", network, containerName));
+            }
             log.info("Container {} has been started successfully!", containerName);
             return true;
         } catch(RuntimeException e) {
@@ -87,6 +201,67 @@ public class ImageUpdater {
         }
     }
 
+    /**
+     * Pulls the image for a version ahead of time so the running container isn't touched until the image is on disk
+     * @param imageName String image name to pull
+     * @param version Version the tag to pull
+     * @return Boolean true if the image was pulled successfully and false otherwise
+     */
+    public boolean pullImage(final String imageName, final Version version) {
+        try {
+            log.info("Attempting to pull image: {}:{}", imageName, version.getVersion());
+            dockerService.pullImage(imageName, version.getVersion());
+            log.info("Image: {}:{} pulled successfully.", imageName, version.getVersion());
+            return true;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while attempting to pull image: {}:{}", imageName, version.getVersion(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Updates a watched container to a new version using the update mode of the watch
+     * @param watch Watch the container and image to update
+     * @param version Version the version to deploy (start)
+     * @return Boolean true if the container was updated and false otherwise
+     */
+    public boolean updateContainer(final Watch watch, final Version version) {
+        return updateContainer(watch, version, true);
+    }
+
+    /**
+     * Updates a watched container to a new version using the update mode of the watch
+     * @param watch Watch the container and image to update
+     * @param version Version the version to deploy (start)
+     * @param pull Boolean false if the image was already pulled for this update
+     * @return Boolean true if the container was updated and false otherwise
+     */
+    public boolean updateContainer(final Watch watch, final Version version, final boolean pull) {
+        return updateContainer(watch, version, pull ? null : CompletableFuture.completedFuture(true));
+    }
+
+    /**
+     * Updates a watched container to a new version while its image is being pulled elsewhere
+     * @param watch Watch the container and image to update
+     * @param version Version the version to deploy (start)
+     * @param pulled CompletableFuture completed with true once the image is pulled, null to pull it as part of the update
+     * @return Boolean true if the container was updated and false otherwise
+     */
+    public boolean updateContainer(final Watch watch, final Version version, final CompletableFuture<Boolean> pulled) {
+        if(watch.getMode() == UpdateMode.SWAP) {
+            return swapContainer(watch, version, pulled);
+        }
+        return recreateContainer(watch, version, pulled);
+    }
+
+    /**
+     * @param watch Watch the watch being updated
+     * @return Boolean true if the old container is stopped while the new image is still being pulled
+     */
+    public boolean overlapsPull(final Watch watch) {
+        return overlapPull && watch.getMode() == UpdateMode.RECREATE;
+    }
+
     /**
      * Helper method for stopping, removing, and re-starting a new container
      * @param containerName String container name to create
@@ -95,100 +270,333 @@ public class ImageUpdater {
      * @return Boolean true if the container can be updated and false otherwise
      */
     public boolean updateContainer(final String containerName, final String imageName, final Version version) {
-        if(stopContainer(containerName)) {
-            if (deleteContainer(containerName)) {
-               if(startContainer(containerName, imageName, version)) {
-                   log.info("Started@V{}", version.getVersion());
-                   return true;
-               } else {
-                   log.error("Failed to start new container: {} see additional error logging above", containerName);
-                   return false;
-               }
-            } else {
-                log.error("Failed to delete existing container: {} see additional error logging above.", containerName);
-                return false;
-            }
-        } else {
+        return recreateContainer(new Watch(containerName, imageName, UpdatePolicy.AUTO), version, null);
+    }
+
+    /**
+     * Stops, removes and re-starts a watched container on a new version. The new container has to come up healthy,
+     * otherwise it is removed and the previous version is restored from the meta-data captured before the update.
+     * @param watch Watch the container and image to update
+     * @param version Version the version to deploy (start)
+     * @param pulled CompletableFuture completed once the image is pulled, null to pull it as part of the update
+     * @return Boolean true if the container was updated and false otherwise
+     */
+    private boolean recreateContainer(final Watch watch, final Version version, final CompletableFuture<Boolean> pulled) {
+        final String containerName = watch.getContainerName();
+        final String imageName = watch.getImageName();
+
+        // Meta-data has to be captured before the container is removed, it's needed to start the new container
+        final ContainerMetaData containerMetadata = containerIndex.getMetaData(containerName);
+        if(containerMetadata == null) {
+            log.error("Failed to update container: {} could not retrieve its meta-data.", containerName);
+            return false;
+        }
+
+        final CompletableFuture<Boolean> image = pulled != null ? pulled : pullAsync(containerName, imageName, version);
+        if(!overlapsPull(watch) && !await(image)) {
+            log.error("Failed to pull image for container: {} the running container was left untouched.", containerName);
+            return false;
+        }
+
+        // The old container drains while the image is pulled, a slow shutdown then costs no time on top of the pull
+        final boolean stopped = timed("stop", containerName, () -> stopContainer(watch, containerName, containerMetadata));
+        if(!await(image)) {
+            log.error("Failed to pull image for container: {} starting the stopped container again.", containerName);
+            if(stopped) timed("restart", containerName, () -> restartContainer(containerName));
+            return false;
+        }
+
+        if(!stopped) {
             log.error("Failed to update container: {} see additional error logging above.", containerName);
             return false;
         }
+
+        if(!timed("rm", containerName, () -> deleteContainer(containerName))) {
+            log.error("Failed to delete existing container: {} see additional error logging above.", containerName);
+            return false;
+        }
+
+        if(timed("run", containerName, () -> startContainer(containerName, imageName, version, containerMetadata))
+                && timed("verify", containerName, () -> healthVerifier.waitUntilHealthy(containerName, watch))) {
+            log.info("Started@V{}", version.getVersion());
+            return true;
+        }
+
+        log.error("Container: {} failed to start on version {} see additional error logging above", containerName, version.getVersion());
+        if(watch.isRollback()) timed("rollback", containerName, () -> rollback(watch, version, containerMetadata));
+        return false;
     }
 
     /**
-     * Builds the run command used to start the container
-     * @return String full run command which can be executed by the current runtime environment
+     * Replaces a container which failed to come up on a new version with the container it replaced. The previous image
+     * is run by its tag, or by its image id when that tag now points at the failed image (a re-pushed tag).
+     * @param watch Watch the container and image being updated
+     * @param failedVersion Version the version which failed
+     * @param previous ContainerMetaData meta-data of the container before the update
+     * @return Boolean true if the previous version is running again and false otherwise
      */
-    private String getRunCommand(final String containerName, final String imageName, final Version version, final String port, final String environmentVariables) {
-        return "docker run -d --name " + containerName + " -p " + port + " " + environmentVariables + "" + imageName + ":" + version.getVersion();
+    public boolean rollback(final Watch watch, final Version failedVersion, final ContainerMetaData previous) {
+        final String containerName = watch.getContainerName();
+        String image = previous.getConfig() == null ? null : previous.getConfig().getImage();
+        if(image == null || image.equals(watch.getImageName() + ":" + failedVersion.getVersion())) image = previous.getImage();
+
+        log.warn("Rolling back container: {} to image: {}", containerName, image);
+        // Inspected directly, the index may not have caught up with the failed container being started or removed yet
+        if(dockerService.getContainerId(containerName) != null) {
+            stopContainer(watch, containerName, previous);
+            deleteContainer(containerName);
+        }
+
+        if(!startContainer(containerName, image, previous, 0)) {
+            log.error("Failed to roll back container: {} it is not running, see additional error logging above", containerName);
+            return false;
+        }
+
+        if(!healthVerifier.waitUntilHealthy(containerName, watch)) {
+            log.error("Rolled back container: {} is not healthy either", containerName);
+            return false;
+        }
+
+        log.info("RolledBack@{}", image);
+        return true;
     }
 
     /**
-     * Returns true if the docker image currently running needs to update because a later tag
-     * has been pushed to the repo
-     * @param currentTags List of current versions that were tagged since we last polled the server
-     * @param latestTags List of the latest version that were recently polled
-     * @return False if the images are the same and true if the images should update to the latest version
+     * Replaces a container with as little downtime as possible. The new version is pulled and started next to the
+     * running container under a temporary name with its host ports shifted by the port offset. Once the docker
+     * healthcheck (and the watch's HTTP probe) passes the old container is retired. A rename can't rebind ports, so a
+     * container published on fixed host ports is then run again under its own name on the original ports and verified
+     * before the temporary container is removed, otherwise the temporary container is renamed into its place. If the
+     * new container never becomes healthy it is removed and the old container keeps running. If it doesn't come up on
+     * the original ports the temporary container keeps serving until the previous version is rolled back, or is
+     * renamed into place when there's no rollback. The original ports are unavailable from the moment the old
+     * container stops until the new one is healthy on them.
+     * @param watch Watch the container and image to update
+     * @param version Version the version to deploy (start)
+     * @param pull Boolean false if the image was already pulled for this update
+     * @return Boolean true if the container was swapped and false otherwise
      */
-    public boolean shouldUpdate(final List<Version> currentTags, final List<Version> latestTags) {
-        log.info("Latest Tags: {}", latestTags);
-        log.info("Current Tags: {}", currentTags);
+    public boolean swapContainer(final Watch watch, final Version version, final boolean pull) {
+        return swapContainer(watch, version, pull ? null : CompletableFuture.completedFuture(true));
+    }
 
-        // Compare old tags against found new tags
-        if(latestTags.size() != currentTags.size()) {
-            log.info("New docker images found! Latest Tags: {} Old Tags: {}", latestTags, currentTags);
-            // [1.0.8, 1.0.9, 1.0.10] [1.0.8, 1.0.9]
-            Version lastLatest = latestTags.get(latestTags.size() - 1);
-            Version lastPrevious = currentTags.get(currentTags.size() - 1);
-            if(lastLatest.compareTo(lastPrevious) >= 1) {
-                this.latestVersion = lastLatest;
-                return true;
-            } else {
-                return false;
-            }
-        } else {
-            log.info("Tag Sizes are equal no new images have been published. Sleeping...");
+    private boolean swapContainer(final Watch watch, final Version version, final CompletableFuture<Boolean> pulled) {
+        final String containerName = watch.getContainerName();
+        final String imageName = watch.getImageName();
+        final ContainerMetaData containerMetadata = containerIndex.getMetaData(containerName);
+        if(containerMetadata == null) {
+            log.error("Failed to swap container: {} could not retrieve its meta-data.", containerName);
+            return false;
+        }
+
+        if(!await(pulled != null ? pulled : pullAsync(containerName, imageName, version))) {
+            log.error("Failed to pull image for container: {} the running container was left untouched.", containerName);
+            return false;
+        }
+
+        final String nextName = containerName + NEXT_SUFFIX;
+        if(dockerService.getContainerId(nextName) != null) {
+            log.warn("Removing left over container: {} from a previous swap", nextName);
+            stopContainer(nextName);
+            deleteContainer(nextName);
+        }
+
+        if(!timed("run", containerName, () -> startContainer(nextName, imageName, version, containerMetadata, watch.getPortOffset()))) {
+            log.error("Failed to start new container: {} the running container was left untouched.", nextName);
+            deleteContainer(nextName);
+            return false;
+        }
+
+        if(!timed("verify", containerName, () -> healthVerifier.waitUntilHealthy(nextName, watch))) {
+            log.error("New container: {} is not healthy, keeping container: {} running.", nextName, containerName);
+            stopContainer(nextName);
+            deleteContainer(nextName);
+            return false;
+        }
+
+        if(!timed("stop", containerName, () -> stopContainer(watch, containerName, containerMetadata)) || !timed("rm", containerName, () -> deleteContainer(containerName))) {
+            log.error("Failed to retire container: {} both versions are still present, see additional error logging above.", containerName);
+            return false;
+        }
+
+        if(!runCommandBuilder.hasFixedHostPorts(containerMetadata)) {
+            if(!renameContainer(nextName, containerName)) return false;
+            log.info("Swapped@V{}", version.getVersion());
+            return true;
+        }
+
+        // The new version keeps serving on the shifted ports until it's up on the original ones
+        if(timed("promote", containerName, () -> startContainer(containerName, imageName, version, containerMetadata)
+                && healthVerifier.waitUntilHealthy(containerName, watch))) {
+            stopContainer(nextName);
+            deleteContainer(nextName);
+            log.info("Swapped@V{}", version.getVersion());
+            return true;
+        }
+
+        log.error("Container: {} failed to start on version {} on its original ports, see additional error logging above", containerName, version.getVersion());
+        removeIfPresent(containerName);
+        if(watch.isRollback() && timed("rollback", containerName, () -> rollback(watch, version, containerMetadata))) {
+            stopContainer(nextName);
+            deleteContainer(nextName);
+            return false;
+        }
+
+        // Rather than leaving nothing running, the healthy new version stays up under the container's name
+        removeIfPresent(containerName);
+        if(renameContainer(nextName, containerName)) {
+            log.error("Container: {} is running version {} on its host ports plus {} only", containerName, version.getVersion(), watch.getPortOffset());
+        }
+        return false;
+    }
+
+    private boolean renameContainer(final String containerName, final String name) {
+        try {
+            dockerService.renameContainer(containerName, name);
+            return true;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while attempting to rename container: {} to {}", containerName, name, e);
             return false;
         }
     }
 
     /**
-     * Parses the environmental variables into
-     * @return String the environmental variable string pre-formatted for a docker cli call
+     * Stops and removes a container if the daemon has one by the name, asking the daemon rather than the container
+     * index which may not have seen a container created or removed moments ago yet
      */
-    private String getEnv() {
-        try {
-            JsonNode env = this.mapper.readTree(this.containerMetadata.replaceAll("^\\[|]$", ""))
-                    .get("Config")
-                    .get("Env");
+    private void removeIfPresent(final String containerName) {
+        if(dockerService.getContainerId(containerName) == null) return;
+        stopContainer(containerName);
+        deleteContainer(containerName);
+    }
 
-            return this.mapper.readValue(env.toString(), ArrayList.class).stream().map(e -> "-e " + e).collect(Collectors.joining(" ")).toString();
-        } catch(IOException e) {
-            log.error("IOException thrown while attempting to retrieve running environmental variables ", e);
-            return null;
+    /**
+     * Starts pulling the image of an update on its own thread so it can overlap with stopping the old container
+     */
+    private CompletableFuture<Boolean> pullAsync(final String containerName, final String imageName, final Version version) {
+        return CompletableFuture.supplyAsync(() -> timed("pull", containerName, () -> pullImage(imageName, version)), stageExecutor);
+    }
+
+    /**
+     * Waits for the image of an update to be pulled
+     * @return Boolean true if the image was pulled and false otherwise
+     */
+    private static boolean await(final CompletableFuture<Boolean> pulled) {
+        try {
+            return pulled.join();
+        } catch(CompletionException | CancellationException e) {
+            log.error("Exception thrown while waiting for an image to be pulled", e);
+            return false;
         }
     }
 
     /**
-     * Retrieves the container port that the running image is using.
-     * @return String containing the container port
+     * Runs a single phase of an update and records how long it took and whether it succeeded
      */
-    private String getContainerPort() {
+    private boolean timed(final String phase, final String containerName, final BooleanSupplier action) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        boolean succeeded = false;
         try {
-            JsonNode portBindings = this.mapper.readTree(this.containerMetadata.replaceAll("^\\[|]$", ""))
-                    .get("HostConfig")
-                    .get("PortBindings");
+            succeeded = action.getAsBoolean();
+            return succeeded;
+        } finally {
+            final long took = sample.stop(meterRegistry.timer("watchr.update.phase", "phase", phase, "container", containerName, "outcome", succeeded ? "success" : "failure"));
+            log.info("Update phase: {} of container: {} {} in {}ms", phase, containerName, succeeded ? "succeeded" : "failed", TimeUnit.NANOSECONDS.toMillis(took));
+        }
+    }
 
-            log.debug("Retrieved port bindings: {}", portBindings.toString());
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
+    }
 
-            HashMap<String, List<HashMap<String, String>>> ports = this.mapper.readValue(portBindings.toString(), HashMap.class);
-            final String port = ports.keySet().stream().map(key -> ports.get(key).get(0).get("HostPort")).collect(Collectors.joining());
+    /**
+     * Finds the version a watch should update to from the tags that changed since it last polled. Only added and
+     * re-pushed tags accepted by the watch's tag policy are considered so the full tag list is never re-compared.
+     * @param currentVersion Version the version the watch is currently on or null if it is unknown
+     * @param delta TagDelta tags that changed since the last poll
+     * @param tagFilter TagFilter the watch's tag policy
+     * @return TagRecord the tag of the newer version to update to or null if there is none
+     */
+    public TagRecord findUpdate(final Version currentVersion, final TagDelta delta, final TagFilter tagFilter) {
+        return findUpdate(currentVersion, delta, tagFilter, record -> true);
+    }
 
-            log.debug("Parsed port for nested json object: {}", port);
+    /**
+     * Finds the newest version a watch should update to which can run here. Newer versions are tried newest first so
+     * a release that hasn't published an image for this platform (yet) falls back to the newest one that has.
+     * @param currentVersion Version the version the watch is currently on or null if it is unknown
+     * @param delta TagDelta tags that changed since the last poll
+     * @param tagFilter TagFilter the watch's tag policy
+     * @param runnable Predicate true if a tag has an image for the local platform
+     * @return TagRecord the tag of the newer version to update to or null if there is none
+     */
+    public TagRecord findUpdate(final Version currentVersion, final TagDelta delta, final TagFilter tagFilter, final Predicate<TagRecord> runnable) {
+        final List<TagRecord> candidates = new ArrayList<>();
+        for(TagRecord record : delta.getAdded()) {
+            if(tagFilter.accepts(record.getVersion()) && record.getVersion().compareTo(currentVersion) > 0) candidates.add(record);
+        }
+        for(TagRecord record : delta.getRepushed()) {
+            if(tagFilter.accepts(record.getVersion()) && record.getVersion().compareTo(currentVersion) > 0) candidates.add(record);
+        }
+        candidates.sort((a, b) -> b.getVersion().compareTo(a.getVersion()));
 
-            return port + ":" + port;
-        } catch(IOException e) {
-            log.error("IOException thrown while attempting to retrieve running container ports ", e);
-            return null;
+        for(TagRecord candidate : candidates) {
+            if(runnable.test(candidate)) {
+                log.info("New docker image found! Latest Version: {} Current Version: {}", candidate.getVersion(), currentVersion);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the tag of the version a watch is running when it was re-pushed since the last poll i.e. a mutable
+     * tag like "1.4" or "stable" which was moved to a new image
+     * @param currentVersion Version the version the watch is currently on
+     * @param delta TagDelta tags that changed since the last poll
+     * @return TagRecord the re-pushed tag or null if the running tag wasn't re-pushed
+     */
+    public TagRecord findRepush(final Version currentVersion, final TagDelta delta) {
+        if(currentVersion == null) return null;
+        for(TagRecord record : delta.getRepushed()) {
+            if(currentVersion.equals(record.getVersion())) return record;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the registry digests of the image a container is running
+     * @param containerName String container name
+     * @return List of digests the container's image was pulled by, empty if they can't be determined
+     */
+    public List<String> getRunningDigests(final String containerName) {
+        final ContainerMetaData metaData = containerIndex.getMetaData(containerName);
+        if(metaData == null || metaData.getImage() == null) return Collections.emptyList();
+        return dockerService.getImageDigests(metaData.getImage());
+    }
+
+    /**
+     * Returns true if the docker image currently running needs to update because a later tag
+     * has been pushed to the repo
+     * @param currentTags List of current versions that were tagged since we last polled the server
+     * @param latestTags List of the latest version that were recently polled
+     * @return False if the images are the same and true if the images should update to the latest version
+     */
+    public boolean shouldUpdate(final List<Version> currentTags, final List<Version> latestTags) {
+        log.info("Latest Tags: {}", latestTags);
+        log.info("Current Tags: {}", currentTags);
+
+        // Compare old tags against found new tags
+        if(latestTags.size() != currentTags.size()) {
+            log.info("New docker images found! Latest Tags: {} Old Tags: {}", latestTags, currentTags);
+            // [1.0.8, 1.0.9, 1.0.10] [1.0.8, 1.0.9]
+            Version lastLatest = latestTags.get(latestTags.size() - 1);
+            Version lastPrevious = currentTags.isEmpty() ? null : currentTags.get(currentTags.size() - 1);
+            return lastLatest.compareTo(lastPrevious) >= 1;
+        } else {
+            log.info("Tag Sizes are equal no new images have been published. Sleeping...");
+            return false;
         }
     }
-}
\ No newline at end of file
+}
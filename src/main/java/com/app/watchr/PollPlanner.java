@@ -0,0 +1,214 @@
+package com.app.watchr;
+
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.RegistryClient;
+import com.app.watchr.service.RegistryException;
+import com.app.watchr.service.TagIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long each watch waits before its next poll. Rather than polling every image at one fixed rate the
+ * delay follows how often the image is published, learned from when its tags were last updated. An image pushed
+ * every few hours is polled every few minutes while one which hasn't been pushed in months is polled at most
+ * every "polling.max.delay" seconds.
+ *
+ * Every delay is stretched by the same factor whenever all watched images together would make more than "polling.budget"
+ * requests an hour. Watches of the same image share their registry requests so an image counts once, at the delay of
+ * its most frequently polled watch. Failing watches back off exponentially and no watch polls while its registry rate limits us.
+ */
+@Slf4j
+@Component
+public class PollPlanner {
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${polling.delay:60}")
+    private long pollingDelay;
+
+    @Value("${polling.adaptive:true}")
+    private boolean adaptive;
+
+    @Value("${polling.min.delay:30}")
+    private long minDelay;
+
+    @Value("${polling.max.delay:3600}")
+    private long maxDelay;
+
+    @Value("${polling.per.publish:10}")
+    private int pollsPerPublish;
+
+    @Value("${polling.cadence.samples:20}")
+    private int cadenceSamples;
+
+    @Value("${polling.budget:600}")
+    private long budget;
+
+    /**
+     * The last plan of each watch by container name, dropped once the watch stops being polled
+     */
+    private final Map<String, Plan> planned = new ConcurrentHashMap<>();
+
+    /**
+     * Publish cadence by image name, learned again whenever the image's tag index changes
+     */
+    private final Map<String, Cadence> cadences = new ConcurrentHashMap<>();
+
+    /**
+     * Plans the delay before a watch is polled again
+     * @param state WatchState the watch which was just polled
+     * @param failure Throwable why the poll failed or null if it succeeded
+     * @return long the delay in millis
+     */
+    public long nextDelay(final WatchState state, final Throwable failure) {
+        final long now = System.currentTimeMillis();
+        final long wanted = adaptive ? cadenceDelay(state.getImageName(), now) : TimeUnit.SECONDS.toMillis(pollingDelay);
+        prune(now);
+        final Plan plan = new Plan(state.getImageName(), wanted);
+        if(planned.put(state.getContainerName(), plan) == null) {
+            final String container = state.getContainerName();
+            Gauge.builder("watchr.poll.delay", planned, plans -> {
+                final Plan current = plans.get(container);
+                return current == null ? 0 : current.wanted / 1000.0;
+            }).tag("container", container).baseUnit("seconds").register(meterRegistry);
+        }
+
+        long delay = (long) (wanted * budgetFactor());
+        if(failure != null) {
+            // A watch which keeps failing isn't worth its share of the budget
+            final long backoff = TimeUnit.SECONDS.toMillis(minDelay) << Math.min(state.getFailures(), 16);
+            delay = Math.max(delay, Math.min(backoff, TimeUnit.SECONDS.toMillis(maxDelay)));
+            final Throwable cause = RegistryClient.unwrap(failure);
+            if(cause instanceof RegistryException) delay = Math.max(delay, ((RegistryException) cause).getRetryAfter());
+        }
+        delay = Math.max(delay, registryClient.getBlockedUntil(state.getImageName()) - now);
+        plan.expiresAt = now + 2 * delay + TimeUnit.SECONDS.toMillis(maxDelay);
+        return delay;
+    }
+
+    /**
+     * Drops the plans of watches which weren't polled again long after their planned delay, i.e. watches which were
+     * removed, so they no longer take a share of the budget
+     * @param now long the current time in millis
+     */
+    private void prune(final long now) {
+        planned.entrySet().removeIf(entry -> {
+            if(entry.getValue().expiresAt >= now) return false;
+            log.debug("Container: {} hasn't been polled since its last plan, dropping it from the budget", entry.getKey());
+            final Gauge gauge = meterRegistry.find("watchr.poll.delay").tag("container", entry.getKey()).gauge();
+            if(gauge != null) meterRegistry.remove(gauge);
+            return true;
+        });
+    }
+
+    /**
+     * Returns the delay which matches an image's publish cadence. The expected time between pushes is the median gap
+     * between its most recent pushes, or the time since the last push once the image has been quiet for longer
+     * than that, and each watch polls "polling.per.publish" times in that period.
+     * @param imageName String the image name
+     * @param now long the current time in millis
+     * @return long the delay in millis between the min and max delay
+     */
+    private long cadenceDelay(final String imageName, final long now) {
+        final TagIndex index = dockerService.getTagIndex(imageName);
+        if(index == null) return clamp(TimeUnit.SECONDS.toMillis(pollingDelay));
+
+        Cadence cadence = cadences.get(imageName);
+        if(cadence == null || cadence.revision != index.getRevision()) {
+            cadence = new Cadence(index.getRevision(), index.getPushTimes(cadenceSamples));
+            cadences.put(imageName, cadence);
+            log.debug("Image: {} is published every {}s", imageName, TimeUnit.MILLISECONDS.toSeconds(cadence.interval));
+        }
+
+        if(cadence.interval <= 0) return clamp(TimeUnit.SECONDS.toMillis(pollingDelay));
+        final long expected = Math.max(cadence.interval, now - cadence.lastPush);
+        return clamp(expected / Math.max(pollsPerPublish, 1));
+    }
+
+    /**
+     * @return double how much every delay is stretched so all watched images together stay within the hourly request budget
+     */
+    private double budgetFactor() {
+        if(budget <= 0) return 1;
+        final Map<String, Long> byImage = new HashMap<>();
+        for(Plan plan : planned.values()) {
+            byImage.merge(plan.imageName, plan.wanted, Math::min);
+        }
+
+        double perHour = 0;
+        for(long delay : byImage.values()) {
+            perHour += (double) TimeUnit.HOURS.toMillis(1) / Math.max(delay, 1);
+        }
+        return Math.max(1, perHour / budget);
+    }
+
+    private long clamp(final long delay) {
+        return Math.min(Math.max(delay, TimeUnit.SECONDS.toMillis(minDelay)), TimeUnit.SECONDS.toMillis(maxDelay));
+    }
+
+    /**
+     * The delay a watch wanted before the budget was applied
+     */
+    private static class Plan {
+        private final String imageName;
+        private final long wanted;
+
+        /**
+         * Time in millis after which the watch is considered gone if it wasn't planned again
+         */
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private Plan(final String imageName, final long wanted) {
+            this.imageName = imageName;
+            this.wanted = wanted;
+        }
+    }
+
+    /**
+     * How often an image is published as of a revision of its tag index
+     */
+    private static class Cadence {
+        private final long revision;
+        private final long interval;
+        private final long lastPush;
+
+        /**
+         * @param revision long the tag index revision
+         * @param pushes List of push times in millis, newest first
+         */
+        private Cadence(final long revision, final List<Long> pushes) {
+            this.revision = revision;
+            this.lastPush = pushes.isEmpty() ? 0 : pushes.get(0);
+
+            // Tags pushed within a minute of each other (1.2.3, 1.2 and 1) belong to the same release
+            final List<Long> gaps = new ArrayList<>();
+            for(int i = 1; i < pushes.size(); i++) {
+                final long gap = pushes.get(i - 1) - pushes.get(i);
+                if(gap >= TimeUnit.MINUTES.toMillis(1)) gaps.add(gap);
+            }
+            Collections.sort(gaps);
+            this.interval = gaps.isEmpty() ? 0 : gaps.get(gaps.size() / 2);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.app.watchr;
+
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.ContainerMetaData.Mount;
+import com.app.watchr.model.ContainerMetaData.PortBinding;
+import com.app.watchr.model.ContainerMetaData.RestartPolicy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builds the argv for "docker run" from the typed meta-data of the container being replaced so the
+ * new container keeps the same env, ports, mounts, networks, restart policy and labels.
+ */
+@Component
+public class RunCommandBuilder {
+
+    private static final String DEFAULT_NETWORK = "default";
+    private static final String BRIDGE_NETWORK = "bridge";
+
+    /**
+     * Label namespaces images describe themselves with, i.e. org.opencontainers.image.version
+     */
+    private static final List<String> IMAGE_LABEL_PREFIXES = Arrays.asList("org.opencontainers.image.", "org.label-schema.");
+
+    /**
+     * Builds the run command used to start the container
+     * @param containerName String the name to start the container as
+     * @param imageName String the image name
+     * @param version Version the tag of the image to run
+     * @param metaData ContainerMetaData meta-data of the container being replaced
+     * @return List argv which can be executed by the current runtime environment
+     */
+    public List<String> build(final String containerName, final String imageName, final Version version, final ContainerMetaData metaData) {
+        return build(containerName, imageName, version, metaData, 0);
+    }
+
+    /**
+     * Builds the run command used to start the container with every published host port shifted by an offset
+     * so the new container can run next to the one it is replacing
+     * @param containerName String the name to start the container as
+     * @param imageName String the image name
+     * @param version Version the tag of the image to run
+     * @param metaData ContainerMetaData meta-data of the container being replaced
+     * @param portOffset int added to every fixed host port
+     * @return List argv which can be executed by the current runtime environment
+     */
+    public List<String> build(final String containerName, final String imageName, final Version version, final ContainerMetaData metaData, final int portOffset) {
+        return build(containerName, imageName + ":" + version.getVersion(), metaData, portOffset);
+    }
+
+    /**
+     * Builds the run command for an image reference i.e. "app:1.2.0" or an image id
+     * @param containerName String the name to start the container as
+     * @param image String the image reference to run
+     * @param metaData ContainerMetaData meta-data of the container being replaced
+     * @param portOffset int added to every fixed host port
+     * @return List argv which can be executed by the current runtime environment
+     */
+    public List<String> build(final String containerName, final String image, final ContainerMetaData metaData, final int portOffset) {
+        return build(containerName, image, metaData, portOffset, null);
+    }
+
+    /**
+     * Builds the run command for an image reference without the labels the old container inherited from its image
+     * @param containerName String the name to start the container as
+     * @param image String the image reference to run
+     * @param metaData ContainerMetaData meta-data of the container being replaced
+     * @param portOffset int added to every fixed host port
+     * @param imageLabels Map labels of the image the old container ran or null if they aren't known
+     * @return List argv which can be executed by the current runtime environment
+     */
+    public List<String> build(final String containerName, final String image, final ContainerMetaData metaData, final int portOffset,
+                              final Map<String, String> imageLabels) {
+        final List<String> command = new ArrayList<>();
+        command.add("docker");
+        command.add("run");
+        command.add("-d");
+        command.add("--name");
+        command.add(containerName);
+        command.addAll(getRestartPolicy(metaData));
+        command.addAll(getNetwork(metaData));
+        command.addAll(getPorts(metaData, portOffset));
+        command.addAll(getMounts(metaData));
+        command.addAll(getEnv(metaData));
+        command.addAll(getLabels(metaData, imageLabels));
+        command.add(image);
+        return command;
+    }
+
+    /**
+     * Parses the environmental variables into docker cli arguments
+     * @param metaData ContainerMetaData the running container
+     * @return List of "-e" arguments
+     */
+    public List<String> getEnv(final ContainerMetaData metaData) {
+        if(metaData.getConfig() == null || metaData.getConfig().getEnv() == null) return Collections.emptyList();
+        final List<String> args = new ArrayList<>(metaData.getConfig().getEnv().size() * 2);
+        for(String env : metaData.getConfig().getEnv()) {
+            args.add("-e");
+            args.add(env);
+        }
+        return args;
+    }
+
+    /**
+     * @param metaData ContainerMetaData a container
+     * @return Boolean true if any of the container's ports is published on a fixed host port
+     */
+    public boolean hasFixedHostPorts(final ContainerMetaData metaData) {
+        if(metaData.getHostConfig() == null || metaData.getHostConfig().getPortBindings() == null) return false;
+        for(List<PortBinding> bindings : metaData.getHostConfig().getPortBindings().values()) {
+            if(bindings == null) continue;
+            for(PortBinding binding : bindings) {
+                if(binding.getHostPort() != null && !binding.getHostPort().isEmpty()) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses every published port into docker cli arguments. Each binding keeps its host ip, host port and the
+     * container port and protocol it maps to i.e. "-p 127.0.0.1:8080:80/tcp".
+     * @param metaData ContainerMetaData the running container
+     * @return List of "-p" arguments
+     */
+    public List<String> getPorts(final ContainerMetaData metaData) {
+        return getPorts(metaData, 0);
+    }
+
+    /**
+     * Parses every published port into docker cli arguments with each fixed host port shifted by an offset
+     * @param metaData ContainerMetaData the running container
+     * @param portOffset int added to every fixed host port
+     * @return List of "-p" arguments
+     */
+    public List<String> getPorts(final ContainerMetaData metaData, final int portOffset) {
+        if(metaData.getHostConfig() == null || metaData.getHostConfig().getPortBindings() == null) return Collections.emptyList();
+        final List<String> args = new ArrayList<>();
+        for(Map.Entry<String, List<PortBinding>> entry : metaData.getHostConfig().getPortBindings().entrySet()) {
+            if(entry.getValue() == null) continue;
+            for(PortBinding binding : entry.getValue()) {
+                final boolean hasIp = binding.getHostIp() != null && !binding.getHostIp().isEmpty() && !"0.0.0.0".equals(binding.getHostIp());
+                final boolean hasPort = binding.getHostPort() != null && !binding.getHostPort().isEmpty();
+                final StringBuilder port = new StringBuilder();
+                if(hasIp) port.append(binding.getHostIp()).append(':');
+                if(hasPort) port.append(offset(binding.getHostPort(), portOffset)).append(':');
+                else if(hasIp) port.append(':');
+                port.append(entry.getKey());
+                args.add("-p");
+                args.add(port.toString());
+            }
+        }
+        return args;
+    }
+
+    private static String offset(final String hostPort, final int portOffset) {
+        if(portOffset == 0) return hostPort;
+        // Ranges i.e. "8000-8010" are shifted as a whole
+        final int dash = hostPort.indexOf('-');
+        if(dash > 0) {
+            return (Integer.parseInt(hostPort.substring(0, dash)) + portOffset) + "-" + (Integer.parseInt(hostPort.substring(dash + 1)) + portOffset);
+        }
+        return String.valueOf(Integer.parseInt(hostPort) + portOffset);
+    }
+
+    /**
+     * Parses bind mounts, named volumes and tmpfs mounts into docker cli arguments
+     * @param metaData ContainerMetaData the running container
+     * @return List of "-v" and "--tmpfs" arguments
+     */
+    public List<String> getMounts(final ContainerMetaData metaData) {
+        if(metaData.getMounts() == null) return Collections.emptyList();
+        final List<String> args = new ArrayList<>();
+        for(Mount mount : metaData.getMounts()) {
+            final String suffix = mount.isReadWrite() ? "" : ":ro";
+            if("bind".equals(mount.getType())) {
+                args.add("-v");
+                args.add(mount.getSource() + ":" + mount.getDestination() + suffix);
+            } else if("volume".equals(mount.getType())) {
+                args.add("-v");
+                args.add(mount.getName() + ":" + mount.getDestination() + suffix);
+            } else if("tmpfs".equals(mount.getType())) {
+                args.add("--tmpfs");
+                args.add(mount.getDestination());
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Returns the network the container should be started on. Containers on the default bridge network don't need
+     * any argument, additional networks can only be connected after the container has started.
+     * @param metaData ContainerMetaData the running container
+     * @return List of "--network" arguments
+     */
+    public List<String> getNetwork(final ContainerMetaData metaData) {
+        if(metaData.getHostConfig() == null) return Collections.emptyList();
+        final String networkMode = metaData.getHostConfig().getNetworkMode();
+        if(networkMode == null || networkMode.isEmpty() || DEFAULT_NETWORK.equals(networkMode) || BRIDGE_NETWORK.equals(networkMode))
+            return Collections.emptyList();
+
+        final List<String> args = new ArrayList<>(2);
+        args.add("--network");
+        args.add(networkMode);
+        return args;
+    }
+
+    /**
+     * Returns every network the container is attached to other than the one it is started on
+     * @param metaData ContainerMetaData the running container
+     * @return List of network names to connect after the container has started
+     */
+    public List<String> getAdditionalNetworks(final ContainerMetaData metaData) {
+        if(metaData.getNetworkSettings() == null || metaData.getNetworkSettings().getNetworks() == null) return Collections.emptyList();
+        final String networkMode = metaData.getHostConfig() == null ? null : metaData.getHostConfig().getNetworkMode();
+        final List<String> networks = new ArrayList<>();
+        for(String network : metaData.getNetworkSettings().getNetworks().keySet()) {
+            if(network.equals(networkMode) || BRIDGE_NETWORK.equals(network)) continue;
+            if(networkMode != null && networkMode.startsWith("container:")) continue;
+            networks.add(network);
+        }
+        return networks;
+    }
+
+    /**
+     * Parses the restart policy into docker cli arguments
+     * @param metaData ContainerMetaData the running container
+     * @return List of "--restart" arguments
+     */
+    public List<String> getRestartPolicy(final ContainerMetaData metaData) {
+        if(metaData.getHostConfig() == null) return Collections.emptyList();
+        final RestartPolicy policy = metaData.getHostConfig().getRestartPolicy();
+        if(policy == null || policy.getName() == null || policy.getName().isEmpty() || "no".equals(policy.getName()))
+            return Collections.emptyList();
+
+        final List<String> args = new ArrayList<>(2);
+        args.add("--restart");
+        args.add(policy.getMaximumRetryCount() > 0 ? policy.getName() + ":" + policy.getMaximumRetryCount() : policy.getName());
+        return args;
+    }
+
+    /**
+     * Parses the container labels into docker cli arguments
+     * @param metaData ContainerMetaData the running container
+     * @return List of "--label" arguments
+     */
+    public List<String> getLabels(final ContainerMetaData metaData) {
+        return getLabels(metaData, null);
+    }
+
+    /**
+     * Parses the labels set on the container itself into docker cli arguments. A container's labels include those of
+     * its image, copying those would override the new image's labels (i.e. its version) with the old image's.
+     * @param metaData ContainerMetaData the running container
+     * @param imageLabels Map labels of the image the container runs, when null labels in the namespaces images
+     *                    describe themselves with are skipped instead
+     * @return List of "--label" arguments
+     */
+    public List<String> getLabels(final ContainerMetaData metaData, final Map<String, String> imageLabels) {
+        if(metaData.getConfig() == null || metaData.getConfig().getLabels() == null) return Collections.emptyList();
+        final List<String> args = new ArrayList<>(metaData.getConfig().getLabels().size() * 2);
+        for(Map.Entry<String, String> label : metaData.getConfig().getLabels().entrySet()) {
+            if(isInherited(label, imageLabels)) continue;
+            args.add("--label");
+            args.add(label.getKey() + "=" + label.getValue());
+        }
+        return args;
+    }
+
+    private static boolean isInherited(final Map.Entry<String, String> label, final Map<String, String> imageLabels) {
+        if(imageLabels == null) return IMAGE_LABEL_PREFIXES.stream().anyMatch(label.getKey()::startsWith);
+        return imageLabels.containsKey(label.getKey()) && Objects.equals(imageLabels.get(label.getKey()), label.getValue());
+    }
+}
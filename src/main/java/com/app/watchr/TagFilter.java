@@ -0,0 +1,88 @@
+package com.app.watchr;
+
+import com.app.watchr.model.TagPolicy;
+import com.app.watchr.model.TagRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Applies a watch's TagPolicy to a sorted list of versions. The policy's patterns are compiled once
+ * when the filter is created and every version is checked in a single pass.
+ */
+public class TagFilter {
+
+    private final Integer pinMajor;
+    private final boolean stableOnly;
+    private final String suffix;
+    private final Pattern include;
+    private final Pattern exclude;
+
+    public TagFilter(final TagPolicy policy) {
+        this.pinMajor = policy.getPinMajor();
+        this.stableOnly = policy.isStableOnly();
+        this.suffix = policy.getSuffix() == null || policy.getSuffix().isEmpty() ? null : policy.getSuffix();
+        this.include = policy.getInclude() == null || policy.getInclude().isEmpty() ? null : Pattern.compile(policy.getInclude());
+        this.exclude = policy.getExclude() == null || policy.getExclude().isEmpty() ? null : Pattern.compile(policy.getExclude());
+    }
+
+    /**
+     * Returns true if a watch using this policy may update to the version
+     * @param version Version the version to check
+     * @return Boolean true if the version passes every rule of the policy
+     */
+    public boolean accepts(final Version version) {
+        if(pinMajor != null && version.getMajor() != pinMajor)
+            return false;
+
+        if(suffix != null) {
+            final String preRelease = version.getPreRelease();
+            if(preRelease == null || !preRelease.startsWith(suffix))
+                return false;
+        } else if(stableOnly && version.isPreRelease()) {
+            return false;
+        }
+
+        if(include != null && !include.matcher(version.getVersion()).find())
+            return false;
+        return exclude == null || !exclude.matcher(version.getVersion()).find();
+    }
+
+    /**
+     * Filters a list of versions keeping their order
+     * @param versions List of versions
+     * @return List of the versions this policy accepts
+     */
+    public List<Version> filter(final List<Version> versions) {
+        final List<Version> accepted = new ArrayList<>(versions.size());
+        for(Version version : versions) {
+            if(accepts(version)) accepted.add(version);
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns the newest version this policy accepts from a set of tags
+     * @param records Collection of tag records
+     * @return Version the newest accepted version or null if none are accepted
+     */
+    public Version newest(final Collection<TagRecord> records) {
+        final TagRecord newest = newestRecord(records);
+        return newest == null ? null : newest.getVersion();
+    }
+
+    /**
+     * Returns the tag of the newest version this policy accepts from a set of tags
+     * @param records Collection of tag records
+     * @return TagRecord the tag of the newest accepted version or null if none are accepted
+     */
+    public TagRecord newestRecord(final Collection<TagRecord> records) {
+        TagRecord newest = null;
+        for(TagRecord record : records) {
+            if(accepts(record.getVersion()) && (newest == null || record.getVersion().compareTo(newest.getVersion()) > 0)) newest = record;
+        }
+        return newest;
+    }
+}
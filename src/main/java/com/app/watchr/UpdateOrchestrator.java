@@ -0,0 +1,224 @@
+package com.app.watchr;
+
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.StateStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rolls a new version out to every watch of an image instead of letting each watch update on its own. The image is
+ * pulled once per image:tag no matter how many containers use it, the first container to update is the canary and
+ * the rest wait for it to succeed, after which they update in batches of at most "update.max.concurrent" containers.
+ * If any container fails to update the rollout is halted and the remaining containers are left on their current version.
+ */
+@Slf4j
+@Component
+public class UpdateOrchestrator {
+
+    @Autowired
+    private ImageUpdater imageUpdater;
+
+    @Autowired
+    private StateStore stateStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${update.max.concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${update.max.pulls:2}")
+    private int maxPulls;
+
+    @Value("${update.canary:true}")
+    private boolean canary;
+
+    @Value("${update.rollout.retention:30}")
+    private long rolloutRetention;
+
+    private ExecutorService pullExecutor;
+    private ExecutorService updateExecutor;
+
+    /**
+     * Rollouts by image:tag, guarded by this
+     */
+    private final Map<String, Rollout> rollouts = new HashMap<>();
+
+    /**
+     * Updates which are queued or running by container name
+     */
+    private final Map<String, CompletableFuture<Boolean>> updating = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.pullExecutor = Executors.newFixedThreadPool(maxPulls, threadFactory("watchr-pull-"));
+        this.updateExecutor = Executors.newFixedThreadPool(maxConcurrent, threadFactory("watchr-update-"));
+    }
+
+    /**
+     * @param state WatchState a watch
+     * @return Boolean true if an update for the watch is queued or running
+     */
+    public boolean isUpdating(final WatchState state) {
+        return updating.containsKey(state.getContainerName());
+    }
+
+    /**
+     * @return Boolean true if no update is queued or running
+     */
+    public boolean isIdle() {
+        return updating.isEmpty();
+    }
+
+    /**
+     * Queues an update of a watched container. Once the container is updated the watch moves to the new version and
+     * index revision, if the update fails the watch is left as is so the update is offered again on a later poll.
+     * @param state WatchState the watch to update
+     * @param version Version the version to deploy
+     * @param revision long the tag index revision the watch moves to once updated
+     * @return CompletableFuture completed with true once the container was updated and false if it wasn't
+     */
+    public synchronized CompletableFuture<Boolean> submit(final WatchState state, final Version version, final long revision) {
+        final CompletableFuture<Boolean> queued = updating.get(state.getContainerName());
+        if(queued != null) return queued;
+
+        expireRollouts();
+        final String key = state.getImageName() + ":" + version.getVersion();
+        Rollout rollout = rollouts.get(key);
+        if(rollout != null && rollout.halted) {
+            log.warn("Rollout of {} is halted after a failed update, leaving {} on version {}", key, state, state.getCurrentVersion());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if(rollout == null) {
+            rollout = new Rollout(key, CompletableFuture.supplyAsync(() -> pull(state.getImageName(), version), pullExecutor));
+            rollouts.put(key, rollout);
+        }
+
+        // The canary waits for the pull, unless it drains its old container meanwhile, and every other container waits for the canary
+        final Rollout target = rollout;
+        final CompletableFuture<Boolean> gate = target.canary != null ? target.canary
+                : imageUpdater.overlapsPull(state.getWatch()) ? CompletableFuture.completedFuture(true) : target.pull;
+        final CompletableFuture<Boolean> update = gate.thenApplyAsync(ready -> ready && update(target, state, version, revision), updateExecutor);
+        if(canary && target.canary == null) {
+            target.canary = update;
+            log.info("Updating {} first as the canary for the rollout of {}", state, key);
+        }
+
+        target.pending++;
+        updating.put(state.getContainerName(), update);
+        update.whenComplete((updated, e) -> {
+            if(e != null) log.error("Exception thrown while updating {} to version {}", state, version.getVersion(), e);
+            finish(target, state);
+        });
+        return update;
+    }
+
+    private boolean pull(final String imageName, final Version version) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final boolean pulled = imageUpdater.pullImage(imageName, version);
+        sample.stop(meterRegistry.timer("watchr.image.pull", "image", imageName, "outcome", pulled ? "success" : "failure"));
+        return pulled;
+    }
+
+    private boolean update(final Rollout rollout, final WatchState state, final Version version, final long revision) {
+        if(rollout.halted) {
+            log.warn("Rollout of {} was halted, leaving {} on version {}", rollout.key, state, state.getCurrentVersion());
+            return false;
+        }
+
+        log.info("Updating image for {}...", state);
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final boolean updated = imageUpdater.updateContainer(state.getWatch(), version, rollout.pull);
+        sample.stop(meterRegistry.timer("watchr.update", "container", state.getContainerName(), "image", state.getImageName(),
+                "mode", state.getWatch().getMode().name().toLowerCase(), "outcome", updated ? "success" : "failure"));
+        if(!updated && !rollout.pull.getNow(false)) {
+            log.error("Failed to pull version {} for {}, it's offered again on a later poll", version.getVersion(), state);
+            return false;
+        }
+        if(!updated) {
+            rollout.halted = true;
+            log.error("Failed to update {} to version {}, halting the rollout of {}", state, version.getVersion(), rollout.key);
+            return false;
+        }
+
+        state.setCurrentVersion(version);
+        state.setRevision(revision);
+        stateStore.saveWatch(state);
+        rollout.updated.incrementAndGet();
+        return true;
+    }
+
+    private synchronized void finish(final Rollout rollout, final WatchState state) {
+        updating.remove(state.getContainerName());
+        if(--rollout.pending > 0) return;
+
+        if(!rollout.halted && !rollout.pull.getNow(false)) {
+            // A failed pull isn't the image's fault, the next poll starts a new rollout which pulls again
+            rollouts.remove(rollout.key);
+            return;
+        }
+        rollout.finishedAt = System.currentTimeMillis();
+        log.info("Rollout of {} is {}, {} containers updated", rollout.key, rollout.halted ? "halted" : "complete", rollout.updated.get());
+    }
+
+    /**
+     * Forgets finished rollouts after the retention period. Until then containers which poll late skip the pull
+     * and the canary of a completed rollout and a halted rollout isn't retried.
+     */
+    private void expireRollouts() {
+        final long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(rolloutRetention);
+        final Iterator<Rollout> iterator = rollouts.values().iterator();
+        while(iterator.hasNext()) {
+            final Rollout rollout = iterator.next();
+            if(rollout.pending == 0 && rollout.finishedAt > 0 && rollout.finishedAt < cutoff) iterator.remove();
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + count.incrementAndGet());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pullExecutor.shutdownNow();
+        updateExecutor.shutdownNow();
+    }
+
+    /**
+     * The rollout of a single image:tag to every watch which updates to it
+     */
+    private static class Rollout {
+        private final String key;
+        private final CompletableFuture<Boolean> pull;
+        private final AtomicInteger updated = new AtomicInteger();
+        private CompletableFuture<Boolean> canary;
+        private volatile boolean halted;
+        private int pending;
+        private long finishedAt;
+
+        private Rollout(final String key, final CompletableFuture<Boolean> pull) {
+            this.key = key;
+            this.pull = pull;
+        }
+    }
+}
@@ -2,37 +2,273 @@ package com.app.watchr;
 
 import lombok.Getter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A SemVer 2.0 version i.e. 1.2.3, 1.2.3-rc.1 or 2.0.0-alpine+build.5. Any number of numeric core components
+ * is accepted (1, 1.2, 1.2.3.4) along with an optional leading "v". Precedence follows the SemVer spec: the core
+ * is compared numerically, a version with a pre-release is lower than the same version without one and build
+ * metadata is ignored.
+ */
 public class Version implements Comparable<Version> {
 
+    /**
+     * Upper bound on the number of distinct versions kept in the interning cache
+     */
+    private static final int MAX_CACHED = 50_000;
+    private static final Map<String, Version> CACHE = new ConcurrentHashMap<>();
+    private static final int[] NO_PARTS = new int[0];
+
     @Getter
     private String version;
 
+    /**
+     * Numeric components of the version i.e. [1, 0, 10] for "1.0.10". Trailing zero components are
+     * dropped so "1.0" and "1.0.0" have the same components, hash and compare as equal.
+     */
+    private final int[] parts;
+
+    /**
+     * Dot separated pre-release identifiers or null when this is a stable version. Numeric identifiers
+     * hold their value in preReleaseNumbers and -1 otherwise so they never need to be re-parsed.
+     */
+    private final String[] preRelease;
+    private final long[] preReleaseNumbers;
+
+    @Getter
+    private final String build;
+    private final int hash;
+
     public Version(final String version) {
+        this(version, true);
+    }
+
+    private Version(final String version, final boolean strict) {
         if(version == null)
             throw new IllegalArgumentException("Version cannot be null");
-        if(!version.matches("[0-9]+(\\.[0-9]+)*"))
-            throw new IllegalArgumentException("Invalid version format");
         this.version = version;
+
+        final int length = version.length();
+        int start = length > 1 && (version.charAt(0) == 'v' || version.charAt(0) == 'V') ? 1 : 0;
+        int coreEnd = start;
+        while(coreEnd < length && version.charAt(coreEnd) != '-' && version.charAt(coreEnd) != '+') coreEnd++;
+        int preEnd = coreEnd;
+        if(preEnd < length && version.charAt(preEnd) == '-') {
+            while(preEnd < length && version.charAt(preEnd) != '+') preEnd++;
+        }
+
+        final int[] core = parseCore(version, start, coreEnd);
+        final String[] pre = coreEnd < preEnd ? parseIdentifiers(version, coreEnd + 1, preEnd) : null;
+        final boolean validBuild = preEnd >= length || parseIdentifiers(version, preEnd + 1, length) != null;
+        final boolean valid = core != null && (coreEnd == preEnd || pre != null) && validBuild;
+        if(!valid && strict)
+            throw new IllegalArgumentException("Invalid version format");
+
+        this.parts = valid ? core : NO_PARTS;
+        this.preRelease = valid ? pre : null;
+        this.preReleaseNumbers = preRelease == null ? null : numbers(preRelease);
+        this.build = valid && preEnd < length ? version.substring(preEnd + 1) : null;
+        this.hash = valid ? hash(parts, preReleaseNumbers, preRelease) : 0;
+    }
+
+    /**
+     * Returns the interned Version for a version string, parsing it only the first time it is seen
+     * @param version String the version i.e. 1.0.2
+     * @return Version the parsed version
+     * @throws IllegalArgumentException if the version is not a valid format
+     */
+    public static Version of(final String version) {
+        final Version parsed = parse(version);
+        if(parsed == null)
+            throw new IllegalArgumentException("Invalid version format");
+        return parsed;
+    }
+
+    /**
+     * Returns the interned Version for a version string or null if the string is not a version. Tags which aren't
+     * versions (i.e. "latest") are common so they are rejected without throwing.
+     * @param version String the version i.e. 1.0.2
+     * @return Version the parsed version or null when the string is not a valid version
+     */
+    public static Version parse(final String version) {
+        if(version == null)
+            return null;
+        Version cached = CACHE.get(version);
+        if(cached != null) return cached.parts == NO_PARTS ? null : cached;
+
+        cached = new Version(version, false);
+        if(CACHE.size() < MAX_CACHED) {
+            final Version previous = CACHE.putIfAbsent(version, cached);
+            if(previous != null) cached = previous;
+        }
+        return cached.parts == NO_PARTS ? null : cached;
+    }
+
+    /**
+     * Parses [0-9]+(\.[0-9]+)* in a single pass without a regex
+     * @return int[] components with trailing zeros dropped or null if the core is invalid
+     */
+    private static int[] parseCore(final String version, final int start, final int end) {
+        if(start >= end) return null;
+
+        int count = 1;
+        for(int i = start; i < end; i++) {
+            if(version.charAt(i) == '.') count++;
+        }
+
+        final int[] parts = new int[count];
+        int index = 0;
+        int digits = 0;
+        long value = 0;
+        for(int i = start; i < end; i++) {
+            final char c = version.charAt(i);
+            if(c == '.') {
+                if(digits == 0) return null;
+                parts[index++] = (int) value;
+                value = 0;
+                digits = 0;
+            } else if(c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if(value > Integer.MAX_VALUE) return null;
+                digits++;
+            } else {
+                return null;
+            }
+        }
+        if(digits == 0) return null;
+        parts[index] = (int) value;
+
+        int significant = count;
+        while(significant > 1 && parts[significant - 1] == 0) significant--;
+        if(significant == count) return parts;
+
+        final int[] trimmed = new int[significant];
+        System.arraycopy(parts, 0, trimmed, 0, significant);
+        return trimmed;
+    }
+
+    /**
+     * Parses dot separated [0-9A-Za-z-]+ identifiers
+     * @return String[] identifiers or null if any identifier is empty or contains an invalid character
+     */
+    private static String[] parseIdentifiers(final String version, final int start, final int end) {
+        if(start >= end) return null;
+
+        int count = 1;
+        for(int i = start; i < end; i++) {
+            final char c = version.charAt(i);
+            if(c == '.') {
+                count++;
+            } else if(!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && c != '-') {
+                return null;
+            }
+        }
+
+        final String[] identifiers = new String[count];
+        int index = 0;
+        int from = start;
+        for(int i = start; i <= end; i++) {
+            if(i == end || version.charAt(i) == '.') {
+                if(i == from) return null;
+                identifiers[index++] = version.substring(from, i);
+                from = i + 1;
+            }
+        }
+        return identifiers;
+    }
+
+    private static long[] numbers(final String[] identifiers) {
+        final long[] numbers = new long[identifiers.length];
+        for(int i = 0; i < identifiers.length; i++) {
+            final String identifier = identifiers[i];
+            long value = identifier.length() <= 18 ? 0 : -1;
+            for(int j = 0; j < identifier.length() && value >= 0; j++) {
+                final char c = identifier.charAt(j);
+                value = c >= '0' && c <= '9' ? value * 10 + (c - '0') : -1;
+            }
+            numbers[i] = value;
+        }
+        return numbers;
+    }
+
+    private static int hash(final int[] parts, final long[] preReleaseNumbers, final String[] preRelease) {
+        int hash = 1;
+        for(int part : parts) {
+            hash = 31 * hash + part;
+        }
+        if(preRelease != null) {
+            for(int i = 0; i < preRelease.length; i++) {
+                hash = 31 * hash + (preReleaseNumbers[i] >= 0 ? Long.hashCode(preReleaseNumbers[i]) : preRelease[i].hashCode());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return int the first numeric component of the version
+     */
+    public int getMajor() {
+        return parts[0];
+    }
+
+    /**
+     * @return Boolean true if this version has a pre-release i.e. 1.0.0-rc.1
+     */
+    public boolean isPreRelease() {
+        return preRelease != null;
+    }
+
+    /**
+     * @return String the pre-release part of the version i.e. "rc.1" for 1.0.0-rc.1 or null for a stable version
+     */
+    public String getPreRelease() {
+        return preRelease == null ? null : String.join(".", preRelease);
     }
 
     @Override
     public int compareTo(final Version that) {
         if(that == null)
             return 1;
-        String[] thisParts = this.getVersion().split("\\.");
-        String[] thatParts = that.getVersion().split("\\.");
-        int length = Math.max(thisParts.length, thatParts.length);
+        if(this == that)
+            return 0;
+        final int[] thisParts = this.parts;
+        final int[] thatParts = that.parts;
+        final int length = Math.max(thisParts.length, thatParts.length);
         for(int i = 0; i < length; i++) {
-            int thisPart = i < thisParts.length ?
-                    Integer.parseInt(thisParts[i]) : 0;
-            int thatPart = i < thatParts.length ?
-                    Integer.parseInt(thatParts[i]) : 0;
+            int thisPart = i < thisParts.length ? thisParts[i] : 0;
+            int thatPart = i < thatParts.length ? thatParts[i] : 0;
             if(thisPart < thatPart)
                 return -1;
             if(thisPart > thatPart)
                 return 1;
         }
-        return 0;
+
+        // A pre-release version has a lower precedence than the stable version
+        if(this.preRelease == null)
+            return that.preRelease == null ? 0 : 1;
+        if(that.preRelease == null)
+            return -1;
+
+        final int identifiers = Math.min(this.preRelease.length, that.preRelease.length);
+        for(int i = 0; i < identifiers; i++) {
+            final long thisNumber = this.preReleaseNumbers[i];
+            final long thatNumber = that.preReleaseNumbers[i];
+            final int result;
+            if(thisNumber >= 0 && thatNumber >= 0) {
+                result = Long.compare(thisNumber, thatNumber);
+            } else if(thisNumber >= 0) {
+                // Numeric identifiers always have a lower precedence than alphanumeric ones
+                result = -1;
+            } else if(thatNumber >= 0) {
+                result = 1;
+            } else {
+                result = this.preRelease[i].compareTo(that.preRelease[i]);
+            }
+            if(result != 0)
+                return result < 0 ? -1 : 1;
+        }
+        return Integer.compare(this.preRelease.length, that.preRelease.length);
     }
 
     @Override
@@ -48,7 +284,12 @@ public class Version implements Comparable<Version> {
             return false;
         if(this.getClass() != that.getClass())
             return false;
-        return this.compareTo((Version) that) == 0;
+        return this.hash == ((Version) that).hash && this.compareTo((Version) that) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
 }
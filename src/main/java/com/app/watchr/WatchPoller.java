@@ -0,0 +1,116 @@
+package com.app.watchr;
+
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.PlatformResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class WatchPoller {
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Autowired
+    private ImageUpdater imageUpdater;
+
+    @Autowired
+    private UpdateOrchestrator updateOrchestrator;
+
+    @Autowired
+    private PlatformResolver platformResolver;
+
+    /**
+     * Polls the remote repository for a single watch and updates the watched container when
+     * a newer version has been published. The first poll for a watch only records the baseline version.
+     * Only the tags which changed since the previous poll are looked at. Updates are handed to the update
+     * orchestrator and the watch only moves to the new revision once its container was updated.
+     *
+     * The calling thread never waits on the registry, the tag changes are handled on the executor once they arrive.
+     * @param state WatchState the watch to poll
+     * @param executor Executor which handles the tag changes, their handling may block on the docker daemon
+     * @return CompletableFuture completed once the tag changes were handled
+     */
+    public CompletableFuture<Void> poll(final WatchState state, final Executor executor) {
+        if(updateOrchestrator.isUpdating(state)) {
+            log.debug("Update of {} is still in progress, skipping this poll", state);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return dockerService.getTagChanges(state.getImageName(), state.getRevision())
+                .thenAcceptAsync(delta -> handle(state, delta), executor);
+    }
+
+    private void handle(final WatchState state, final TagDelta delta) {
+        state.setLastPolled(System.currentTimeMillis());
+
+        if(state.getRevision() < 0) {
+            state.setCurrentVersion(state.getTagFilter().newest(delta.getAdded()));
+            state.setRevision(delta.getRevision());
+            log.info("Found {} initial tags for {}, current version: {}", delta.getAdded().size(), state, state.getCurrentVersion());
+            return;
+        }
+
+        if(delta.isEmpty()) {
+            log.debug("No tag changes for {}", state);
+            state.setRevision(delta.getRevision());
+            return;
+        }
+
+        log.info("Tag changes for {} added: {} removed: {} re-pushed: {}", state, names(delta.getAdded()), names(delta.getRemoved()), names(delta.getRepushed()));
+        final Platform platform = dockerService.getPlatform();
+        TagRecord update = imageUpdater.findUpdate(state.getCurrentVersion(), delta, state.getTagFilter(),
+                record -> platformResolver.isAvailable(state.getImageName(), record));
+        if(update != null && update.matchesAny(imageUpdater.getRunningDigests(state.getContainerName()), platform)) {
+            // A new tag was pushed for the image that's already running, there's nothing to pull or restart
+            log.info("Version {} points at the image {} is already running. Skipping restart.", update.getVersion().getVersion(), state);
+            state.setCurrentVersion(update.getVersion());
+            state.setRevision(delta.getRevision());
+            return;
+        }
+
+        if(update == null) {
+            final TagRecord repushed = imageUpdater.findRepush(state.getCurrentVersion(), delta);
+            if(repushed != null && repushed.getDigest() != null) {
+                final List<String> running = imageUpdater.getRunningDigests(state.getContainerName());
+                if(!running.isEmpty() && !repushed.matchesAny(running, platform) && platformResolver.isAvailable(state.getImageName(), repushed)) {
+                    log.info("Tag {} was re-pushed with digest {} but {} runs {}", repushed.getName(), repushed.getDigest(), state, running);
+                    update = repushed;
+                }
+            }
+        }
+
+        if(update == null) {
+            log.info("No need to update {}. No newer version was published", state);
+            state.setRevision(delta.getRevision());
+            return;
+        }
+
+        final Version version = update.getVersion();
+        if(state.getWatch().getPolicy() == UpdatePolicy.MONITOR) {
+            log.info("Version {} is available for {} but the watch policy is {}. Skipping update.", version.getVersion(), state, UpdatePolicy.MONITOR);
+            state.setRevision(delta.getRevision());
+            return;
+        }
+
+        log.info("Queueing update of {} to version {}", state, version.getVersion());
+        updateOrchestrator.submit(state, version, delta.getRevision());
+    }
+
+    private static String names(final Collection<TagRecord> records) {
+        return records.stream().map(TagRecord::getName).collect(Collectors.joining(", ", "[", "]"));
+    }
+}
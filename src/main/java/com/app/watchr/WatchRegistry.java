@@ -0,0 +1,53 @@
+package com.app.watchr;
+
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+public class WatchRegistry {
+
+    private final Map<String, WatchState> watches = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a new watch keyed by its container name. A container can only be watched once
+     * so registering the same container twice keeps the first registration.
+     * @param watch Watch the container, image and policy to watch
+     * @return WatchState the state for this watch
+     */
+    public WatchState register(final Watch watch) {
+        if(watch.getContainerName() == null || watch.getContainerName().isEmpty())
+            throw new IllegalArgumentException("Watch container name cannot be null or blank");
+        if(watch.getImageName() == null || watch.getImageName().isEmpty())
+            throw new IllegalArgumentException("Watch image name cannot be null or blank");
+
+        return watches.computeIfAbsent(watch.getContainerName(), name -> {
+            log.info("Registered watch for container: {} on image: {} with policy: {}", name, watch.getImageName(), watch.getPolicy());
+            return new WatchState(watch);
+        });
+    }
+
+    /**
+     * Returns the state for a watched container
+     * @param containerName String the container name
+     * @return WatchState the state or null if the container is not watched
+     */
+    public WatchState get(final String containerName) {
+        return watches.get(containerName);
+    }
+
+    public Collection<WatchState> getAll() {
+        return Collections.unmodifiableCollection(watches.values());
+    }
+
+    public int size() {
+        return watches.size();
+    }
+}
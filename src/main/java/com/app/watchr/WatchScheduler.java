@@ -0,0 +1,147 @@
+package com.app.watchr;
+
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.RegistryClient;
+import com.app.watchr.service.StateStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls every registered watch on a bounded pool of worker threads. Registry requests don't hold a worker thread
+ * while they wait for a response and each watch re-schedules itself once its own poll completes so a slow
+ * registry call only delays that single watch. The delay before the next poll is planned by the PollPlanner and
+ * a random jitter is added to every delay so that watches don't all hit the registry at the same instant.
+ */
+@Slf4j
+@Component
+public class WatchScheduler {
+
+    @Autowired
+    private WatchPoller watchPoller;
+
+    @Autowired
+    private StateStore stateStore;
+
+    @Autowired
+    private PollPlanner pollPlanner;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${polling.jitter:5}")
+    private long pollingJitter;
+
+    @Value("${polling.threads:4}")
+    private int pollingThreads;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * The next poll of each watch by container name
+     */
+    private final Map<String, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+
+    /**
+     * Watches which should be polled again right away, by container name
+     */
+    private final Set<String> pollRequested = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "watchr-poll-" + count.incrementAndGet());
+            return thread;
+        };
+        this.executor = Executors.newScheduledThreadPool(pollingThreads, threadFactory);
+    }
+
+    /**
+     * Schedules the first poll for a watch. The first poll is spread over the jitter window
+     * so a large registry doesn't poll every watch at start up.
+     * @param state WatchState the watch to begin polling
+     */
+    public void start(final WatchState state) {
+        schedule(state, jitter(0));
+    }
+
+    /**
+     * Polls a watch right away instead of waiting for its next scheduled poll, i.e. when a push webhook arrives.
+     * If a poll of the watch is already in flight the watch is polled again as soon as that poll completes.
+     * @param state WatchState the watch to poll
+     */
+    public void pollNow(final WatchState state) {
+        pollRequested.add(state.getContainerName());
+        final ScheduledFuture<?> next = scheduled.get(state.getContainerName());
+        if(next != null && next.cancel(false)) schedule(state, 0);
+    }
+
+    private void schedule(final WatchState state, final long delayMillis) {
+        if(executor.isShutdown()) return;
+        scheduled.put(state.getContainerName(), executor.schedule(() -> run(state), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void run(final WatchState state) {
+        if(!state.getInFlight().compareAndSet(false, true)) {
+            log.warn("Poll for {} is still in flight, skipping this interval.", state);
+            return;
+        }
+        pollRequested.remove(state.getContainerName());
+
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Void> poll;
+        try {
+            poll = watchPoller.poll(state, executor);
+        } catch(RuntimeException e) {
+            poll = new CompletableFuture<>();
+            poll.completeExceptionally(e);
+        }
+
+        // The poll thread is free while the registry responds, the next poll is scheduled once this one completes
+        poll.whenComplete((ignored, e) -> {
+            if(e != null) log.error("Exception thrown while polling {}", state, RegistryClient.unwrap(e));
+            sample.stop(meterRegistry.timer("watchr.poll", "container", state.getContainerName(), "image", state.getImageName(),
+                    "outcome", e == null ? "success" : "failure"));
+            state.setFailures(e == null ? 0 : state.getFailures() + 1);
+            stateStore.saveWatch(state);
+            state.getInFlight().set(false);
+            final long delay = pollPlanner.nextDelay(state, e);
+            schedule(state, pollRequested.remove(state.getContainerName()) ? 0 : delay + jitter(delay));
+        });
+    }
+
+    /**
+     * @param delay long the planned delay in millis
+     * @return long a random jitter of up to the larger of "polling.jitter" seconds and a tenth of the delay, so watches
+     * which were held back together (i.e. by a rate limit) don't all poll again at the same instant
+     */
+    private long jitter(final long delay) {
+        final long bound = Math.max(TimeUnit.SECONDS.toMillis(pollingJitter), delay / 10);
+        if(bound <= 0) return 0;
+        return ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
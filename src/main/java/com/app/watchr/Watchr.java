@@ -1,16 +1,18 @@
 package com.app.watchr;
 
-import com.app.watchr.service.DockerService;
+import com.app.watchr.config.WatchProperties;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.StateStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.PostConstruct;
-import java.util.List;
 
 @Slf4j
 @EnableScheduling
@@ -18,40 +20,44 @@ import java.util.List;
 public class Watchr {
 
 	@Autowired
-	private DockerService dockerService;
+	private WatchRegistry watchRegistry;
 
 	@Autowired
-	private ImageUpdater imageUpdater;
+	private WatchScheduler watchScheduler;
 
-	@Value("${container.name}")
+	@Autowired
+	private WatchProperties watchProperties;
+
+	@Autowired
+	private StateStore stateStore;
+
+	@Value("${container.name:}")
 	private String containerName;
 
-	@Value("${image.name}")
+	@Value("${image.name:}")
 	private String imageName;
 
-	private List<Version> tagNames; // Tags should all be semantically versioned
-
 	public static void main(String[] args) {
 		SpringApplication.run(Watchr.class, args);
 	}
 
 	@PostConstruct
 	public void init() {
-		log.info("Finding initial tags from the Docker hub repository...");
-		this.tagNames = dockerService.getRemoteVersions(imageName);
-		log.info("Found the following tags from initial query: {}", tagNames);
-	}
+		// The single container.name/image.name pair is still supported as a default watch
+		if(!containerName.isEmpty() && !imageName.isEmpty()) {
+			watchRegistry.register(new Watch(containerName, imageName, UpdatePolicy.AUTO));
+		}
+
+		for(Watch watch : watchProperties.getWatches()) {
+			watchRegistry.register(watch);
+		}
 
-	@Scheduled(fixedDelayString = "${polling.delay:60}000")
-	private void poll() {
-		List<Version> latestTags = dockerService.getRemoteVersions(imageName);
-		log.info("Latest Tags: {}", latestTags);
-		// If new tag is here update the container
-		if(imageUpdater.shouldUpdate(tagNames, latestTags)) {
-			log.info("Updating image...");
-			imageUpdater.updateContainer(containerName, imageName, imageUpdater.getLatestVersion());
-		} else {
-			log.info("No need to update. Latest tags are the same");
+		log.info("Finding initial tags from the Docker hub repository for {} watches...", watchRegistry.size());
+		for(WatchState state : watchRegistry.getAll()) {
+			if(stateStore.restore(state)) {
+				log.info("Restored {} at version: {}", state, state.getCurrentVersion());
+			}
+			watchScheduler.start(state);
 		}
 	}
 }
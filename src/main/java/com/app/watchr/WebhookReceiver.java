@@ -0,0 +1,269 @@
+package com.app.watchr;
+
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.EmbeddedServer;
+import com.app.watchr.service.RegistryBackend;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.HttpExchange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Receives push webhooks so a new version is picked up seconds after it's pushed rather than on the next poll.
+ * Every watch of a pushed image is polled straight away, which runs the usual update path with its tag policy,
+ * update policy and rollout, while regular polling carries on as a slower safety net.
+ *
+ * Both Docker Hub webhooks ("repository.repo_name") and registry notifications ("events[].target.repository") are
+ * understood. Registry notifications name the repository without its host, so the host the push was sent to
+ * ("events[].request.host") is matched against the registry host of the watched image. Requests must carry the shared "webhook.secret", either as a "token" query parameter (Docker Hub can't
+ * send headers), an "Authorization: Bearer" header or an "X-Hub-Signature-256" HMAC-SHA256 signature of the body.
+ */
+@Slf4j
+@Component
+public class WebhookReceiver {
+    private static final int MAX_BODY = 64 * 1024;
+    private static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+    private static final String DOCKER_HUB = "docker.io";
+
+    @Autowired
+    private EmbeddedServer embeddedServer;
+
+    @Autowired
+    private WatchRegistry watchRegistry;
+
+    @Autowired
+    private WatchScheduler watchScheduler;
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Value("${webhook.enabled:false}")
+    private boolean enabled;
+
+    @Value("${webhook.path:/webhook}")
+    private String path;
+
+    @Value("${webhook.secret:}")
+    private String secret;
+
+    private final ObjectReader reader = new ObjectMapper().readerFor(JsonNode.class);
+
+    @PostConstruct
+    public void init() {
+        if(!enabled) return;
+        if(secret == null || secret.isEmpty()) {
+            log.error("Push webhooks are enabled but no webhook.secret is set, not accepting webhooks");
+            return;
+        }
+        embeddedServer.register(path, this::handle);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if(!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            final byte[] body = readBody(exchange.getRequestBody());
+            if(body == null) {
+                respond(exchange, 413, "Body too large");
+                return;
+            }
+
+            if(!isAuthorized(exchange, body)) {
+                log.warn("Rejected push webhook from {} with a missing or invalid secret", exchange.getRemoteAddress());
+                respond(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            final Map<String, String> pushes;
+            try {
+                pushes = parsePushes(reader.readValue(body));
+            } catch(IOException e) {
+                respond(exchange, 400, "Invalid payload");
+                return;
+            }
+
+            int polled = 0;
+            for(Map.Entry<String, String> push : pushes.entrySet()) {
+                polled += pollWatches(push.getKey(), push.getValue());
+            }
+            respond(exchange, 202, "Polling " + polled + " watches");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Polls every watch of a pushed image right away
+     * @param imageName String the image name from the webhook
+     * @param tag String the pushed tag or null if the webhook didn't include it
+     * @return int the number of watches polled
+     */
+    private int pollWatches(final String imageName, final String tag) {
+        int polled = 0;
+        for(WatchState state : watchRegistry.getAll()) {
+            if(!isSameImage(state.getImageName(), imageName)) continue;
+            log.info("Received push of {}:{}, polling {} now", imageName, tag, state);
+            // Tags fetched moments ago, or still being fetched, may predate the push
+            dockerService.expireTags(state.getImageName());
+            watchScheduler.pollNow(state);
+            polled++;
+        }
+        if(polled == 0) log.debug("Received push of {}:{} which no watch follows", imageName, tag);
+        return polled;
+    }
+
+    /**
+     * Reads the pushed images from a webhook payload
+     * @param payload JsonNode a Docker Hub webhook or a registry notification
+     * @return Map of pushed tag by image name, the tag is null when the payload doesn't name one
+     */
+    private static Map<String, String> parsePushes(final JsonNode payload) {
+        final Map<String, String> pushes = new LinkedHashMap<>();
+        final JsonNode repoName = payload.path("repository").path("repo_name");
+        if(repoName.isTextual()) {
+            pushes.put(DOCKER_HUB + "/" + repoName.asText(), payload.path("push_data").path("tag").asText(null));
+        }
+
+        for(JsonNode event : payload.path("events")) {
+            final JsonNode target = event.path("target");
+            if(!"push".equals(event.path("action").asText()) || !target.path("repository").isTextual()) continue;
+            final String host = event.path("request").path("host").asText("");
+            final String repository = target.path("repository").asText();
+            pushes.put(host.isEmpty() ? repository : host + "/" + repository, target.path("tag").asText(null));
+        }
+        return pushes;
+    }
+
+    /**
+     * Returns true if a pushed image is a watched image. A push which doesn't say which registry it was sent to
+     * matches any watched image with the same repository path.
+     * @param watched String the watched image i.e. "registry.example.com:5000/team/app"
+     * @param pushed String the pushed image i.e. "registry.example.com:5000/team/app", "docker.io/team/app" or "team/app"
+     * @return Boolean true if both name the same repository of the same registry
+     */
+    private static boolean isSameImage(final String watched, final String pushed) {
+        final String path = repositoryPath(pushed);
+        if(!path.equals(pushed) && !Objects.equals(registryHost(pushed), registryHost(watched))) return false;
+        return normalize(repositoryPath(watched)).equals(normalize(path));
+    }
+
+    /**
+     * @return String the lower case registry host of an image or null for Docker Hub
+     */
+    private static String registryHost(final String imageName) {
+        final String host = RegistryBackend.registryHost(imageName);
+        return host == null ? null : host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return String the image name without its registry host, docker.io included
+     */
+    private static String repositoryPath(final String imageName) {
+        final int slash = imageName.indexOf('/');
+        if(slash < 0) return imageName;
+        final String first = imageName.substring(0, slash);
+        return first.contains(".") || first.contains(":") || first.equals("localhost") ? imageName.substring(slash + 1) : imageName;
+    }
+
+    /**
+     * Official images are named with and without the "library/" namespace i.e. "nginx" and "library/nginx"
+     */
+    private static String normalize(final String imageName) {
+        return imageName.startsWith("library/") ? imageName.substring("library/".length()) : imageName;
+    }
+
+    private boolean isAuthorized(final HttpExchange exchange, final byte[] body) {
+        final String signature = exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER);
+        if(signature != null) return matches(signature, "sha256=" + hmac(body));
+
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if(authorization != null) return matches(authorization, "Bearer " + secret);
+
+        final String token = queryParameter(exchange.getRequestURI().getRawQuery(), "token");
+        return token != null && matches(token, secret);
+    }
+
+    /**
+     * Compares in constant time so response times don't reveal how much of a guessed secret was right
+     */
+    private static boolean matches(final String given, final String expected) {
+        return MessageDigest.isEqual(given.getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String hmac(final byte[] body) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            final StringBuilder hex = new StringBuilder();
+            for(byte b : mac.doFinal(body)) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch(GeneralSecurityException e) {
+            log.error("Security exception thrown while signing a webhook body", e);
+            return "";
+        }
+    }
+
+    private static String queryParameter(final String query, final String name) {
+        if(query == null) return null;
+        for(String parameter : query.split("&")) {
+            final int equals = parameter.indexOf('=');
+            if(equals > 0 && parameter.substring(0, equals).equals(name)) {
+                try {
+                    return URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8.name());
+                } catch(UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param in InputStream the request body
+     * @return byte[] the body or null if it's larger than the limit
+     */
+    private static byte[] readBody(final InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if(body.size() > MAX_BODY) return null;
+        }
+        return body.toByteArray();
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String message) throws IOException {
+        final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.app.watchr.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binds the credentials of each registry host configured under the "registry" prefix. Hosts contain dots
+ * and ports so they're given in brackets i.e.
+ * registry.credentials[registry.example.com:5000].username=user
+ * registry.credentials[registry.example.com:5000].password=secret
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "registry")
+public class RegistryProperties {
+    private Map<String, Credentials> credentials = new HashMap<>();
+
+    /**
+     * @param host String the registry host i.e. ghcr.io or registry.example.com:5000
+     * @return Credentials configured for exactly this host or null when it's reached anonymously
+     */
+    public Credentials credentialsFor(final String host) {
+        if(host == null) return null;
+        final Credentials exact = credentials.get(host);
+        if(exact != null) return exact;
+        return credentials.entrySet().stream()
+                .filter(entry -> entry.getKey().equalsIgnoreCase(host))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Data
+    public static class Credentials {
+        private String username;
+        private String password;
+    }
+}
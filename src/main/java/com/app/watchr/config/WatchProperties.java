@@ -0,0 +1,21 @@
+package com.app.watchr.config;
+
+import com.app.watchr.model.Watch;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds the list of watches configured under the "watchr" prefix i.e.
+ * watchr.watches[0].container-name=my_container
+ * watchr.watches[0].image-name=user/my_image
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "watchr")
+public class WatchProperties {
+    private List<Watch> watches = new ArrayList<>();
+}
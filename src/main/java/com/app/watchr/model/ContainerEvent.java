@@ -0,0 +1,35 @@
+package com.app.watchr.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * A single container event from the docker daemon's /events stream
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ContainerEvent {
+    @JsonProperty("Type")
+    private String type;
+
+    @JsonProperty("Action")
+    private String action;
+
+    @JsonProperty("Actor")
+    private Actor actor;
+
+    private long time;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Actor {
+        @JsonProperty("ID")
+        private String id;
+
+        @JsonProperty("Attributes")
+        private Map<String, String> attributes;
+    }
+}
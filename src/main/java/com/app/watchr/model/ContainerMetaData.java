@@ -1,12 +1,18 @@
 package com.app.watchr.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Typed view of the parts of "docker container inspect" that Watchr needs to re-create a container.
+ * It is deserialized once per container and reused for every update.
+ */
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ContainerMetaData {
@@ -16,9 +22,159 @@ public class ContainerMetaData {
     @JsonProperty("Name")
     private String name;
 
+    /**
+     * The id of the image the container was created from
+     */
+    @JsonProperty("Image")
+    private String image;
+
+    @JsonProperty("State")
+    private State state;
+
+    @JsonProperty("Config")
+    private Config config;
+
+    @JsonProperty("HostConfig")
+    private HostConfig hostConfig;
+
+    @JsonProperty("Mounts")
+    private List<Mount> mounts = Collections.emptyList();
+
+    @JsonProperty("NetworkSettings")
+    private NetworkSettings networkSettings;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class State {
+        @JsonProperty("Status")
+        private String status;
+
+        @JsonProperty("Running")
+        private boolean running;
+
+        @JsonProperty("Restarting")
+        private boolean restarting;
+
+        @JsonProperty("ExitCode")
+        private int exitCode;
+
+        @JsonProperty("Health")
+        private Health health;
+    }
+
+    @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class HostConfig {
-        private Map<String, List<Map<String, String>>> PortBindings;
+    public static class Health {
+        @JsonProperty("Status")
+        private String status;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Config {
+        /**
+         * The image reference the container was started with i.e. user/image:1.0.2
+         */
+        @JsonProperty("Image")
+        private String image;
+
+        @JsonProperty("Env")
+        private List<String> env = Collections.emptyList();
+
+        @JsonProperty("Labels")
+        private Map<String, String> labels = Collections.emptyMap();
+
+        @JsonProperty("ExposedPorts")
+        private Map<String, Object> exposedPorts = Collections.emptyMap();
+
+        @JsonProperty("StopSignal")
+        private String stopSignal;
+
+        @JsonProperty("StopTimeout")
+        private Integer stopTimeout;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HostConfig {
+        @JsonProperty("PortBindings")
+        private Map<String, List<PortBinding>> portBindings = Collections.emptyMap();
+
+        @JsonProperty("RestartPolicy")
+        private RestartPolicy restartPolicy;
+
+        @JsonProperty("NetworkMode")
+        private String networkMode;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PortBinding {
+        @JsonProperty("HostIp")
+        private String hostIp;
+
+        @JsonProperty("HostPort")
+        private String hostPort;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RestartPolicy {
+        @JsonProperty("Name")
+        private String name;
+
+        @JsonProperty("MaximumRetryCount")
+        private int maximumRetryCount;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Mount {
+        @JsonProperty("Type")
+        private String type;
+
+        @JsonProperty("Name")
+        private String name;
+
+        @JsonProperty("Source")
+        private String source;
+
+        @JsonProperty("Destination")
+        private String destination;
+
+        @JsonProperty("RW")
+        private boolean readWrite = true;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class NetworkSettings {
+        @JsonProperty("Networks")
+        private Map<String, Network> networks = Collections.emptyMap();
+
+        /**
+         * Host ports actually bound to each container port, including ports docker picked at random
+         */
+        @JsonProperty("Ports")
+        private Map<String, List<PortBinding>> ports = Collections.emptyMap();
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Network {
+        @JsonProperty("Aliases")
+        private List<String> aliases;
+
+        @JsonProperty("IPAddress")
+        private String ipAddress;
+    }
+
+    /**
+     * Returns the container name without the leading slash docker adds to it
+     * @return String container name
+     */
+    @JsonIgnore
+    public String getContainerName() {
+        return name != null && name.startsWith("/") ? name.substring(1) : name;
     }
-    private Map<String, String> HostConfig;
 }
@@ -0,0 +1,30 @@
+package com.app.watchr.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An image stored on the docker host as listed by the engine's /images/json
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LocalImage {
+    @JsonProperty("Id")
+    private String id;
+
+    /**
+     * Every repository:tag reference of the image, empty for dangling images
+     */
+    @JsonProperty("RepoTags")
+    private List<String> repoTags = new ArrayList<>();
+
+    /**
+     * Bytes the image takes up on disk, 0 when it isn't known
+     */
+    @JsonProperty("Size")
+    private long size;
+}
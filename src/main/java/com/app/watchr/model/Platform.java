@@ -0,0 +1,89 @@
+package com.app.watchr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * An os/architecture/variant triple using the same names as image manifests i.e. linux/arm64 or linux/arm/v7
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class Platform {
+    private final String os;
+    private final String architecture;
+    private final String variant;
+
+    /**
+     * Parses a platform string i.e. "linux/arm/v7"
+     * @param platform String os/architecture[/variant]
+     * @return Platform the parsed platform
+     */
+    public static Platform parse(final String platform) {
+        final String[] parts = platform.trim().split("/");
+        if(parts.length < 2)
+            throw new IllegalArgumentException("Invalid platform: " + platform + " expected os/architecture[/variant]");
+        return new Platform(parts[0], normalize(parts[1]), parts.length > 2 ? parts[2] : null);
+    }
+
+    /**
+     * Builds a platform from the architecture names reported by uname or the JVM i.e. x86_64, aarch64 or armv7l
+     * @param os String operating system
+     * @param machine String machine architecture
+     * @return Platform the platform using manifest architecture names
+     */
+    public static Platform of(final String os, final String machine) {
+        final String architecture = normalize(machine);
+        String variant = null;
+        if("arm".equals(architecture)) {
+            variant = machine.startsWith("armv6") ? "v6" : "v7";
+        } else if("arm64".equals(architecture)) {
+            variant = "v8";
+        }
+        return new Platform(os.toLowerCase(), architecture, variant);
+    }
+
+    private static String normalize(final String machine) {
+        switch(machine.toLowerCase()) {
+            case "x86_64":
+            case "x86-64":
+            case "amd64":
+                return "amd64";
+            case "aarch64":
+            case "arm64":
+                return "arm64";
+            case "i386":
+            case "i686":
+            case "x86":
+                return "386";
+            default:
+                return machine.toLowerCase().startsWith("arm") ? "arm" : machine.toLowerCase();
+        }
+    }
+
+    /**
+     * Returns true if an image from a tag listing was built for this platform. A missing variant on either side matches any variant.
+     * @param image DockerImage an image from a tag listing
+     * @return Boolean true if the image can run on this platform
+     */
+    public boolean matches(final DockerImage image) {
+        if(image == null || !os.equals(image.getOs()) || !architecture.equals(image.getArchitecture())) return false;
+        return variant == null || image.getVariant() == null || image.getVariant().isEmpty() || variant.equals(image.getVariant());
+    }
+
+    /**
+     * Returns true if an image built for a platform named in a manifest runs on this platform
+     * @param platform Platform a platform from an image index or image config
+     * @return Boolean true if the image can run on this platform
+     */
+    public boolean matches(final Platform platform) {
+        if(platform == null || !os.equals(platform.os) || !architecture.equals(normalize(platform.architecture))) return false;
+        return variant == null || platform.variant == null || platform.variant.isEmpty() || variant.equals(platform.variant);
+    }
+
+    @Override
+    public String toString() {
+        return os + "/" + architecture + (variant == null ? "" : "/" + variant);
+    }
+}
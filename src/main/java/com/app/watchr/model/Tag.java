@@ -15,6 +15,11 @@ public class Tag {
     private long repository;
     private boolean v2;
 
+    /**
+     * Digest of the manifest (list) the tag points at
+     */
+    private String digest;
+
     @JsonProperty("last_updated")
     private String lastUpdated;
 
@@ -0,0 +1,38 @@
+package com.app.watchr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The tags of an image which were added, removed or re-pushed between two revisions of its TagIndex
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TagDelta {
+    /**
+     * The index revision this delta brings a reader up to
+     */
+    private final long revision;
+
+    /**
+     * True when the reader was too far behind for an incremental delta. Every known tag is then listed as added.
+     */
+    private final boolean reset;
+
+    private final Collection<TagRecord> added;
+    private final Collection<TagRecord> removed;
+    private final Collection<TagRecord> repushed;
+
+    public static TagDelta empty(final long revision) {
+        return new TagDelta(revision, false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && repushed.isEmpty();
+    }
+}
@@ -0,0 +1,16 @@
+package com.app.watchr.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A page of tag names from the OCI distribution API's /v2/{name}/tags/list
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TagList {
+    private String name;
+    private List<String> tags;
+}
@@ -0,0 +1,19 @@
+package com.app.watchr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The outcome of reading a single page of a tag listing. The tags themselves are streamed
+ * to a consumer while the page is read so only the paging and validator info is kept here.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TagPage {
+    private final boolean notModified;
+    private final String next;
+    private final String eTag;
+    private final String lastModified;
+}
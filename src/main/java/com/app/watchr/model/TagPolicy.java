@@ -0,0 +1,37 @@
+package com.app.watchr.model;
+
+import lombok.Data;
+
+/**
+ * Decides which of an image's tags a watch is allowed to update to i.e.
+ * watchr.watches[0].tag-policy.pin-major=2
+ * watchr.watches[0].tag-policy.suffix=alpine
+ */
+@Data
+public class TagPolicy {
+    /**
+     * Skip pre-release versions such as 1.2.0-rc.1
+     */
+    private boolean stableOnly = true;
+
+    /**
+     * Only consider versions with this major version
+     */
+    private Integer pinMajor;
+
+    /**
+     * Only consider tags matching this regex
+     */
+    private String include;
+
+    /**
+     * Skip tags matching this regex
+     */
+    private String exclude;
+
+    /**
+     * Only consider tags of a suffix family i.e. "alpine" matches 1.2.3-alpine and 1.2.3-alpine3.18.
+     * Within a family the suffix is not treated as a pre-release.
+     */
+    private String suffix;
+}
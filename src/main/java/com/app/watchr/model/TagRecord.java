@@ -0,0 +1,119 @@
+package com.app.watchr.model;
+
+import com.app.watchr.Version;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What Watchr remembers about a single remote tag. A tag whose digest or last updated
+ * time changes without its name changing has been re-pushed.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TagRecord {
+    private final String name;
+    private final Version version;
+    private final String digest;
+    private final String lastUpdated;
+
+    /**
+     * Per-platform images the tag points at, empty when the registry doesn't list them
+     */
+    private final List<DockerImage> images;
+
+    /**
+     * Compressed size of the tag across its images in bytes, 0 when the registry doesn't say. Only known for tags
+     * fetched since startup as sizes aren't persisted.
+     */
+    private final long fullSize;
+
+    public TagRecord(final String name, final Version version, final String digest, final String lastUpdated) {
+        this(name, version, digest, lastUpdated, Collections.emptyList());
+    }
+
+    public TagRecord(final String name, final Version version, final String digest, final String lastUpdated, final List<DockerImage> images) {
+        this(name, version, digest, lastUpdated, images, 0);
+    }
+
+    /**
+     * Builds a record from a tag in a registry listing
+     * @param tag Tag the listed tag
+     * @param version Version the parsed tag name
+     * @return TagRecord the record
+     */
+    public static TagRecord of(final Tag tag, final Version version) {
+        String digest = tag.getDigest();
+        if(digest == null && tag.getImages() != null && !tag.getImages().isEmpty()) {
+            digest = tag.getImages().get(0).getDigest();
+        }
+        return new TagRecord(tag.getName(), version, digest, tag.getLastUpdated(), tag.getImages() == null ? Collections.emptyList() : tag.getImages(),
+                tag.getFullSize());
+    }
+
+    /**
+     * Returns the digest of the image built for a platform
+     * @param platform Platform the platform
+     * @return String the platform's image digest or null if the tag has no image for the platform
+     */
+    public String getDigest(final Platform platform) {
+        for(DockerImage image : images) {
+            if(platform.matches(image)) return image.getDigest();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size of the image a platform pulls for the tag
+     * @param platform Platform the platform
+     * @return long the platform image's size, the tag's full size if the registry doesn't list its images or 0 if neither is known
+     */
+    public long getSize(final Platform platform) {
+        for(DockerImage image : images) {
+            if(platform.matches(image) && image.getSize() > 0) return image.getSize();
+        }
+        return fullSize;
+    }
+
+    /**
+     * Returns true if the tag points at one of the digests a local image was pulled by. Multi-platform tags are pulled
+     * by their manifest list digest and single platform tags by the platform image's digest so both are checked.
+     * @param repoDigests Collection of digests of a local image
+     * @param platform Platform the local platform
+     * @return Boolean true if the tag resolves to the local image
+     */
+    public boolean matchesAny(final Collection<String> repoDigests, final Platform platform) {
+        if(repoDigests == null || repoDigests.isEmpty()) return false;
+        if(digest != null && repoDigests.contains(digest)) return true;
+        final String platformDigest = getDigest(platform);
+        return platformDigest != null && repoDigests.contains(platformDigest);
+    }
+
+    /**
+     * @return long when the tag was last pushed in epoch millis or -1 if the registry didn't say or the time can't be parsed
+     */
+    public long getPushedAt() {
+        if(lastUpdated == null) return -1;
+        try {
+            return Instant.parse(lastUpdated).toEpochMilli();
+        } catch(DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param that TagRecord another record for the same tag name
+     * @return Boolean true if both records point at the same push of the tag
+     */
+    public boolean isSamePush(final TagRecord that) {
+        if(digest != null && that.digest != null) return digest.equals(that.digest);
+        return lastUpdated == null ? that.lastUpdated == null : lastUpdated.equals(that.lastUpdated);
+    }
+}
@@ -0,0 +1,17 @@
+package com.app.watchr.model;
+
+/**
+ * How a watched container is replaced by a newer version.
+ */
+public enum UpdateMode {
+    /**
+     * Stop and remove the running container then start the new version under the same name
+     */
+    RECREATE,
+
+    /**
+     * Start the new version next to the running container on alternate ports, wait for it to become
+     * healthy and only then retire the old container and rename the new one into its place
+     */
+    SWAP
+}
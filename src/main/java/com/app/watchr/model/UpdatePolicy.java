@@ -0,0 +1,16 @@
+package com.app.watchr.model;
+
+/**
+ * Controls what Watchr does once a newer version has been found for a watch.
+ */
+public enum UpdatePolicy {
+    /**
+     * Stop the running container and start the newer version automatically
+     */
+    AUTO,
+
+    /**
+     * Only log that a newer version is available, never touch the running container
+     */
+    MONITOR
+}
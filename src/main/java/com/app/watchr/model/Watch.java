@@ -0,0 +1,56 @@
+package com.app.watchr.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single (container, image, policy) entry which Watchr keeps up to date.
+ */
+@Data
+@NoArgsConstructor
+public class Watch {
+    private String containerName;
+    private String imageName;
+    private UpdatePolicy policy = UpdatePolicy.AUTO;
+    private UpdateMode mode = UpdateMode.RECREATE;
+
+    /**
+     * Added to every published host port while a new container runs next to the old one in swap mode, the new
+     * container is moved back onto the original host ports once the old one is retired
+     */
+    private int portOffset = 1;
+
+    private TagPolicy tagPolicy = new TagPolicy();
+
+    /**
+     * Optional path probed with an HTTP GET once a new container is running i.e. /health
+     */
+    private String healthPath;
+
+    /**
+     * Container port the health path is served on, defaults to the first published port
+     */
+    private Integer healthPort;
+
+    /**
+     * Restores the previous version when a new container fails to start or verify
+     */
+    private boolean rollback = true;
+
+    /**
+     * Seconds the container gets to shut down after the stop signal before it's killed, defaults to the
+     * container's own StopTimeout and then "update.stop.timeout"
+     */
+    private Integer stopTimeout;
+
+    /**
+     * Signal the container is stopped with i.e. SIGQUIT, defaults to the container's own StopSignal
+     */
+    private String stopSignal;
+
+    public Watch(final String containerName, final String imageName, final UpdatePolicy policy) {
+        this.containerName = containerName;
+        this.imageName = imageName;
+        this.policy = policy;
+    }
+}
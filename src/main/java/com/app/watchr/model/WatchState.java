@@ -0,0 +1,68 @@
+package com.app.watchr.model;
+
+import com.app.watchr.TagFilter;
+import com.app.watchr.Version;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mutable runtime state for a single watch. Each state is only ever polled by one
+ * worker thread at a time which is guarded by the in-flight flag.
+ */
+public class WatchState {
+
+    @Getter
+    private final Watch watch;
+
+    @Getter
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+    @Getter
+    private final TagFilter tagFilter;
+
+    /**
+     * The newest version this watch has accepted (deployed or found on the first poll) or null if
+     * this watch has not been polled yet.
+     */
+    @Getter
+    @Setter
+    private volatile Version currentVersion;
+
+    /**
+     * Revision of the image's tag index this watch has processed, -1 before the first poll
+     */
+    @Getter
+    @Setter
+    private volatile long revision = -1;
+
+    @Getter
+    @Setter
+    private volatile long lastPolled;
+
+    /**
+     * Polls which failed in a row, reset by the first successful poll
+     */
+    @Getter
+    @Setter
+    private volatile int failures;
+
+    public WatchState(final Watch watch) {
+        this.watch = watch;
+        this.tagFilter = new TagFilter(watch.getTagPolicy() == null ? new TagPolicy() : watch.getTagPolicy());
+    }
+
+    public String getContainerName() {
+        return watch.getContainerName();
+    }
+
+    public String getImageName() {
+        return watch.getImageName();
+    }
+
+    @Override
+    public String toString() {
+        return "WatchState(container = " + getContainerName() + ", image = " + getImageName() + ")";
+    }
+}
@@ -0,0 +1,45 @@
+package com.app.watchr.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a command couldn't be started, exited with a non-zero code or ran past its deadline
+ */
+@Getter
+public class CommandException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public static final int NOT_STARTED = -1;
+    public static final int TIMED_OUT = -2;
+
+    /**
+     * The exit code of the command, NOT_STARTED or TIMED_OUT
+     */
+    private final int exitCode;
+
+    /**
+     * What the command wrote to its standard error, empty if nothing
+     */
+    private final String stderr;
+
+    public CommandException(final String command, final int exitCode, final String stderr) {
+        super(message(command, exitCode, stderr));
+        this.exitCode = exitCode;
+        this.stderr = stderr;
+    }
+
+    public CommandException(final String command, final Throwable cause) {
+        super("Could not start command: " + command, cause);
+        this.exitCode = NOT_STARTED;
+        this.stderr = "";
+    }
+
+    public boolean isTimedOut() {
+        return exitCode == TIMED_OUT;
+    }
+
+    private static String message(final String command, final int exitCode, final String stderr) {
+        final String reason = exitCode == TIMED_OUT ? "Command timed out: " + command : "Command exited with " + exitCode + ": " + command;
+        return stderr.isEmpty() ? reason : reason + ": " + stderr.trim();
+    }
+}
@@ -1,49 +1,188 @@
 package com.app.watchr.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs docker CLI commands when the docker engine API isn't available. Commands are passed as an argument list
+ * without going through a shell, standard output and error are drained at the same time so a chatty command can't
+ * fill one pipe while we wait on the other and every command has a deadline after which it's killed, so a wedged
+ * "docker stop" can't hold a scheduler thread forever. Success is decided by the exit code alone.
+ */
 @Slf4j
 @Service
 public class CommandService {
 
     /**
-     * Executes a command on the runtime environment
-     * @param command String the command to execute
-     * @return String output value of the command if it was successful
-     * @throws RuntimeException Error message if the command is unsuccessful
+     * How long a killed command gets to exit and close its streams before we stop waiting on it in millis
      */
-    public String exec(final String command) throws RuntimeException {
-        final StringBuilder errorBuilder = new StringBuilder();
-        final StringBuilder readerBuilder = new StringBuilder();
+    private static final long KILL_GRACE = 5000;
+
+    private static final int LOGGED_OUTPUT = 500;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${command.timeout:60}")
+    private long timeout = 60;
+
+    @Value("${command.output.limit:1048576}")
+    private int outputLimit = 1024 * 1024;
+
+    private final ExecutorService drainExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "watchr-command-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Executes a command on the runtime environment within the default "command.timeout"
+     * @param command List the command and each of its arguments
+     * @return String standard output of the command
+     * @throws CommandException if the command couldn't be started, exited with a non-zero code or timed out
+     */
+    public String exec(final List<String> command) throws CommandException {
+        return exec(command, timeout);
+    }
+
+    /**
+     * Executes a command on the runtime environment without going through a shell so arguments
+     * containing spaces are passed through as-is
+     * @param command List the command and each of its arguments
+     * @param timeoutSeconds long how long the command may run before it's killed
+     * @return String standard output of the command
+     * @throws CommandException if the command couldn't be started, exited with a non-zero code or timed out
+     */
+    public String exec(final List<String> command, final long timeoutSeconds) throws CommandException {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final String line = String.join(" ", command);
+        String outcome = "failure";
         try {
-            Process process = Runtime.getRuntime().exec(command);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String error;
-            String message;
-            boolean failed = false;
-            while ((error = stdError.readLine()) != null) {
-                log.error("Std Error: {}", error);
-                errorBuilder.append(error);
-                failed = true;
+            final Process process;
+            try {
+                process = new ProcessBuilder(command).start();
+            } catch(IOException e) {
+                throw new CommandException(line, e);
             }
+            process.getOutputStream().close();
 
-            if(failed) throw new RuntimeException(errorBuilder.toString());
+            final Future<String> stdout = drainExecutor.submit(() -> drain(process.getInputStream()));
+            final Future<String> stderr = drainExecutor.submit(() -> drain(process.getErrorStream()));
 
-            while ((message = reader.readLine()) != null) {
-                log.debug("Std Out: {}", message);
-                readerBuilder.append(message);
+            if(!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                outcome = "timeout";
+                kill(process);
+                throw new CommandException(line, CommandException.TIMED_OUT, await(stderr));
             }
 
-            return readerBuilder.toString();
+            final String error = await(stderr);
+            final String output = await(stdout);
+            final int exitCode = process.exitValue();
+            if(exitCode != 0) throw new CommandException(line, exitCode, error);
+
+            // Plenty of commands report progress or deprecations on standard error and still succeed
+            if(!error.isEmpty()) log.warn("Command: {} succeeded with output on standard error: {}", line, abbreviate(error.trim()));
+            outcome = "success";
+            return output;
         } catch(IOException e) {
-            log.error("IOException thrown while attempting to run command: {}", command, e);
-            return null;
+            throw new CommandException(line, e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandException(line, e);
+        } finally {
+            sample.stop(meterRegistry.timer("watchr.docker.exec", "command", name(command), "outcome", outcome));
+        }
+    }
+
+    /**
+     * Asks a command to exit and kills it if it hasn't after a grace period
+     */
+    private static void kill(final Process process) throws InterruptedException {
+        process.destroy();
+        if(!process.waitFor(KILL_GRACE, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly().waitFor(KILL_GRACE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Waits for a stream to be drained. A child left behind by a killed command can keep the stream open, in which
+     * case whatever was read so far is lost rather than waiting on it indefinitely.
+     */
+    private static String await(final Future<String> drained) throws InterruptedException {
+        try {
+            return drained.get(KILL_GRACE, TimeUnit.MILLISECONDS);
+        } catch(ExecutionException e) {
+            log.warn("Exception thrown while reading command output", e.getCause());
+            return "";
+        } catch(TimeoutException e) {
+            drained.cancel(true);
+            return "";
+        }
+    }
+
+    /**
+     * Reads a stream to its end keeping at most "command.output.limit" bytes
+     * @param in InputStream standard output or error of a command
+     * @return String what was kept of the stream
+     */
+    private String drain(final InputStream in) throws IOException {
+        final ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        long discarded = 0;
+        int read;
+        try(InputStream stream = in) {
+            while((read = stream.read(buffer)) != -1) {
+                final int keep = Math.max(0, Math.min(read, outputLimit - kept.size()));
+                kept.write(buffer, 0, keep);
+                discarded += read - keep;
+            }
         }
+        if(discarded > 0) log.warn("Discarded {} bytes of command output over the limit of {} bytes", discarded, outputLimit);
+        return new String(kept.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keeps warnings about chatty commands to a few lines, the full output is only needed when a command fails
+     */
+    private static String abbreviate(final String output) {
+        return output.length() <= LOGGED_OUTPUT ? output : output.substring(0, LOGGED_OUTPUT) + "... (" + output.length() + " chars)";
+    }
+
+    /**
+     * Names a command for metrics without its arguments i.e. "docker run"
+     */
+    private static String name(final List<String> command) {
+        if(command.isEmpty()) return "";
+        return command.size() > 1 && "docker".equals(command.get(0)) ? "docker " + command.get(1) : command.get(0);
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainExecutor.shutdownNow();
     }
 }
@@ -0,0 +1,166 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.ContainerEvent;
+import com.app.watchr.model.ContainerMetaData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of every container on the host kept up to date by a long lived subscription to the docker
+ * daemon's event stream. Updates read container meta-data from here instead of re-inspecting the container and
+ * containers which are started, stopped or restarted outside of Watchr are picked up as soon as the daemon reports them.
+ */
+@Slf4j
+@Service
+public class ContainerIndex {
+
+    @Autowired
+    private DockerEngineClient engineClient;
+
+    @Autowired
+    private DockerService dockerService;
+
+    @Value("${docker.events.retry.delay:5}")
+    private long retryDelay;
+
+    private final Map<String, String> idsByName = new ConcurrentHashMap<>();
+    private final Map<String, ContainerMetaData> containersById = new ConcurrentHashMap<>();
+
+    private volatile boolean subscribed;
+    private volatile boolean running = true;
+    private Thread subscriber;
+
+    @PostConstruct
+    public void init() {
+        if(!engineClient.isAvailable()) {
+            log.info("Docker engine API is not available, container meta-data will be inspected on demand.");
+            return;
+        }
+
+        subscriber = new Thread(this::subscribe, "watchr-docker-events");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+     * Re-builds the index from scratch and then follows the event stream. When the stream drops the index
+     * is re-synced and the subscription resumes from just before the re-sync so no event is lost.
+     */
+    private void subscribe() {
+        while(running) {
+            final long since = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - 1;
+            try {
+                sync();
+                subscribed = true;
+                log.info("Subscribed to docker events, indexed {} containers", containersById.size());
+                engineClient.streamEvents(since, this::onEvent);
+                log.warn("Docker event stream closed by the daemon, re-subscribing...");
+            } catch(RuntimeException e) {
+                log.error("Runtime exception thrown while following the docker event stream, retrying in {} seconds", retryDelay, e);
+            } finally {
+                subscribed = false;
+            }
+
+            try {
+                TimeUnit.SECONDS.sleep(retryDelay);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void sync() {
+        idsByName.clear();
+        containersById.clear();
+        for(String id : engineClient.listContainerIds()) {
+            refresh(id);
+        }
+    }
+
+    private void onEvent(final ContainerEvent event) {
+        if(event.getActor() == null || event.getActor().getId() == null) return;
+        final String id = event.getActor().getId();
+        final String action = event.getAction() == null ? "" : event.getAction();
+        log.debug("Docker event: {} for container: {}", action, id);
+
+        if("destroy".equals(action)) {
+            remove(id);
+        } else if(action.startsWith("exec_") || action.startsWith("attach") || action.startsWith("top")) {
+            // These don't change anything we keep in the index
+        } else {
+            if("start".equals(action) || "die".equals(action) || "restart".equals(action)) {
+                log.info("Container: {} reported {} by the docker daemon", name(event), action);
+            }
+            refresh(id);
+        }
+    }
+
+    private String name(final ContainerEvent event) {
+        Map<String, String> attributes = event.getActor().getAttributes();
+        return attributes == null ? event.getActor().getId() : attributes.getOrDefault("name", event.getActor().getId());
+    }
+
+    /**
+     * Re-inspects a single container and replaces its entry in the index
+     */
+    private void refresh(final String id) {
+        try {
+            final ContainerMetaData metaData = engineClient.inspectContainer(id);
+            final ContainerMetaData previous = containersById.put(id, metaData);
+            if(previous != null) idsByName.remove(previous.getContainerName(), id);
+            idsByName.put(metaData.getContainerName(), id);
+        } catch(HttpClientErrorException.NotFound e) {
+            remove(id);
+        }
+    }
+
+    private void remove(final String id) {
+        final ContainerMetaData metaData = containersById.remove(id);
+        if(metaData != null) idsByName.remove(metaData.getContainerName(), id);
+    }
+
+    /**
+     * Returns the id of a container by name
+     * @param containerName String container name
+     * @return String container id or null if the container does not exist
+     */
+    public String getContainerId(final String containerName) {
+        if(subscribed) {
+            return idsByName.get(containerName);
+        }
+        return dockerService.getContainerId(containerName);
+    }
+
+    /**
+     * Returns the meta-data for a container from the index when the event stream is being followed and
+     * falls back to inspecting the container otherwise.
+     * @param containerName String container name
+     * @return ContainerMetaData typed meta-data or null if the container does not exist
+     */
+    public ContainerMetaData getMetaData(final String containerName) {
+        if(subscribed) {
+            final String id = idsByName.get(containerName);
+            final ContainerMetaData metaData = id == null ? null : containersById.get(id);
+            if(metaData != null) return metaData;
+        }
+
+        final String containerId = dockerService.getContainerId(containerName);
+        return containerId == null ? null : dockerService.getMetaData(containerId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if(subscriber != null) subscriber.interrupt();
+    }
+}
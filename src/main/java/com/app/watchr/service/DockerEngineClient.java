@@ -0,0 +1,441 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.ContainerEvent;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.LocalImage;
+import com.app.watchr.model.Platform;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Talks to the Docker Engine HTTP API directly over the docker unix socket (or a tcp:// docker host)
+ * instead of forking a docker CLI process for every call. Connections are pooled and kept alive between
+ * requests and responses are read straight off the socket with Jackson's streaming parser.
+ */
+@Slf4j
+@Service
+public class DockerEngineClient {
+    private static final String UNIX_SCHEME = "unix://";
+    private static final String TCP_SCHEME = "tcp://";
+
+    /**
+     * Seconds a stop may take beyond the container's stop timeout before the daemon is given up on
+     */
+    private static final int STOP_GRACE = 30;
+
+    private final RestTemplate template;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectReader eventReader = mapper.readerFor(ContainerEvent.class);
+    private final ObjectReader metaDataReader = mapper.readerFor(ContainerMetaData.class);
+    private final ObjectReader imagesReader = mapper.readerFor(LocalImage[].class);
+    private final ObjectReader labelsReader = mapper.readerFor(new TypeReference<Map<String, String>>() {});
+    private final String baseUrl;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /**
+     * True if the docker daemon socket exists and the engine API can be used
+     */
+    @Getter
+    private final boolean available;
+
+    public DockerEngineClient(final String dockerHost, final int maxConnections) {
+        this(dockerHost, maxConnections, 60, 600);
+    }
+
+    /**
+     * @param dockerHost String unix:// socket or tcp:// address of the docker daemon
+     * @param maxConnections int connections kept open to the daemon
+     * @param readTimeout long seconds to wait for a response before a hung daemon call is given up on
+     * @param pullTimeout long seconds a pull may go without progress from the daemon
+     */
+    @Autowired
+    public DockerEngineClient(@Value("${docker.host:unix:///var/run/docker.sock}") final String dockerHost,
+                              @Value("${docker.engine.max.connections:8}") final int maxConnections,
+                              @Value("${docker.engine.read.timeout:60}") final long readTimeout,
+                              @Value("${command.pull.timeout:600}") final long pullTimeout) {
+        RegistryBuilder<ConnectionSocketFactory> registry = RegistryBuilder.create();
+        if(dockerHost.startsWith(UNIX_SCHEME)) {
+            File socketFile = new File(dockerHost.substring(UNIX_SCHEME.length()));
+            registry.register("http", new UnixSocketFactory(socketFile));
+            this.baseUrl = "http://localhost";
+            this.available = socketFile.exists();
+        } else {
+            registry.register("http", PlainConnectionSocketFactory.getSocketFactory());
+            this.baseUrl = dockerHost.startsWith(TCP_SCHEME) ? "http://" + dockerHost.substring(TCP_SCHEME.length()) : dockerHost;
+            this.available = true;
+        }
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry.build());
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(5000).setSocketTimeout((int) TimeUnit.SECONDS.toMillis(readTimeout)).build())
+                .build();
+
+        this.template = new RestTemplate(new EngineRequestFactory(httpClient, readTimeout, pullTimeout));
+
+        if(available) {
+            log.info("Using the docker engine API at: {}", dockerHost);
+        } else {
+            log.info("Docker engine socket: {} does not exist, falling back to the docker CLI", dockerHost);
+        }
+    }
+
+    /**
+     * Returns the meta-data for a container bound straight from the response stream
+     * @param container String container name or id
+     * @return ContainerMetaData typed container meta-data
+     */
+    public ContainerMetaData inspectContainer(final String container) {
+        return stream(HttpMethod.GET, "/containers/{container}/json", metaDataReader::readValue, container);
+    }
+
+    /**
+     * Looks up the full id of a container. Only the top level "Id" field of the inspect response
+     * is read, the rest of the document is skipped.
+     * @param container String container name
+     * @return String the containers full id
+     */
+    public String getContainerId(final String container) {
+        return stream(HttpMethod.GET, "/containers/{container}/json", parser -> {
+            if(parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if("Id".equals(field)) return parser.getValueAsString();
+                parser.skipChildren();
+            }
+            return null;
+        }, container);
+    }
+
+    /**
+     * Lists the ids of every container on the host whether it is running or not
+     * @return List of container ids
+     */
+    public List<String> listContainerIds() {
+        return stream(HttpMethod.GET, "/containers/json?all=1", parser -> {
+            final List<String> ids = new ArrayList<>();
+            if(parser.nextToken() != JsonToken.START_ARRAY) return ids;
+            while(parser.nextToken() == JsonToken.START_OBJECT) {
+                while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if("Id".equals(field)) ids.add(parser.getValueAsString());
+                    else parser.skipChildren();
+                }
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Lists the local images of a repository
+     * @param reference String an image name i.e. "team/app", matching every tag of the repository
+     * @return List of local images
+     */
+    public List<LocalImage> listImages(final String reference) {
+        final LocalImage[] images = stream(HttpMethod.GET, "/images/json?filters={filters}", imagesReader::readValue,
+                "{\"reference\":[\"" + reference + "\"]}");
+        return images == null ? Collections.emptyList() : Arrays.asList(images);
+    }
+
+    /**
+     * Removes a tag of a local image, the image itself is deleted along with its last tag. Images used by a
+     * container, running or not, are never removed.
+     * @param reference String image reference i.e. "team/app:1.0.0"
+     */
+    public void removeImage(final String reference) {
+        timed(HttpMethod.DELETE, "/images/{image}", () -> {
+            template.delete(baseUrl + "/images/{image}", reference);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the repository digests a local image was pulled by i.e. "library/nginx@sha256:..."
+     * @param image String image id or name
+     * @return List of repository digests, empty for images which were built locally and never pulled
+     */
+    public List<String> getRepoDigests(final String image) {
+        return stream(HttpMethod.GET, "/images/{image}/json", parser -> {
+            final List<String> digests = new ArrayList<>();
+            if(parser.nextToken() != JsonToken.START_OBJECT) return digests;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                if(parser.nextToken() == JsonToken.START_ARRAY && "RepoDigests".equals(field)) {
+                    while(parser.nextToken() == JsonToken.VALUE_STRING) digests.add(parser.getText());
+                    return digests;
+                }
+                parser.skipChildren();
+            }
+            return digests;
+        }, image);
+    }
+
+    /**
+     * Returns the labels an image was built with, which every container of the image inherits
+     * @param image String image id or name
+     * @return Map of label values by name, empty if the image has none
+     */
+    public Map<String, String> getImageLabels(final String image) {
+        return stream(HttpMethod.GET, "/images/{image}/json", parser -> {
+            if(parser.nextToken() != JsonToken.START_OBJECT) return Collections.emptyMap();
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                if(parser.nextToken() == JsonToken.START_OBJECT && "Config".equals(field)) {
+                    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String configField = parser.getCurrentName();
+                        if(parser.nextToken() == JsonToken.START_OBJECT && "Labels".equals(configField)) return labelsReader.readValue(parser);
+                        parser.skipChildren();
+                    }
+                    return Collections.emptyMap();
+                }
+                parser.skipChildren();
+            }
+            return Collections.emptyMap();
+        }, image);
+    }
+
+    /**
+     * Returns the platform the daemon runs images for from the "OSType" and "Architecture" fields of the system info
+     * @return Platform the daemon's platform
+     */
+    public Platform getPlatform() {
+        return stream(HttpMethod.GET, "/info", parser -> {
+            String os = null;
+            String architecture = null;
+            if(parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while(parser.nextToken() == JsonToken.FIELD_NAME && (os == null || architecture == null)) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if("OSType".equals(field)) os = parser.getValueAsString();
+                else if("Architecture".equals(field)) architecture = parser.getValueAsString();
+                else parser.skipChildren();
+            }
+            return os == null || architecture == null ? null : Platform.of(os, architecture);
+        });
+    }
+
+    /**
+     * Subscribes to the daemon's container event stream. This call blocks for as long as the daemon keeps
+     * the stream open and hands every event to the consumer as soon as it arrives.
+     * @param since long unix timestamp (seconds) to replay events from so nothing is missed between subscriptions
+     * @param consumer Consumer called for each container event
+     */
+    public void streamEvents(final long since, final Consumer<ContainerEvent> consumer) {
+        stream(HttpMethod.GET, "/events?since={since}&filters={filters}", parser -> {
+            while(parser.nextToken() == JsonToken.START_OBJECT) {
+                consumer.accept(eventReader.readValue(parser));
+            }
+            return null;
+        }, since, "{\"type\":[\"container\"]}");
+    }
+
+    /**
+     * Stops a running container
+     * @param container String container name or id
+     * @param timeoutSeconds Integer seconds to wait before killing the container or null for the daemon default
+     */
+    public void stopContainer(final String container, final Integer timeoutSeconds) {
+        stopContainer(container, timeoutSeconds, null);
+    }
+
+    /**
+     * Stops a running container with a signal other than its own stop signal
+     * @param container String container name or id
+     * @param timeoutSeconds Integer seconds to wait before killing the container or null for the daemon default
+     * @param signal String signal to stop the container with i.e. "SIGQUIT" or null for the container's stop signal
+     */
+    public void stopContainer(final String container, final Integer timeoutSeconds, final String signal) {
+        timed(HttpMethod.POST, "/containers/{container}/stop", () -> {
+            if(timeoutSeconds == null && signal == null) {
+                return template.postForLocation(baseUrl + "/containers/{container}/stop", null, container);
+            }
+            if(signal == null) {
+                return template.postForLocation(baseUrl + "/containers/{container}/stop?t={timeout}", null, container, timeoutSeconds);
+            }
+            if(timeoutSeconds == null) {
+                return template.postForLocation(baseUrl + "/containers/{container}/stop?signal={signal}", null, container, signal);
+            }
+            return template.postForLocation(baseUrl + "/containers/{container}/stop?t={timeout}&signal={signal}", null, container, timeoutSeconds, signal);
+        });
+    }
+
+    /**
+     * Starts a created or stopped container
+     * @param container String container name or id
+     */
+    public void startContainer(final String container) {
+        timed(HttpMethod.POST, "/containers/{container}/start", () -> template.postForLocation(baseUrl + "/containers/{container}/start", null, container));
+    }
+
+    /**
+     * Removes a stopped container
+     * @param container String container name or id
+     */
+    public void removeContainer(final String container) {
+        timed(HttpMethod.DELETE, "/containers/{container}", () -> {
+            template.delete(baseUrl + "/containers/{container}", container);
+            return null;
+        });
+    }
+
+    /**
+     * Renames a container
+     * @param container String container name or id
+     * @param name String the new name
+     */
+    public void renameContainer(final String container, final String name) {
+        timed(HttpMethod.POST, "/containers/{container}/rename", () -> template.postForLocation(baseUrl + "/containers/{container}/rename?name={name}", null, container, name));
+    }
+
+    /**
+     * Pulls an image from its registry. The daemon streams progress messages while the pull
+     * runs and reports failures as an "error" message in the stream rather than with a status code.
+     * @param image String image name
+     * @param tag String tag to pull
+     * @throws RuntimeException if the daemon reports an error during the pull
+     */
+    public void pullImage(final String image, final String tag) {
+        pullImage(image, tag, null);
+    }
+
+    /**
+     * Pulls only the image a tag publishes for a platform
+     * @param image String image name
+     * @param tag String tag to pull
+     * @param platform String platform to pull i.e. "linux/arm64" or null for the daemon's own platform
+     * @throws RuntimeException if the daemon reports an error during the pull, including a tag without an image for the platform
+     */
+    public void pullImage(final String image, final String tag, final String platform) {
+        final String path = platform == null ? "/images/create?fromImage={image}&tag={tag}" : "/images/create?fromImage={image}&tag={tag}&platform={platform}";
+        final Object[] uriVariables = platform == null ? new Object[] { image, tag } : new Object[] { image, tag, platform };
+        final String error = stream(HttpMethod.POST, path, parser -> {
+            JsonToken token;
+            while((token = parser.nextToken()) != null) {
+                if(token == JsonToken.FIELD_NAME && "error".equals(parser.getCurrentName()) && parser.getParsingContext().getParent().inRoot()) {
+                    parser.nextToken();
+                    return parser.getValueAsString();
+                }
+            }
+            return null;
+        }, uriVariables);
+
+        if(error != null) throw new RuntimeException("Failed to pull image: " + image + ":" + tag + " " + error);
+    }
+
+    /**
+     * Executes a request and hands the response body to a streaming JSON parser
+     */
+    private <T> T stream(final HttpMethod method, final String path, final ParserCallback<T> callback, final Object... uriVariables) {
+        final Supplier<T> request = () -> template.execute(baseUrl + path, method, null, response -> {
+            try(InputStream body = response.getBody(); JsonParser parser = mapper.getFactory().createParser(body)) {
+                return callback.read(parser);
+            }
+        }, uriVariables);
+
+        // The event stream stays open for as long as the daemon runs, its duration isn't a latency
+        return path.startsWith("/events") ? request.get() : timed(method, path, request);
+    }
+
+    /**
+     * Records the latency of an engine API call by method and path template
+     */
+    private <T> T timed(final HttpMethod method, final String path, final Supplier<T> request) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            final T result = request.get();
+            outcome = "success";
+            return result;
+        } finally {
+            final int query = path.indexOf('?');
+            sample.stop(meterRegistry.timer("watchr.docker.api", "method", method.name(), "path", query < 0 ? path : path.substring(0, query), "outcome", outcome));
+        }
+    }
+
+    /**
+     * Applies a read timeout which fits each call. The event stream may stay silent for as long as no container
+     * changes, a pull for as long as a layer downloads and a stop for as long as the container's stop timeout.
+     */
+    private static class EngineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+        private final long readTimeout;
+        private final long pullTimeout;
+
+        private EngineRequestFactory(final CloseableHttpClient httpClient, final long readTimeout, final long pullTimeout) {
+            super(httpClient);
+            this.readTimeout = readTimeout;
+            this.pullTimeout = pullTimeout;
+        }
+
+        @Override
+        protected HttpContext createHttpContext(final HttpMethod httpMethod, final URI uri) {
+            final long timeout = readTimeout(uri);
+            if(timeout == readTimeout) return null;
+            final HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(RequestConfig.custom().setConnectTimeout(5000).setSocketTimeout((int) TimeUnit.SECONDS.toMillis(timeout)).build());
+            return context;
+        }
+
+        /**
+         * @return long seconds to wait for a response to a request, 0 to wait indefinitely
+         */
+        private long readTimeout(final URI uri) {
+            final String path = uri.getPath();
+            if(path.equals("/events")) return 0;
+            if(path.equals("/images/create")) return pullTimeout;
+            if(path.startsWith("/containers/") && path.endsWith("/stop")) {
+                final String stopTimeout = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("t");
+                return stopTimeout == null ? readTimeout : Math.max(readTimeout, Long.parseLong(stopTimeout) + STOP_GRACE);
+            }
+            return readTimeout;
+        }
+    }
+
+    @FunctionalInterface
+    interface ParserCallback<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPage;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Lists tags through Docker Hub's repository API which returns the digest, per-platform images and last updated time
+ * of every tag, newest first. Requests are made conditional on the validators of the previous listing.
+ */
+@Service
+public class DockerHubBackend implements RegistryBackend {
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${docker.hub.url}")
+    private String dockerHubUrl;
+
+    @Value("${docker.hub.page.size:100}")
+    private int pageSize;
+
+    /**
+     * Shared by every request, the reader binds each tag with a pre-built ObjectReader
+     */
+    private final TagReader tagReader = new TagReader(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+
+    @Override
+    public boolean supports(final String imageName) {
+        return RegistryBackend.registryHost(imageName) == null;
+    }
+
+    @Override
+    public CompletableFuture<TagPage> fetchTags(final String imageName, final String next, final TagIndex cached, final Consumer<Tag> consumer) {
+        final URI uri = URI.create(next != null ? next : dockerHubUrl + "/" + repository(imageName) + "/tags?page_size=" + pageSize + "&ordering=last_updated");
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader(HttpHeaders.ACCEPT, "application/json");
+        if(cached != null) {
+            if(cached.getETag() != null) request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            if(cached.getLastModified() != null) request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+
+        return registryClient.execute(imageName, request, response -> {
+            final String eTag = RegistryClient.header(response, HttpHeaders.ETAG);
+            final String lastModified = RegistryClient.header(response, HttpHeaders.LAST_MODIFIED);
+            if(response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                return new TagPage(true, null, eTag, lastModified);
+            }
+
+            if(response.getEntity() == null) throw new IOException("Registry responded to " + uri + " without a body");
+            final Timer.Sample parse = Timer.start(meterRegistry);
+            final String nextPage;
+            try(InputStream body = response.getEntity().getContent()) {
+                nextPage = tagReader.read(body, consumer);
+            }
+            parse.stop(meterRegistry.timer("watchr.registry.parse", "image", imageName));
+            return new TagPage(false, nextPage, eTag, lastModified);
+        });
+    }
+
+    /**
+     * @param imageName String the image name
+     * @return String the repository path on Docker Hub, official images live in the "library" namespace
+     */
+    private static String repository(final String imageName) {
+        final String name = imageName.replaceFirst("^(docker\\.io|index\\.docker\\.io|registry-1\\.docker\\.io)/", "");
+        return name.contains("/") ? name : "library/" + name;
+    }
+}
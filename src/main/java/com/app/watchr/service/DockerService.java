@@ -1,114 +1,272 @@
 package com.app.watchr.service;
 
 import com.app.watchr.Version;
-import com.app.watchr.model.ImageTag;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.LocalImage;
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import javax.net.ssl.SSLContext;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class DockerService {
-    @Value("${docker.hub.url}")
-    private String dockerHubUrl;
+    /**
+     * Seconds a stop command may run beyond the container's stop timeout before it's given up on
+     */
+    private static final int STOP_GRACE = 30;
 
-    private RestTemplate template;
-    private HttpHeaders headers;
+    @Autowired
+    private DockerEngineClient engineClient;
 
-    public DockerService() {
-        TrustStrategy acceptingTrustStrategy = (x509Certificates, s) -> true;
-        try {
-            SSLContext sslContext = org.apache.http.ssl.SSLContexts.custom()
-                    .loadTrustMaterial(null, acceptingTrustStrategy)
-                    .build();
+    @Autowired
+    private CommandService commandService;
 
-            SSLConnectionSocketFactory csf = new SSLConnectionSocketFactory(sslContext);
-            CloseableHttpClient httpClient = HttpClients.custom()
-                    .setSSLSocketFactory(csf)
-                    .build();
+    @Autowired
+    private StateStore stateStore;
 
-            HttpComponentsClientHttpRequestFactory requestFactory =
-                    new HttpComponentsClientHttpRequestFactory();
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
-            requestFactory.setHttpClient(httpClient);
-            this.template = new RestTemplate(requestFactory);
-            this.headers = new HttpHeaders();
-            headers.add("Content-Type", "application/json");
-            headers.add("Accept", "application/json");
-        } catch(NoSuchAlgorithmException e) {
-            log.error("No such algorithm exception thrown while building SSL enabled rest template.", e);
-        } catch(KeyStoreException e) {
-            log.error("Key store exception thrown while building ssl enabled rest template.", e);
-        } catch(KeyManagementException e) {
-            log.error("Key management exception thrown while building ssl enabled rest template.", e);
-        }
-    }
+    @Autowired
+    private List<RegistryBackend> registryBackends;
+
+    private final Map<String, TagIndex> tagIndexes = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectReader metaDataReader = mapper.readerFor(ContainerMetaData[].class);
+    private final ObjectReader digestsReader = mapper.readerFor(String[].class);
+    private final ObjectReader labelsReader = mapper.readerFor(new TypeReference<Map<String, String>>() {});
+
+    @Value("${docker.hub.max.deltas:64}")
+    private int maxDeltas;
+
+    @Value("${docker.platform:}")
+    private String platformOverride;
+
+    @Value("${command.pull.timeout:600}")
+    private long pullTimeout;
+
+    @Value("${registry.cache.ttl:15}")
+    private long cacheTtl;
+
+    /**
+     * The latest refresh of each image's tags, shared by every watch of the image while it's in flight or fresh
+     */
+    private final Map<String, Refresh> refreshes = new ConcurrentHashMap<>();
+
+    private volatile Platform platform;
 
     /**
-     * Fetches and parses the list of remote docker hub tags into a list
+     * Fetches and parses the list of remote registry tags into a list
      * of Version objects sorted correctly by semantic version.
      * @return List of Version objects
      */
     public List<Version> getRemoteVersions(final String imageName) {
-       ImageTag tags = this.fetchTags(imageName);
-
-       log.debug("Image Tag: {}", tags);
-       if(tags != null) {
-            return tags.getResults()
-               .stream()
-               .map(tag -> new Version(tag.getName()))
-               .sorted(Version::compareTo)
-               .collect(Collectors.toList());
-       } else {
-           throw new NullPointerException("Image tags from remote repository are null.");
-       }
-    }
-    /**
-     * Fetches image tag info from docker hub for the specified image name
-     * @param imageName String the image name for the public image to fetch
-     * @return ImageTag POJO for retrieving tag information
-     */
-    private ImageTag fetchTags(final String imageName) {
-        if(imageName.isEmpty()) {
+        return refreshTags(imageName).getVersions();
+    }
+
+    /**
+     * @param imageName String the image name
+     * @return TagIndex the image's tag index or null if its tags were never fetched or restored
+     */
+    public TagIndex getTagIndex(final String imageName) {
+        return tagIndexes.get(imageName);
+    }
+
+    /**
+     * Refreshes the tags of an image and returns every change since a revision of its tag index
+     * @param imageName String the image name
+     * @param since long the index revision the caller last saw or -1 if it has never seen one
+     * @return CompletableFuture completed with the net tags added, removed and re-pushed since that revision
+     */
+    public CompletableFuture<TagDelta> getTagChanges(final String imageName, final long since) {
+        return refreshTagsAsync(imageName).thenApply(index -> index.changesSince(since));
+    }
+
+    /**
+     * Brings the tag index for an image up to date with its registry and waits for the refresh to complete
+     * @param imageName String the image name
+     * @return TagIndex the up to date index
+     * @see #refreshTagsAsync(String)
+     */
+    public TagIndex refreshTags(final String imageName) {
+        try {
+            return refreshTagsAsync(imageName).join();
+        } catch(CompletionException e) {
+            final Throwable cause = RegistryClient.unwrap(e);
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Brings the tag index for an image up to date with its registry. Every watch of an image shares one refresh:
+     * callers asking while a refresh is in flight, or within "registry.cache.ttl" seconds of it completing, get that
+     * refresh instead of starting their own, so registry requests grow with the number of images rather than watches.
+     * @param imageName String the image name
+     * @return CompletableFuture completed with the up to date index
+     */
+    public CompletableFuture<TagIndex> refreshTagsAsync(final String imageName) {
+        if(imageName == null || imageName.isEmpty()) {
             log.error("Cannot fetch tags for an image when the image name is null or blank");
-            return null;
+            throw new NullPointerException("Image tags from remote repository are null.");
+        }
+
+        final long now = System.currentTimeMillis();
+        final Refresh[] started = { null };
+        final Refresh refresh = refreshes.compute(imageName, (name, current) -> {
+            if(current != null && current.isShareable(now)) return current;
+            return started[0] = new Refresh();
+        });
+
+        if(started[0] == null) {
+            meterRegistry.counter("watchr.registry.refresh", "image", imageName, "source", "shared").increment();
+            return refresh.index;
         }
 
-        log.debug("Attempting to fetch tags for docker image: {}", imageName);
-        HttpEntity<String> requestEntity = new HttpEntity<>("", headers);
-        ResponseEntity<String> responseEntity = template.exchange(dockerHubUrl + "/" + imageName + "/tags", HttpMethod.GET, requestEntity, String.class);
-        responseEntity.getBody();
+        meterRegistry.counter("watchr.registry.refresh", "image", imageName, "source", "fetch").increment();
+        refreshes.values().removeIf(other -> other.isExpired(now));
+        CompletableFuture<TagIndex> fetched;
         try {
-            ImageTag tags = new ObjectMapper().readValue(responseEntity.getBody(), ImageTag.class);
-            log.debug("Successfully parsed tags: {}", tags);
-            return tags;
-        } catch(Exception e) {
-            log.error("There was an error reading the response body: {} into the ImageTag class", responseEntity.getBody(), e);
-            return null;
+            fetched = fetchTags(imageName);
+        } catch(RuntimeException e) {
+            fetched = new CompletableFuture<>();
+            fetched.completeExceptionally(e);
         }
+        fetched.whenComplete((index, e) -> {
+            refresh.completedAt = System.currentTimeMillis();
+            if(e == null) {
+                refresh.index.complete(index);
+            } else {
+                // A failed refresh isn't shared, the next caller tries the registry again
+                refreshes.remove(imageName, refresh);
+                refresh.index.completeExceptionally(RegistryClient.unwrap(e));
+            }
+        });
+        return refresh.index;
+    }
+
+    /**
+     * Makes the next refresh of an image's tags go to the registry, i.e. once a webhook reported a push
+     * @param imageName String the image name
+     */
+    public void expireTags(final String imageName) {
+        refreshes.remove(imageName);
+    }
+
+    /**
+     * Reads an image's tags from its registry into its tag index. When the registry reports that
+     * the tags have not been modified since the last request the index is left untouched.
+     *
+     * Pages are requested newest first and followed through their "next" link until a page contains a tag
+     * which is already known, unchanged and not newer than the current max version. Every tag after that point was
+     * seen by a previous request so the remaining pages are skipped. Removed tags are only detected when every page was read.
+     *
+     * No thread waits on the registry, the returned future completes on a registry client thread once every page was read.
+     * @param imageName String the image name
+     * @return CompletableFuture completed with the up to date index
+     */
+    private CompletableFuture<TagIndex> fetchTags(final String imageName) {
+        final TagIndex index = tagIndexes.computeIfAbsent(imageName, name -> {
+            final TagIndex restored = stateStore.restoreIndex(name, maxDeltas);
+            Gauge.builder("watchr.registry.tags", restored, known -> known.getVersions().size()).tag("image", name).register(meterRegistry);
+            return restored;
+        });
+        final List<TagRecord> fetched = new ArrayList<>();
+        final boolean[] seenKnown = { false };
+        final Consumer<Tag> consumer = tag -> {
+            // Tags which aren't versions (i.e. latest) are skipped
+            Version version = Version.parse(tag.getName());
+            if(version == null) return;
+            TagRecord record = TagRecord.of(tag, version);
+            fetched.add(record);
+            if(!seenKnown[0] && index.isKnown(record))
+                seenKnown[0] = true;
+        };
+
+        final RegistryBackend backend = getBackend(imageName);
+        return backend.fetchTags(imageName, null, index, consumer).thenCompose(first -> {
+            if(first.isNotModified() && !index.isEmpty()) {
+                log.debug("Tags for image: {} have not been modified since the last request", imageName);
+                return CompletableFuture.completedFuture(index);
+            }
+
+            final int[] pages = { 1 };
+            return readPages(backend, imageName, first.getNext(), consumer, seenKnown, pages).thenApply(next -> {
+                if(next != null) {
+                    log.debug("Stopped reading tags for image: {} after {} pages, remaining tags are already known", imageName, pages[0]);
+                }
+
+                final TagDelta delta;
+                synchronized(index) {
+                    // Deltas are stored in the order they were applied so the stored index replays to the same tags
+                    delta = index.apply(fetched, next == null, first.getETag(), first.getLastModified());
+                    stateStore.appendTags(imageName, delta, first.getETag(), first.getLastModified());
+                }
+                log.debug("Read {} tags for image: {} from {} pages, {} added {} removed {} re-pushed", fetched.size(), imageName, pages[0],
+                        delta.getAdded().size(), delta.getRemoved().size(), delta.getRepushed().size());
+                return index;
+            });
+        }).exceptionally(e -> {
+            final Throwable cause = RegistryClient.unwrap(e);
+            if(index.isEmpty()) throw new CompletionException(cause);
+            log.warn("Failed to fetch tags for image: {} carrying on with {} known tags. {}", imageName, index.getVersions().size(), cause.getMessage());
+            return index;
+        });
     }
 
+    /**
+     * Follows the "next" links of a tag listing one page at a time until the last page or a page holding a known tag was read
+     * @param backend RegistryBackend the backend listing the image's tags
+     * @param imageName String the image name
+     * @param next String the link of the next page or null
+     * @param consumer Consumer called for every tag read
+     * @param seenKnown boolean[] set by the consumer once a known tag was read
+     * @param pages int[] incremented for every page read
+     * @return CompletableFuture completed with the link of the first page which wasn't read or null if every page was read
+     */
+    private CompletableFuture<String> readPages(final RegistryBackend backend, final String imageName, final String next,
+                                                final Consumer<Tag> consumer, final boolean[] seenKnown, final int[] pages) {
+        if(next == null || seenKnown[0]) return CompletableFuture.completedFuture(next);
+        pages[0]++;
+        return backend.fetchTags(imageName, next, null, consumer)
+                .thenCompose(page -> readPages(backend, imageName, page.getNext(), consumer, seenKnown, pages));
+    }
+
+    /**
+     * @param imageName String the image name
+     * @return RegistryBackend the backend which lists the image's tags
+     * @throws IllegalArgumentException if no backend supports the image
+     */
+    public RegistryBackend getBackend(final String imageName) {
+        for(RegistryBackend backend : registryBackends) {
+            if(backend.supports(imageName)) return backend;
+        }
+        throw new IllegalArgumentException("No registry backend supports image: " + imageName);
+    }
 
     /**
      * Gets the running container id given its name
@@ -116,18 +274,20 @@ public class DockerService {
      * @return String the containers full id.
      */
     public String getContainerId(final String containerName) {
-        try {
-            Process process = Runtime.getRuntime().exec("docker inspect --format=\"{{.Id}}\" " + containerName);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String error;
-            while ((error = stdError.readLine()) != null) {
-                log.error("Std Error: {}", error);
+        if(engineClient.isAvailable()) {
+            try {
+                return engineClient.getContainerId(containerName);
+            } catch(RuntimeException e) {
+                log.error("Runtime exception thrown while attempting to retrieve running container id from the docker engine", e);
+                return null;
             }
+        }
 
-            return reader.readLine().replaceAll("^\"|\"$", "");
-        } catch(IOException e) {
-            log.error("IOException thrown while attempting to retrieve running container id", e);
+        try {
+            final String id = commandService.exec(Arrays.asList("docker", "inspect", "--format", "{{.Id}}", containerName)).trim();
+            return id.isEmpty() ? null : id;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while attempting to retrieve running container id", e);
             return null;
         }
     }
@@ -135,33 +295,248 @@ public class DockerService {
     /**
      * Fetches meta-data about a docker container given the container ID
      * @param containerId String container id to look up meta-data for
-     * @return String raw JSON meta-data
+     * @return ContainerMetaData typed meta-data or null if the container could not be inspected
+     */
+    public ContainerMetaData getMetaData(final String containerId) {
+        if(engineClient.isAvailable()) {
+            try {
+                return engineClient.inspectContainer(containerId);
+            } catch(RuntimeException e) {
+                log.error("Runtime exception thrown while trying to retrieve container meta-data from docker engine: ", e);
+                return null;
+            }
+        }
+
+        try {
+            final String output = commandService.exec(Arrays.asList("docker", "container", "inspect", containerId));
+
+            // The CLI always returns an array even when a single container is inspected
+            final ContainerMetaData[] metaData = metaDataReader.readValue(output);
+            return metaData.length == 0 ? null : metaData[0];
+        } catch(IOException e) {
+            log.error("IOException thrown while trying to parse container meta-data from docker daemon: ", e);
+            return null;
+        } catch(RuntimeException e) {
+            log.error("Runtime exception thrown while trying to retrieve container meta-data from docker daemon: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the labels a local image was built with
+     * @param imageId String local image id or name
+     * @return Map of label values by name, empty if the image has none or null if the image could not be inspected
+     */
+    public Map<String, String> getImageLabels(final String imageId) {
+        try {
+            if(engineClient.isAvailable()) return engineClient.getImageLabels(imageId);
+            final String output = commandService.exec(Arrays.asList("docker", "image", "inspect", "--format", "{{json .Config.Labels}}", imageId));
+            final Map<String, String> labels = output == null || output.trim().isEmpty() ? null : labelsReader.readValue(output);
+            return labels == null ? Collections.emptyMap() : labels;
+        } catch(IOException | RuntimeException e) {
+            log.error("Exception thrown while attempting to retrieve the labels of image: {}", imageId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the digests a local image was pulled by with the repository name stripped i.e. "sha256:..."
+     * @param imageId String local image id or name
+     * @return List of digests, empty if the image was never pulled or could not be inspected
      */
-    public String getMetaData(final String containerId) {
+    public List<String> getImageDigests(final String imageId) {
+        List<String> repoDigests = Collections.emptyList();
         try {
-            Process process = Runtime.getRuntime().exec("docker container inspect " + containerId);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String error;
-            String line;
-            StringBuilder builder = new StringBuilder();
-            boolean execFailed = false;
-            while ((error = stdError.readLine()) != null) {
-                log.error("Exec Error: {}", error);
-                execFailed = true;
+            if(engineClient.isAvailable()) {
+                repoDigests = engineClient.getRepoDigests(imageId);
+            } else {
+                final String output = commandService.exec(Arrays.asList("docker", "image", "inspect", "--format", "{{json .RepoDigests}}", imageId));
+                final String[] parsed = output == null || output.trim().isEmpty() ? null : digestsReader.readValue(output);
+                if(parsed != null) repoDigests = Arrays.asList(parsed);
             }
+        } catch(IOException | RuntimeException e) {
+            log.error("Exception thrown while attempting to retrieve the digests of image: {}", imageId, e);
+            return Collections.emptyList();
+        }
 
-            if(execFailed) return null;
+        final List<String> digests = new ArrayList<>(repoDigests.size());
+        for(String repoDigest : repoDigests) {
+            digests.add(repoDigest.substring(repoDigest.indexOf('@') + 1));
+        }
+        return digests;
+    }
+
+    /**
+     * Returns the platform images are run on, which picks the image digest to compare against for multi-platform tags.
+     * The "docker.platform" property wins, then the daemon's own platform and finally the platform the JVM runs on.
+     * @return Platform the local platform
+     */
+    public Platform getPlatform() {
+        if(platform != null) return platform;
 
-            while ((line = reader.readLine()) != null) {
-                log.info("Line: {}", line);
-                builder.append(line);
+        Platform resolved = null;
+        if(platformOverride != null && !platformOverride.isEmpty()) {
+            resolved = Platform.parse(platformOverride);
+        } else {
+            try {
+                if(engineClient.isAvailable()) {
+                    resolved = engineClient.getPlatform();
+                } else {
+                    final String output = commandService.exec(Arrays.asList("docker", "info", "--format", "{{.OSType}}/{{.Architecture}}"));
+                    if(output != null && output.trim().contains("/")) {
+                        final String[] parts = output.trim().split("/");
+                        resolved = Platform.of(parts[0], parts[1]);
+                    }
+                }
+            } catch(RuntimeException e) {
+                log.error("Runtime exception thrown while attempting to retrieve the docker daemon's platform", e);
             }
+        }
 
-            return builder.toString();
-        } catch(IOException e) {
-            log.error("IOException thrown while trying to retrieve container meta-data from docker daemon: ", e);
-            return null;
+        if(resolved == null) resolved = Platform.of("linux", System.getProperty("os.arch"));
+        log.info("Comparing image digests for platform: {}", resolved);
+        return platform = resolved;
+    }
+
+    /**
+     * Stops a running container using the docker engine API when available and the docker CLI otherwise
+     * @param containerName String container name or id
+     * @throws RuntimeException if the container could not be stopped
+     */
+    public void stopContainer(final String containerName) {
+        stopContainer(containerName, null, null);
+    }
+
+    /**
+     * Stops a running container, giving it a stop timeout to shut down after the stop signal before it's killed
+     * @param containerName String container name or id
+     * @param timeoutSeconds Integer seconds to wait before killing the container or null for the daemon default
+     * @param signal String signal to stop the container with or null for the container's stop signal
+     * @throws RuntimeException if the container could not be stopped
+     */
+    public void stopContainer(final String containerName, final Integer timeoutSeconds, final String signal) {
+        if(engineClient.isAvailable()) {
+            engineClient.stopContainer(containerName, timeoutSeconds, signal);
+            return;
+        }
+
+        final List<String> command = new ArrayList<>(Arrays.asList("docker", "container", "stop"));
+        if(timeoutSeconds != null) command.addAll(Arrays.asList("--time", String.valueOf(timeoutSeconds)));
+        if(signal != null) command.addAll(Arrays.asList("--signal", signal));
+        command.add(containerName);
+
+        // The CLI returns once the container has exited, which can take the whole stop timeout
+        if(timeoutSeconds == null) commandService.exec(command);
+        else commandService.exec(command, timeoutSeconds + STOP_GRACE);
+    }
+
+    /**
+     * Starts a stopped container using the docker engine API when available and the docker CLI otherwise
+     * @param containerName String container name or id
+     * @throws RuntimeException if the container could not be started
+     */
+    public void startContainer(final String containerName) {
+        if(engineClient.isAvailable()) {
+            engineClient.startContainer(containerName);
+        } else {
+            commandService.exec(Arrays.asList("docker", "container", "start", containerName));
+        }
+    }
+
+    /**
+     * Removes a stopped container using the docker engine API when available and the docker CLI otherwise
+     * @param containerName String container name or id
+     * @throws RuntimeException if the container could not be removed
+     */
+    public void removeContainer(final String containerName) {
+        if(engineClient.isAvailable()) {
+            engineClient.removeContainer(containerName);
+        } else {
+            commandService.exec(Arrays.asList("docker", "container", "rm", containerName));
+        }
+    }
+
+    /**
+     * Renames a container using the docker engine API when available and the docker CLI otherwise
+     * @param containerName String current container name or id
+     * @param name String the new container name
+     * @throws RuntimeException if the container could not be renamed
+     */
+    public void renameContainer(final String containerName, final String name) {
+        if(engineClient.isAvailable()) {
+            engineClient.renameContainer(containerName, name);
+        } else {
+            commandService.exec(Arrays.asList("docker", "rename", containerName, name));
+        }
+    }
+
+    /**
+     * Pulls the local platform's image of a tag using the docker engine API when available and the docker CLI
+     * otherwise, so a tag without an image for this platform fails to pull rather than to run
+     * @param imageName String the image name
+     * @param tag String the tag to pull
+     * @throws RuntimeException if the image could not be pulled
+     */
+    public void pullImage(final String imageName, final String tag) {
+        final String platform = getPlatform().toString();
+        if(engineClient.isAvailable()) {
+            engineClient.pullImage(imageName, tag, platform);
+        } else {
+            commandService.exec(Arrays.asList("docker", "pull", "--platform", platform, imageName + ":" + tag), pullTimeout);
+        }
+    }
+
+    /**
+     * Lists the local images of a repository using the docker engine API when available and the docker CLI otherwise.
+     * The CLI doesn't report sizes so images listed by it have a size of 0.
+     * @param imageName String the image name
+     * @return List of local images, each with every tag it has
+     */
+    public List<LocalImage> listImages(final String imageName) {
+        if(engineClient.isAvailable()) return engineClient.listImages(imageName);
+
+        final String output = commandService.exec(Arrays.asList("docker", "image", "ls", "--no-trunc", "--format", "{{.ID}} {{.Repository}}:{{.Tag}}", imageName));
+        final Map<String, LocalImage> images = new LinkedHashMap<>();
+        for(String line : output.split("\\R")) {
+            final String[] fields = line.trim().split(" ", 2);
+            if(fields.length < 2) continue;
+            final LocalImage image = images.computeIfAbsent(fields[0], id -> {
+                final LocalImage listed = new LocalImage();
+                listed.setId(id);
+                return listed;
+            });
+            if(!fields[1].endsWith(":<none>")) image.getRepoTags().add(fields[1]);
+        }
+        return new ArrayList<>(images.values());
+    }
+
+    /**
+     * Removes a tag of a local image using the docker engine API when available and the docker CLI otherwise.
+     * The image is deleted along with its last tag unless a container uses it.
+     * @param reference String image reference i.e. "team/app:1.0.0"
+     * @throws RuntimeException if the tag could not be removed
+     */
+    public void removeImage(final String reference) {
+        if(engineClient.isAvailable()) {
+            engineClient.removeImage(reference);
+        } else {
+            commandService.exec(Arrays.asList("docker", "image", "rm", reference));
+        }
+    }
+
+    /**
+     * A refresh of an image's tags which is shared while it's in flight and for the cache TTL after it completed
+     */
+    private class Refresh {
+        private final CompletableFuture<TagIndex> index = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        private boolean isShareable(final long now) {
+            return !index.isDone() || (!index.isCompletedExceptionally() && !isExpired(now));
+        }
+
+        private boolean isExpired(final long now) {
+            return index.isDone() && now - completedAt >= TimeUnit.SECONDS.toMillis(cacheTtl);
         }
     }
 }
@@ -0,0 +1,80 @@
+package com.app.watchr.service;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small HTTP server for the few endpoints Watchr serves (metrics, webhooks). Watchr isn't a web application
+ * so the JDK's built in server is used instead of an embedded servlet container.
+ */
+@Slf4j
+@Service
+public class EmbeddedServer {
+
+    @Value("${http.enabled:true}")
+    private boolean enabled;
+
+    @Value("${http.port:8080}")
+    private int port;
+
+    @Value("${http.threads:2}")
+    private int threads;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if(!enabled) {
+            log.info("HTTP endpoints are disabled");
+            return;
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "watchr-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(executor);
+        this.server.start();
+        log.info("Serving HTTP endpoints on port: {}", server.getAddress().getPort());
+    }
+
+    /**
+     * Serves a path with a handler, ignored when the server is disabled
+     * @param path String the path prefix i.e. /metrics
+     * @param handler HttpHandler the handler for requests to the path
+     */
+    public void register(final String path, final HttpHandler handler) {
+        if(server == null) return;
+        server.createContext(path, handler);
+        log.info("Registered HTTP endpoint: {}", path);
+    }
+
+    /**
+     * @return int the port the server listens on or -1 when it is disabled
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(server == null) return;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,52 @@
+package com.app.watchr.service;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves every meter in the Prometheus text format on /actuator/prometheus
+ */
+@Slf4j
+@Service
+public class MetricsEndpoint {
+    public static final String PATH = "/actuator/prometheus";
+
+    @Autowired
+    private EmbeddedServer embeddedServer;
+
+    @Autowired(required = false)
+    private PrometheusMeterRegistry registry;
+
+    @PostConstruct
+    public void init() {
+        if(registry == null) {
+            log.info("Prometheus metrics export is disabled");
+            return;
+        }
+
+        embeddedServer.register(PATH, exchange -> {
+            try {
+                if(!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                final byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+                exchange.sendResponseHeaders(200, body.length);
+                try(OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+}
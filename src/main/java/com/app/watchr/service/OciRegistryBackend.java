@@ -0,0 +1,429 @@
+package com.app.watchr.service;
+
+import com.app.watchr.Version;
+import com.app.watchr.config.RegistryProperties;
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagList;
+import com.app.watchr.model.TagPage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lists tags of images on any registry implementing the OCI distribution API (/v2/), i.e. a private registry,
+ * Harbor, GHCR or ECR. The API only lists tag names in lexical order so every page is followed through its
+ * Link header on each listing, after which the newest versions are resolved to their digests with a manifest
+ * HEAD request. The registry doesn't report when tags were pushed so these images are polled at polling.delay.
+ *
+ * Registries which answer with a Bearer challenge get a token from the challenge's realm, optionally with the
+ * credentials configured for that registry host under "registry.credentials". Credentials are never sent to the
+ * realm of another host's challenge. Tokens are cached per registry and repository and refreshed in the background
+ * once most of their lifetime has passed, so polls don't pay for an extra auth round-trip.
+ */
+@Slf4j
+@Service
+public class OciRegistryBackend implements RegistryBackend {
+    private static final String MANIFEST_TYPES = String.join(", ",
+            "application/vnd.oci.image.index.v1+json",
+            "application/vnd.docker.distribution.manifest.list.v2+json",
+            "application/vnd.oci.image.manifest.v1+json",
+            "application/vnd.docker.distribution.manifest.v2+json");
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?next\"?");
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private RegistryProperties registryProperties;
+
+    @Value("${registry.page.size:1000}")
+    private int pageSize;
+
+    @Value("${registry.digest.tags:5}")
+    private int digestTags;
+
+    @Value("${registry.insecure:}")
+    private String insecure;
+
+    @Value("${registry.token.lifetime:60}")
+    private long defaultTokenLifetime;
+
+    private final ObjectReader tagListReader = new ObjectMapper().readerFor(TagList.class);
+    private final ObjectReader jsonReader = new ObjectMapper().readerFor(JsonNode.class);
+
+    /**
+     * The WWW-Authenticate challenge of each registry host which asked for authentication
+     */
+    private final Map<String, Challenge> challenges = new ConcurrentHashMap<>();
+
+    /**
+     * Bearer tokens by registry host and scope, a pending future while the token is requested
+     */
+    private final Map<String, CompletableFuture<Token>> tokens = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean supports(final String imageName) {
+        return RegistryBackend.registryHost(imageName) != null;
+    }
+
+    /**
+     * Lists every tag of the image, the returned page never has a next link since the whole listing is read
+     */
+    @Override
+    public CompletableFuture<TagPage> fetchTags(final String imageName, final String next, final TagIndex cached, final Consumer<Tag> consumer) {
+        final Repository repository = new Repository(imageName);
+        final List<String> names = new ArrayList<>();
+        final URI first = URI.create(next != null ? next : repository.url("/tags/list?n=" + pageSize));
+        return listTags(repository, first, names)
+                .thenCompose(ignored -> resolveDigests(repository, names))
+                .thenApply(tags -> {
+                    tags.forEach(consumer);
+                    return new TagPage(false, null, null, null);
+                });
+    }
+
+    /**
+     * Looks up the digest a tag points at without downloading its manifest. Multi-platform tags resolve to the
+     * digest of their image index which is also the digest docker records for the pulled image.
+     * @param imageName String the image name
+     * @param tag String the tag
+     * @return CompletableFuture completed with the digest i.e. "sha256:..." or null if the registry didn't send one
+     */
+    public CompletableFuture<String> getDigest(final String imageName, final String tag) {
+        final Repository repository = new Repository(imageName);
+        return send(repository, () -> {
+            final HttpHead request = new HttpHead(repository.url("/manifests/" + tag));
+            request.setHeader(HttpHeaders.ACCEPT, MANIFEST_TYPES);
+            return request;
+        }, response -> RegistryClient.header(response, "Docker-Content-Digest"), false);
+    }
+
+    /**
+     * Reads the platforms of a tag from its manifest. An image index lists the platform of each of its manifests while
+     * a single image manifest only names its config blob, which holds the platform the image was built for.
+     * @param imageName String the image name
+     * @param tag String the tag
+     * @return CompletableFuture completed with the tag's platforms
+     */
+    @Override
+    public CompletableFuture<List<Platform>> fetchPlatforms(final String imageName, final String tag) {
+        final Repository repository = new Repository(imageName);
+        return readJson(repository, repository.url("/manifests/" + tag), MANIFEST_TYPES).thenCompose(manifest -> {
+            if(manifest.has("manifests")) {
+                final List<Platform> platforms = new ArrayList<>();
+                for(JsonNode entry : manifest.get("manifests")) {
+                    final Platform platform = platform(entry.path("platform"));
+                    if(platform != null) platforms.add(platform);
+                }
+                return CompletableFuture.completedFuture(platforms);
+            }
+
+            final String config = manifest.path("config").path("digest").asText(null);
+            if(config == null) return CompletableFuture.completedFuture(Collections.<Platform>emptyList());
+            return readJson(repository, repository.url("/blobs/" + config), "application/json")
+                    .thenApply(blob -> {
+                        final Platform platform = platform(blob);
+                        return platform == null ? Collections.<Platform>emptyList() : Collections.singletonList(platform);
+                    });
+        });
+    }
+
+    private CompletableFuture<JsonNode> readJson(final Repository repository, final String url, final String accept) {
+        return send(repository, () -> {
+            final HttpGet request = new HttpGet(url);
+            request.setHeader(HttpHeaders.ACCEPT, accept);
+            return request;
+        }, response -> {
+            try(InputStream body = response.getEntity().getContent()) {
+                return jsonReader.readValue(body);
+            }
+        }, false);
+    }
+
+    /**
+     * @param node JsonNode a manifest's platform or an image config, both name the os, architecture and variant
+     * @return Platform the platform or null if the node doesn't name one
+     */
+    private static Platform platform(final JsonNode node) {
+        final String os = node.path("os").asText(null);
+        final String architecture = node.path("architecture").asText(null);
+        if(os == null || architecture == null) return null;
+        return new Platform(os, architecture, node.path("variant").asText(null));
+    }
+
+    private CompletableFuture<Void> listTags(final Repository repository, final URI uri, final List<String> names) {
+        return send(repository, () -> {
+            final HttpGet request = new HttpGet(uri);
+            request.setHeader(HttpHeaders.ACCEPT, "application/json");
+            return request;
+        }, response -> {
+            if(response.getEntity() != null) {
+                try(InputStream body = response.getEntity().getContent()) {
+                    final TagList list = tagListReader.readValue(body);
+                    if(list.getTags() != null) names.addAll(list.getTags());
+                }
+            }
+            return nextLink(uri, RegistryClient.header(response, "Link"));
+        }, false).thenCompose(next -> next == null ? CompletableFuture.completedFuture(null) : listTags(repository, next, names));
+    }
+
+    /**
+     * Resolves the digests of the newest versions, older tags keep a null digest which never counts as a re-push
+     * @param repository Repository the image's repository
+     * @param names List of every tag name
+     * @return CompletableFuture completed with a Tag for every name
+     */
+    private CompletableFuture<List<Tag>> resolveDigests(final Repository repository, final List<String> names) {
+        final Map<String, Version> versions = new HashMap<>();
+        for(String name : names) {
+            final Version version = Version.parse(name);
+            if(version != null) versions.put(name, version);
+        }
+
+        final List<String> newest = new ArrayList<>(versions.keySet());
+        newest.sort((a, b) -> versions.get(b).compareTo(versions.get(a)));
+        final Map<String, CompletableFuture<String>> digests = new LinkedHashMap<>();
+        for(String name : newest.subList(0, Math.min(digestTags, newest.size()))) {
+            digests.put(name, getDigest(repository.imageName, name).exceptionally(e -> {
+                log.warn("Failed to look up the digest of {}:{}. {}", repository.imageName, name, RegistryClient.unwrap(e).getMessage());
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(digests.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            final List<Tag> tags = new ArrayList<>(names.size());
+            for(String name : names) {
+                final Tag tag = new Tag();
+                tag.setName(name);
+                if(digests.containsKey(name)) tag.setDigest(digests.get(name).join());
+                tags.add(tag);
+            }
+            return tags;
+        });
+    }
+
+    /**
+     * Sends a request with the cached credentials for the repository. When the registry answers with a challenge,
+     * either because it's the first request or because the token was revoked, the challenge is answered and the
+     * request is sent once more.
+     */
+    private <T> CompletableFuture<T> send(final Repository repository, final Supplier<HttpUriRequest> request,
+                                          final RegistryClient.ResponseReader<T> reader, final boolean retried) {
+        return authorization(repository).thenCompose(authorization -> {
+            final HttpUriRequest built = request.get();
+            if(authorization != null) built.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+            return registryClient.execute(repository.imageName, built, reader);
+        }).handle((result, e) -> {
+            if(e == null) return CompletableFuture.completedFuture(result);
+
+            final Throwable cause = RegistryClient.unwrap(e);
+            if(!retried && cause instanceof RegistryException && ((RegistryException) cause).getAuthenticate() != null) {
+                challenges.put(repository.host, Challenge.parse(((RegistryException) cause).getAuthenticate()));
+                tokens.remove(repository.tokenKey());
+                return send(repository, request, reader, true);
+            }
+
+            final CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cause);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * @param repository Repository the repository a request is for
+     * @return CompletableFuture completed with the Authorization header value or null to send the request anonymously
+     */
+    private CompletableFuture<String> authorization(final Repository repository) {
+        final Challenge challenge = challenges.get(repository.host);
+        if(challenge == null) return CompletableFuture.completedFuture(null);
+        if(!challenge.isBearer()) return CompletableFuture.completedFuture(basicCredentials(repository.host));
+
+        final String key = repository.tokenKey();
+        final CompletableFuture<Token> token = tokens.compute(key, (ignored, existing) -> {
+            if(existing == null || existing.isCompletedExceptionally()) return requestToken(repository, challenge);
+            if(existing.isDone() && existing.join().isExpired()) return requestToken(repository, challenge);
+            return existing;
+        });
+
+        if(token.isDone() && !token.isCompletedExceptionally()) {
+            final Token current = token.join();
+            if(current.isDue() && current.refreshing.compareAndSet(false, true)) {
+                // The current token is still valid so requests carry on using it while a fresh one is requested
+                requestToken(repository, challenge).whenComplete((fresh, e) -> {
+                    if(e != null) {
+                        log.warn("Failed to refresh the registry token for {}. {}", key, RegistryClient.unwrap(e).getMessage());
+                        current.refreshing.set(false);
+                    } else {
+                        tokens.replace(key, token, CompletableFuture.completedFuture(fresh));
+                    }
+                });
+            }
+        }
+        return token.thenApply(current -> "Bearer " + current.value);
+    }
+
+    private CompletableFuture<Token> requestToken(final Repository repository, final Challenge challenge) {
+        final StringBuilder url = new StringBuilder(challenge.parameters.getOrDefault("realm", ""));
+        url.append(url.indexOf("?") < 0 ? '?' : '&').append("scope=").append(encode(repository.scope()));
+        if(challenge.parameters.containsKey("service")) url.append("&service=").append(encode(challenge.parameters.get("service")));
+
+        final HttpGet request = new HttpGet(url.toString());
+        final String credentials = basicCredentials(repository.host);
+        if(credentials != null) request.setHeader(HttpHeaders.AUTHORIZATION, credentials);
+        log.debug("Requesting a registry token for {}", repository.tokenKey());
+        return registryClient.execute(repository.imageName, request, response -> {
+            final JsonNode body;
+            try(InputStream in = response.getEntity().getContent()) {
+                body = jsonReader.readValue(in);
+            }
+            final String value = body.hasNonNull("token") ? body.get("token").asText() : body.path("access_token").asText(null);
+            if(value == null) throw new IOException("Token response from " + request.getURI() + " has no token");
+            return new Token(value, TimeUnit.SECONDS.toMillis(body.path("expires_in").asLong(defaultTokenLifetime)));
+        });
+    }
+
+    /**
+     * @param host String the registry host which challenged the request
+     * @return String the Basic Authorization header value for the host's own credentials or null when it has none
+     */
+    private String basicCredentials(final String host) {
+        final RegistryProperties.Credentials credentials = registryProperties.credentialsFor(host);
+        if(credentials == null || credentials.getUsername() == null || credentials.getUsername().isEmpty()) return null;
+        final String password = credentials.getPassword() == null ? "" : credentials.getPassword();
+        return "Basic " + Base64.getEncoder().encodeToString((credentials.getUsername() + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param uri URI the page which was read
+     * @param link String the Link header of the page i.e. {@code </v2/app/tags/list?n=100&last=b>; rel="next"}
+     * @return URI the next page or null if this was the last page
+     */
+    private static URI nextLink(final URI uri, final String link) {
+        if(link == null) return null;
+        final Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? uri.resolve(matcher.group(1)) : null;
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An image name split into its registry host and repository path
+     */
+    private class Repository {
+        private final String imageName;
+        private final String host;
+        private final String path;
+
+        private Repository(final String imageName) {
+            this.imageName = imageName;
+            this.host = RegistryBackend.registryHost(imageName);
+            if(host == null) throw new IllegalArgumentException("Image " + imageName + " has no registry host");
+            this.path = imageName.substring(host.length() + 1);
+        }
+
+        private String url(final String suffix) {
+            final boolean plain = Arrays.stream(insecure.split(",")).map(String::trim).anyMatch(host::equals);
+            return (plain ? "http://" : "https://") + host + "/v2/" + path + suffix;
+        }
+
+        private String scope() {
+            return "repository:" + path + ":pull";
+        }
+
+        private String tokenKey() {
+            return host + "/" + path;
+        }
+    }
+
+    /**
+     * A parsed WWW-Authenticate header i.e. {@code Bearer realm="https://auth.example.com/token",service="registry"}
+     */
+    private static class Challenge {
+        private static final Pattern PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+        private final String scheme;
+        private final Map<String, String> parameters;
+
+        private Challenge(final String scheme, final Map<String, String> parameters) {
+            this.scheme = scheme;
+            this.parameters = parameters;
+        }
+
+        private static Challenge parse(final String header) {
+            final String trimmed = header.trim();
+            final int space = trimmed.indexOf(' ');
+            final Map<String, String> parameters = new HashMap<>();
+            final Matcher matcher = PARAMETER.matcher(space < 0 ? "" : trimmed.substring(space + 1));
+            while(matcher.find()) parameters.put(matcher.group(1), matcher.group(2));
+            return new Challenge(space < 0 ? trimmed : trimmed.substring(0, space), Collections.unmodifiableMap(parameters));
+        }
+
+        private boolean isBearer() {
+            return "Bearer".equalsIgnoreCase(scheme) && parameters.containsKey("realm");
+        }
+    }
+
+    /**
+     * A bearer token which is refreshed once 80% of its lifetime has passed
+     */
+    private static class Token {
+        private final String value;
+        private final long refreshAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Token(final String value, final long lifetime) {
+            final long now = System.currentTimeMillis();
+            this.value = value;
+            this.refreshAt = now + lifetime * 4 / 5;
+            this.expiresAt = now + lifetime;
+        }
+
+        private boolean isDue() {
+            return System.currentTimeMillis() >= refreshAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.TagRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a tag publishes an image for the local platform so a container is never updated to a tag it can't
+ * run. Docker Hub lists the images of each tag with the tag itself, other registries are asked for the tag's manifest
+ * and the answer is cached per image, tag and platform until the tag is re-pushed.
+ */
+@Slf4j
+@Service
+public class PlatformResolver {
+
+    @Autowired
+    private DockerService dockerService;
+
+    /**
+     * Whether a tag has an image for a platform by image:tag@platform
+     */
+    private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    /**
+     * Returns true if a tag can be run on the local platform. Tags whose platforms the registry can't tell, or can't
+     * be looked up right now, are assumed to run so a registry hiccup doesn't hold back every update.
+     * @param imageName String the image name
+     * @param record TagRecord the tag
+     * @return Boolean true if the tag publishes an image for the local platform
+     */
+    public boolean isAvailable(final String imageName, final TagRecord record) {
+        final Platform platform = dockerService.getPlatform();
+        if(!record.getImages().isEmpty()) return record.getImages().stream().anyMatch(platform::matches);
+
+        final String key = imageName + ":" + record.getName() + "@" + platform;
+        final String push = record.getDigest() != null ? record.getDigest() : record.getLastUpdated();
+        final Resolution cached = resolutions.get(key);
+        if(cached != null && Objects.equals(cached.push, push)) return cached.available;
+
+        final List<Platform> platforms;
+        try {
+            platforms = dockerService.getBackend(imageName).fetchPlatforms(imageName, record.getName()).join();
+        } catch(RuntimeException e) {
+            log.warn("Failed to look up the platforms of {}:{}, assuming it runs on {}. {}", imageName, record.getName(), platform,
+                    RegistryClient.unwrap(e).getMessage());
+            return true;
+        }
+
+        final boolean available = platforms.isEmpty() || platforms.stream().anyMatch(platform::matches);
+        if(!available) log.info("Tag {}:{} has no image for {}, only for {}", imageName, record.getName(), platform, platforms);
+        resolutions.put(key, new Resolution(push, available));
+        return available;
+    }
+
+    /**
+     * Whether a push of a tag has an image for a platform
+     */
+    private static class Resolution {
+        private final String push;
+        private final boolean available;
+
+        private Resolution(final String push, final boolean available) {
+            this.push = push;
+            this.available = available;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Lists the tags of images held by one kind of registry. The backend for an image is picked by its name, images
+ * without a registry host are on Docker Hub while the rest are listed through the OCI distribution API.
+ */
+public interface RegistryBackend {
+
+    /**
+     * @param imageName String the image name as it's pulled i.e. "nginx" or "registry.example.com:5000/team/app"
+     * @return Boolean true if this backend lists the image's tags
+     */
+    boolean supports(String imageName);
+
+    /**
+     * Fetches a page of an image's tags and streams each tag to the consumer
+     * @param imageName String the image name
+     * @param next String the next link of the previous page or null for the first page
+     * @param cached TagIndex holding the validators of the previous listing when the first page is fetched, otherwise null
+     * @param consumer Consumer called for every tag on the page
+     * @return CompletableFuture completed with the validators and next link of the page
+     */
+    CompletableFuture<TagPage> fetchTags(String imageName, String next, TagIndex cached, Consumer<Tag> consumer);
+
+    /**
+     * Looks up the platforms a tag publishes an image for, for registries whose tag listing doesn't include them
+     * @param imageName String the image name
+     * @param tag String the tag
+     * @return CompletableFuture completed with the tag's platforms, empty if the backend can't tell
+     */
+    default CompletableFuture<List<Platform>> fetchPlatforms(final String imageName, final String tag) {
+        return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+
+    /**
+     * Returns the registry host of an image following docker's rule, the first path component is a host when it
+     * contains a '.' or ':' or is "localhost"
+     * @param imageName String the image name
+     * @return String the host i.e. "registry.example.com:5000" or null if the image is on Docker Hub
+     */
+    static String registryHost(final String imageName) {
+        final int slash = imageName.indexOf('/');
+        if(slash < 0) return null;
+        final String first = imageName.substring(0, slash);
+        if(!first.contains(".") && !first.contains(":") && !first.equals("localhost")) return null;
+        return first.equals("docker.io") || first.equals("index.docker.io") || first.equals("registry-1.docker.io") ? null : first;
+    }
+}
@@ -0,0 +1,366 @@
+package com.app.watchr.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking client for registry requests. Requests share a bounded pool of keep-alive connections which are
+ * driven by the client's I/O reactor so no thread waits on a socket while a registry is slow to respond. Responses
+ * are parsed on a small dedicated pool and every request has a deadline covering the wait for a pooled connection,
+ * the connect and reading the whole response, after which it is aborted.
+ *
+ * TLS certificates are verified against the JVM's trust store, set with javax.net.ssl.trustStore for private CAs.
+ *
+ * When a registry rate limits us, either with a 429 and Retry-After or by reporting no remaining requests in its
+ * rate limit headers, no further requests are sent to that registry until the limit resets. They fail straight away
+ * instead while requests for images on other registries carry on.
+ */
+@Slf4j
+@Service
+public class RegistryClient {
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${registry.max.connections:16}")
+    private int maxConnections;
+
+    @Value("${registry.connect.timeout:5}")
+    private long connectTimeout;
+
+    @Value("${registry.socket.timeout:15}")
+    private long socketTimeout;
+
+    @Value("${registry.request.deadline:30}")
+    private long requestDeadline;
+
+    @Value("${registry.keep.alive:30}")
+    private long keepAlive;
+
+    @Value("${registry.threads:2}")
+    private int threads;
+
+    @Value("${registry.rate.limit.backoff:60}")
+    private long rateLimitBackoff;
+
+    private CloseableHttpAsyncClient client;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Time in epoch millis before which no requests are sent by registry host
+     */
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Requests left in the rate limit window by registry host, hosts which don't report one are absent
+     */
+    private final Map<String, Long> rateLimitRemaining = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "watchr-registry-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final int connectMillis = (int) TimeUnit.SECONDS.toMillis(connectTimeout);
+        final int socketMillis = (int) TimeUnit.SECONDS.toMillis(socketTimeout);
+        final long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+        this.client = HttpAsyncClients.custom()
+                .setSSLContext(SSLContexts.createSystemDefault())
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setConnectTimeout(connectMillis)
+                        .setSoTimeout(socketMillis)
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectMillis)
+                        .setSocketTimeout(socketMillis)
+                        .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(requestDeadline))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> {
+                    // Registries rarely advertise a keep-alive so idle connections are dropped after our own limit
+                    final long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return advertised > 0 ? Math.min(advertised, keepAliveMillis) : keepAliveMillis;
+                })
+                .build();
+        this.client.start();
+    }
+
+    /**
+     * Sends a request to a registry and reads its response off the I/O reactor's thread. Rate limit responses and any
+     * status other than success or not modified fail the request, everything else is handed to the reader.
+     * @param imageName String the image the request is for, used to tag its metrics
+     * @param request HttpUriRequest the request
+     * @param reader ResponseReader turns the response into a result, called on a registry client thread
+     * @param <T> the result type
+     * @return CompletableFuture completed with the reader's result. It fails with a RegistryException for an
+     * unexpected status and a TimeoutException when the deadline passes.
+     */
+    public <T> CompletableFuture<T> execute(final String imageName, final HttpUriRequest request, final ResponseReader<T> reader) {
+        final URI uri = request.getURI();
+        final String registry = registry(imageName);
+        final long wait = getBlockedUntil(imageName) - System.currentTimeMillis();
+        if(wait > 0) {
+            final CompletableFuture<T> limited = new CompletableFuture<>();
+            limited.completeExceptionally(new RegistryException("Registry " + registry + " is rate limited for another "
+                    + TimeUnit.MILLISECONDS.toSeconds(wait) + "s, not requesting " + uri, RegistryException.TOO_MANY_REQUESTS, wait));
+            return limited;
+        }
+
+        log.debug("Sending registry request: {} {}", request.getMethod(), uri);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final String[] status = { "error" };
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final AtomicReference<Future<HttpResponse>> exchange = new AtomicReference<>();
+        exchange.set(client.execute(request, new FutureCallback<HttpResponse>() {
+            private boolean retried;
+
+            @Override
+            public void completed(final HttpResponse response) {
+                status[0] = String.valueOf(response.getStatusLine().getStatusCode());
+                // Never parse on the I/O reactor's thread, it drives every other connection
+                dispatch(result, () -> read(registry, uri, response, reader));
+            }
+
+            @Override
+            public void failed(final Exception e) {
+                // A registry may close an idle keep-alive connection just as it's leased from the pool, which is safe to retry once for reads
+                if(e instanceof ConnectionClosedException && !retried && !result.isDone() && isIdempotent(request)) {
+                    retried = true;
+                    log.debug("Registry closed the connection before responding to {} {}, retrying", request.getMethod(), uri);
+                    exchange.set(client.execute(request, this));
+                    return;
+                }
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new CancellationException("Request for " + uri + " was cancelled"));
+            }
+        }));
+
+        final ScheduledFuture<?> deadline = executor.schedule(() -> {
+            if(result.completeExceptionally(new TimeoutException("No response for " + uri + " within " + requestDeadline + "s")))
+                exchange.get().cancel(true);
+        }, requestDeadline, TimeUnit.SECONDS);
+
+        result.whenComplete((ignored, e) -> {
+            deadline.cancel(false);
+            sample.stop(meterRegistry.timer("watchr.registry.fetch", "image", imageName, "method", request.getMethod(), "status",
+                    unwrap(e) instanceof TimeoutException ? "timeout" : status[0]));
+        });
+        return result;
+    }
+
+    private static boolean isIdempotent(final HttpUriRequest request) {
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+
+    private <T> void dispatch(final CompletableFuture<T> result, final Callable<T> reader) {
+        try {
+            executor.execute(() -> {
+                if(result.isDone()) return;
+                try {
+                    result.complete(reader.call());
+                } catch(Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @param imageName String an image name
+     * @return String the registry host the image is pulled from, "docker.io" for Docker Hub images
+     */
+    public static String registry(final String imageName) {
+        final String host = RegistryBackend.registryHost(imageName);
+        return host == null ? "docker.io" : host.toLowerCase();
+    }
+
+    /**
+     * @param imageName String an image name
+     * @return long time in epoch millis before which no requests are sent to the image's registry, 0 if it isn't rate limited
+     */
+    public long getBlockedUntil(final String imageName) {
+        return blockedUntil.getOrDefault(registry(imageName), 0L);
+    }
+
+    /**
+     * @param imageName String an image name
+     * @return long requests left in the rate limit window of the image's registry or -1 if it doesn't report one
+     */
+    public long getRateLimitRemaining(final String imageName) {
+        return rateLimitRemaining.getOrDefault(registry(imageName), -1L);
+    }
+
+    private <T> T read(final String registry, final URI uri, final HttpResponse response, final ResponseReader<T> reader) throws IOException {
+        final int code = response.getStatusLine().getStatusCode();
+        observeRateLimit(registry, response);
+        if(code == RegistryException.TOO_MANY_REQUESTS || code == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            long retryAfter = retryAfter(header(response, HttpHeaders.RETRY_AFTER));
+            if(retryAfter <= 0 && code == RegistryException.TOO_MANY_REQUESTS) retryAfter = TimeUnit.SECONDS.toMillis(rateLimitBackoff);
+            if(retryAfter > 0) block(registry, System.currentTimeMillis() + retryAfter);
+            throw new RegistryException(uri, code, response.getStatusLine().getReasonPhrase(), retryAfter);
+        }
+
+        if(code == RegistryException.UNAUTHORIZED) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            throw new RegistryException(uri, response.getStatusLine().getReasonPhrase(), header(response, HttpHeaders.WWW_AUTHENTICATE));
+        }
+
+        if(code != HttpStatus.SC_NOT_MODIFIED && (code < 200 || code >= 300)) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            throw new RegistryException(uri, code, response.getStatusLine().getReasonPhrase());
+        }
+        return reader.read(response);
+    }
+
+    /**
+     * Reads the rate limit headers of a response. Docker Hub's API sends X-RateLimit-* headers with the reset as epoch
+     * seconds while registries send RateLimit-Remaining as "count;w=window". Once nothing remains requests are held
+     * back until the reset, or for the rate limit backoff when no reset was sent.
+     * @param registry String the registry host the request was sent for
+     * @param response HttpResponse any registry response
+     */
+    private void observeRateLimit(final String registry, final HttpResponse response) {
+        String remaining = header(response, "X-RateLimit-Remaining");
+        if(remaining == null) remaining = header(response, "RateLimit-Remaining");
+        final long left = leadingNumber(remaining);
+        if(left < 0) return;
+
+        if(rateLimitRemaining.put(registry, left) == null) {
+            Gauge.builder("watchr.registry.rate.remaining", rateLimitRemaining, limits -> limits.getOrDefault(registry, -1L))
+                    .tag("registry", registry).register(meterRegistry);
+        }
+        if(left > 0) return;
+
+        String reset = header(response, "X-RateLimit-Reset");
+        if(reset == null) reset = header(response, "RateLimit-Reset");
+        final long now = System.currentTimeMillis();
+        final long resetAt = leadingNumber(reset);
+        // A reset this large is an epoch second, anything else is a number of seconds from now
+        final long until = resetAt > 1_000_000_000L ? TimeUnit.SECONDS.toMillis(resetAt)
+                : now + TimeUnit.SECONDS.toMillis(resetAt > 0 ? resetAt : rateLimitBackoff);
+        block(registry, until);
+    }
+
+    private void block(final String registry, final long until) {
+        if(blockedUntil.merge(registry, until, Math::max) != until) return;
+        log.warn("Registry {} rate limit reached, holding back its requests for {}s", registry,
+                TimeUnit.MILLISECONDS.toSeconds(until - System.currentTimeMillis()));
+    }
+
+    /**
+     * @param value String a Retry-After header, either a number of seconds or an HTTP date
+     * @return long millis to wait or 0 if there is no valid header
+     */
+    private static long retryAfter(final String value) {
+        if(value == null) return 0;
+        final long seconds = leadingNumber(value);
+        if(seconds >= 0) return TimeUnit.SECONDS.toMillis(seconds);
+        final Date date = DateUtils.parseDate(value.trim());
+        return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * @param value String a header value such as "42" or "42;w=21600"
+     * @return long the number the value starts with or -1 if it doesn't start with one
+     */
+    private static long leadingNumber(final String value) {
+        if(value == null) return -1;
+        final String trimmed = value.trim();
+        int end = 0;
+        while(end < trimmed.length() && Character.isDigit(trimmed.charAt(end))) end++;
+        return end == 0 ? -1 : Long.parseLong(trimmed.substring(0, end));
+    }
+
+    /**
+     * @param response HttpResponse a registry response
+     * @param name String a header name
+     * @return String the first value of the header or null if it wasn't sent
+     */
+    public static String header(final HttpResponse response, final String name) {
+        final Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * @param e Throwable a failure which may be wrapped by a dependent stage
+     * @return Throwable the failure's cause when it was wrapped by a CompletableFuture
+     */
+    public static Throwable unwrap(final Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(client != null) {
+            try {
+                client.close();
+            } catch(IOException e) {
+                log.error("IOException thrown while closing the registry client", e);
+            }
+        }
+        if(executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Turns a registry response into a result
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(HttpResponse response) throws IOException;
+    }
+}
@@ -0,0 +1,51 @@
+package com.app.watchr.service;
+
+import lombok.Getter;
+
+import java.net.URI;
+
+/**
+ * Thrown when a registry answers a request with a status other than success or not modified
+ */
+@Getter
+public class RegistryException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public static final int UNAUTHORIZED = 401;
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private final int status;
+
+    /**
+     * How long the registry asked us to wait before the next request in millis, 0 if it didn't say
+     */
+    private final long retryAfter;
+
+    /**
+     * The WWW-Authenticate challenge of a 401 response or null
+     */
+    private final String authenticate;
+
+    public RegistryException(final URI uri, final int status, final String reason) {
+        this(uri, status, reason, 0);
+    }
+
+    public RegistryException(final URI uri, final int status, final String reason, final long retryAfter) {
+        this("Registry responded to " + uri + " with " + status + " " + reason, status, retryAfter, null);
+    }
+
+    public RegistryException(final URI uri, final String reason, final String authenticate) {
+        this("Registry responded to " + uri + " with " + UNAUTHORIZED + " " + reason, UNAUTHORIZED, 0, authenticate);
+    }
+
+    public RegistryException(final String message, final int status, final long retryAfter) {
+        this(message, status, retryAfter, null);
+    }
+
+    private RegistryException(final String message, final int status, final long retryAfter, final String authenticate) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+        this.authenticate = authenticate;
+    }
+}
@@ -0,0 +1,425 @@
+package com.app.watchr.service;
+
+import com.app.watchr.Version;
+import com.app.watchr.model.DockerImage;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.WatchState;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the tag index of every image and the state of every watch on disk so a restarted Watchr comes back up warm
+ * instead of re-listing every tag from the registry.
+ *
+ * The state is an append-only log in a memory-mapped file: a header followed by records of [length][crc32][payload],
+ * where a zero length marks the end of the log. Each change to a tag index is appended as a delta and each change to a
+ * watch as its latest values. Start up replays the log and stops at the first record whose checksum doesn't match (a
+ * write torn by a crash), which the next append overwrites. Once the log grows past its compaction size it is replaced
+ * by a snapshot holding a single record per image and per watch.
+ */
+@Slf4j
+@Service
+public class StateStore {
+    private static final int MAGIC = 0x57544352;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_CAPACITY = 1 << 20;
+    private static final byte TAGS = 1;
+    private static final byte WATCH = 2;
+
+    private final Path file;
+    private final long compactSize;
+    private final Map<String, ImageState> images = new HashMap<>();
+    private final Map<String, WatchRecord> watches = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long snapshotSize;
+
+    /**
+     * False when the state file could not be opened, Watchr then keeps its state in memory only
+     */
+    @Getter
+    private boolean enabled;
+
+    @Autowired
+    public StateStore(@Value("${state.dir:data}") final String directory,
+                      @Value("${state.compact.size:8388608}") final long compactSize) {
+        this.file = Paths.get(directory, "watchr.state");
+        this.compactSize = compactSize;
+        try {
+            Files.createDirectories(file.getParent());
+            final long start = System.nanoTime();
+            final int records = open();
+            this.enabled = true;
+            log.info("Restored {} images and {} watches from {} state records in {} ms", images.size(), watches.size(), records,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch(IOException e) {
+            log.error("IOException thrown while attempting to open state file: {} state will only be kept in memory", file, e);
+        }
+    }
+
+    /**
+     * Builds the tag index for an image from its stored tags. The restored index starts at the stored revision
+     * with an empty change log, readers who saw that revision before the restart carry on incrementally.
+     * @param imageName String the image name
+     * @param maxDeltas int the number of deltas the index keeps
+     * @return TagIndex the restored index or an empty index if nothing is stored for the image
+     */
+    public synchronized TagIndex restoreIndex(final String imageName, final int maxDeltas) {
+        final TagIndex index = new TagIndex(maxDeltas);
+        final ImageState image = images.get(imageName);
+        if(image != null) index.restore(image.records.values(), image.revision, image.eTag, image.lastModified);
+        return index;
+    }
+
+    /**
+     * Records a change to the tag index of an image. Nothing is written when neither the tags nor the validators changed.
+     * @param imageName String the image name
+     * @param delta TagDelta the change applied to the index
+     * @param eTag String the ETag validator of the listing
+     * @param lastModified String the Last-Modified validator of the listing
+     */
+    public synchronized void appendTags(final String imageName, final TagDelta delta, final String eTag, final String lastModified) {
+        final ImageState image = images.computeIfAbsent(imageName, name -> new ImageState());
+        if(delta.isEmpty() && Objects.equals(eTag, image.eTag) && Objects.equals(lastModified, image.lastModified)) return;
+
+        final List<TagRecord> upserts = new ArrayList<>(delta.getAdded().size() + delta.getRepushed().size());
+        upserts.addAll(delta.getAdded());
+        upserts.addAll(delta.getRepushed());
+        final List<String> removed = new ArrayList<>(delta.getRemoved().size());
+        for(TagRecord record : delta.getRemoved()) removed.add(record.getName());
+
+        image.apply(delta.isReset(), delta.getRevision(), eTag, lastModified, upserts, removed);
+        append(encodeTags(imageName, delta.isReset(), delta.getRevision(), eTag, lastModified, upserts, removed));
+    }
+
+    /**
+     * Restores the deployed version and index revision of a watch, as long as it still watches the same image
+     * @param state WatchState a newly registered watch
+     * @return Boolean true if the watch was restored
+     */
+    public synchronized boolean restore(final WatchState state) {
+        final WatchRecord record = watches.get(state.getContainerName());
+        if(record == null || !record.imageName.equals(state.getImageName())) return false;
+
+        state.setCurrentVersion(record.version == null ? null : Version.parse(record.version));
+        state.setRevision(record.revision);
+        return true;
+    }
+
+    /**
+     * Records the deployed version and index revision of a watch when either changed since it was last saved
+     * @param state WatchState the watch
+     */
+    public synchronized void saveWatch(final WatchState state) {
+        final String version = state.getCurrentVersion() == null ? null : state.getCurrentVersion().getVersion();
+        final WatchRecord previous = watches.get(state.getContainerName());
+        if(previous != null && previous.imageName.equals(state.getImageName()) && previous.revision == state.getRevision()
+                && Objects.equals(previous.version, version)) return;
+
+        final WatchRecord record = new WatchRecord(state.getContainerName(), state.getImageName(), version, state.getRevision());
+        watches.put(record.containerName, record);
+        append(encodeWatch(record));
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if(!enabled) return;
+        enabled = false;
+        try {
+            buffer.force();
+            channel.close();
+        } catch(IOException e) {
+            log.error("IOException thrown while attempting to close state file: {}", file, e);
+        }
+    }
+
+    /**
+     * Maps the state file and replays every intact record in it
+     * @return int the number of records replayed
+     */
+    private int open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), MIN_CAPACITY));
+
+        final int magic = buffer.getInt(0);
+        if(magic != MAGIC || buffer.getInt(4) != FORMAT) {
+            if(magic != 0) log.warn("State file: {} has an unknown format, starting without stored state", file);
+            buffer.putInt(0, MAGIC).putInt(4, FORMAT).putInt(HEADER_SIZE, 0);
+            buffer.position(HEADER_SIZE);
+            snapshotSize = HEADER_SIZE;
+            return 0;
+        }
+
+        int records = 0;
+        buffer.position(HEADER_SIZE);
+        while(buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int start = buffer.position();
+            final int length = buffer.getInt();
+            final int crc = buffer.getInt();
+            if(length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            final byte[] payload = new byte[length];
+            buffer.get(payload);
+            if(checksum(payload) != crc) {
+                log.warn("Discarding a torn record at offset {} of state file: {}", start, file);
+                buffer.position(start);
+                break;
+            }
+            replay(payload);
+            records++;
+        }
+        snapshotSize = buffer.position();
+        return records;
+    }
+
+    private void replay(final byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte type = in.readByte();
+        if(type == TAGS) {
+            final String imageName = in.readUTF();
+            final boolean reset = in.readBoolean();
+            final long revision = in.readLong();
+            final String eTag = readNullable(in);
+            final String lastModified = readNullable(in);
+
+            final int upsertCount = in.readInt();
+            final List<TagRecord> upserts = new ArrayList<>(upsertCount);
+            for(int i = 0; i < upsertCount; i++) {
+                final TagRecord record = readRecord(in);
+                if(record != null) upserts.add(record);
+            }
+
+            final int removedCount = in.readInt();
+            final List<String> removed = new ArrayList<>(removedCount);
+            for(int i = 0; i < removedCount; i++) removed.add(in.readUTF());
+
+            images.computeIfAbsent(imageName, name -> new ImageState()).apply(reset, revision, eTag, lastModified, upserts, removed);
+        } else if(type == WATCH) {
+            final WatchRecord record = new WatchRecord(in.readUTF(), in.readUTF(), readNullable(in), in.readLong());
+            watches.put(record.containerName, record);
+        } else {
+            log.warn("Skipping unknown record type: {} in state file: {}", type, file);
+        }
+    }
+
+    /**
+     * Appends an encoded record to the log, replacing the log with a snapshot instead when it has grown too large.
+     * The in-memory state must already include the change so the snapshot holds it.
+     */
+    private void append(final byte[] payload) {
+        if(!enabled) return;
+        try {
+            final long threshold = Math.max(compactSize, snapshotSize * 2);
+            if(buffer.position() + RECORD_HEADER_SIZE + payload.length > threshold) {
+                compact();
+                return;
+            }
+
+            ensureCapacity(buffer.position() + RECORD_HEADER_SIZE + payload.length + 4);
+            buffer.putInt(payload.length).putInt(checksum(payload)).put(payload);
+            buffer.putInt(buffer.position(), 0);
+            buffer.force();
+        } catch(IOException e) {
+            log.error("IOException thrown while attempting to write state file: {} state will only be kept in memory", file, e);
+            enabled = false;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state to a temporary file and atomically moves it over the log
+     */
+    private void compact() throws IOException {
+        final long start = System.nanoTime();
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size = HEADER_SIZE;
+        try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write((ByteBuffer) ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT).flip());
+            for(Map.Entry<String, ImageState> entry : images.entrySet()) {
+                final ImageState image = entry.getValue();
+                size += write(out, encodeTags(entry.getKey(), true, image.revision, image.eTag, image.lastModified, image.records.values(), Collections.emptyList()));
+            }
+            for(WatchRecord record : watches.values()) {
+                size += write(out, encodeWatch(record));
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size * 2, MIN_CAPACITY));
+        buffer.position((int) size);
+        buffer.putInt(buffer.position(), 0);
+        snapshotSize = size;
+        log.info("Compacted state file: {} to {} bytes in {} ms", file, size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static int write(final FileChannel out, final byte[] payload) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        while(record.hasRemaining()) out.write(record);
+        return RECORD_HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Re-maps the file with a larger size when a write would run past the end of the mapping
+     */
+    private void ensureCapacity(final long required) throws IOException {
+        if(required <= buffer.capacity()) return;
+        final int position = buffer.position();
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max((long) buffer.capacity() * 2, required));
+        buffer.position(position);
+    }
+
+    private static byte[] encodeTags(final String imageName, final boolean reset, final long revision, final String eTag, final String lastModified,
+                                     final Collection<TagRecord> upserts, final Collection<String> removed) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + upserts.size() * 96);
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TAGS);
+            out.writeUTF(imageName);
+            out.writeBoolean(reset);
+            out.writeLong(revision);
+            writeNullable(out, eTag);
+            writeNullable(out, lastModified);
+            out.writeInt(upserts.size());
+            for(TagRecord record : upserts) writeRecord(out, record);
+            out.writeInt(removed.size());
+            for(String name : removed) out.writeUTF(name);
+        } catch(IOException e) {
+            throw new IllegalStateException("Failed to encode tags for image: " + imageName, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeWatch(final WatchRecord record) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(WATCH);
+            out.writeUTF(record.containerName);
+            out.writeUTF(record.imageName);
+            writeNullable(out, record.version);
+            out.writeLong(record.revision);
+        } catch(IOException e) {
+            throw new IllegalStateException("Failed to encode watch for container: " + record.containerName, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(final DataOutputStream out, final TagRecord record) throws IOException {
+        out.writeUTF(record.getName());
+        writeNullable(out, record.getDigest());
+        writeNullable(out, record.getLastUpdated());
+        out.writeShort(record.getImages().size());
+        for(DockerImage image : record.getImages()) {
+            writeNullable(out, image.getOs());
+            writeNullable(out, image.getArchitecture());
+            writeNullable(out, image.getVariant());
+            writeNullable(out, image.getDigest());
+        }
+    }
+
+    /**
+     * @return TagRecord the decoded record or null if its name is no longer a valid version
+     */
+    private static TagRecord readRecord(final DataInputStream in) throws IOException {
+        final String name = in.readUTF();
+        final String digest = readNullable(in);
+        final String lastUpdated = readNullable(in);
+        final int imageCount = in.readShort();
+        final List<DockerImage> images = new ArrayList<>(imageCount);
+        for(int i = 0; i < imageCount; i++) {
+            final DockerImage image = new DockerImage();
+            image.setOs(readNullable(in));
+            image.setArchitecture(readNullable(in));
+            image.setVariant(readNullable(in));
+            image.setDigest(readNullable(in));
+            images.add(image);
+        }
+
+        final Version version = Version.parse(name);
+        return version == null ? null : new TagRecord(name, version, digest, lastUpdated, images);
+    }
+
+    private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int checksum(final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The stored tags of a single image, updated by replaying its deltas
+     */
+    private static class ImageState {
+        private final Map<String, TagRecord> records = new LinkedHashMap<>();
+        private long revision;
+        private String eTag;
+        private String lastModified;
+
+        private void apply(final boolean reset, final long revision, final String eTag, final String lastModified,
+                           final Collection<TagRecord> upserts, final Collection<String> removed) {
+            if(reset) records.clear();
+            for(TagRecord record : upserts) records.put(record.getName(), record);
+            for(String name : removed) records.remove(name);
+            this.revision = revision;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class WatchRecord {
+        private final String containerName;
+        private final String imageName;
+        private final String version;
+        private final long revision;
+
+        private WatchRecord(final String containerName, final String imageName, final String version, final long revision) {
+            this.containerName = containerName;
+            this.imageName = imageName;
+            this.version = version;
+            this.revision = revision;
+        }
+    }
+}
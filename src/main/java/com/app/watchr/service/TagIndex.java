@@ -0,0 +1,200 @@
+package com.app.watchr.service;
+
+import com.app.watchr.Version;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Every known tag of a single image hashed by name and sorted by version, along with the validators of the last
+ * listing. Each listing that changes something bumps the revision and appends a delta to a short change log, so
+ * readers (one per watch) ask for the changes since the revision they last saw instead of comparing full lists.
+ */
+public class TagIndex {
+
+    private final int maxDeltas;
+    private final Map<String, TagRecord> byName = new HashMap<>();
+    /**
+     * How many tags carry each version. Aliases such as "1.2", "1.2.0" and "v1.2.0" are equal versions, so a
+     * version is only dropped once its last tag is.
+     */
+    private final TreeMap<Version, Integer> sorted = new TreeMap<>();
+    private final Deque<TagDelta> deltas = new ArrayDeque<>();
+    private List<Version> versions = Collections.emptyList();
+
+    @Getter
+    private volatile long revision;
+
+    @Getter
+    private volatile String eTag;
+
+    @Getter
+    private volatile String lastModified;
+
+    public TagIndex(final int maxDeltas) {
+        this.maxDeltas = maxDeltas;
+    }
+
+    /**
+     * Merges the tags from a registry listing into the index
+     * @param fetched Collection of tags read from the registry
+     * @param complete Boolean true if every tag was listed, only then can tags missing from the listing be treated as removed
+     * @param eTag String the ETag validator of the listing
+     * @param lastModified String the Last-Modified validator of the listing
+     * @return TagDelta the tags which changed, empty if nothing did
+     */
+    public synchronized TagDelta apply(final Collection<TagRecord> fetched, final boolean complete, final String eTag, final String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+
+        final List<TagRecord> added = new ArrayList<>();
+        final List<TagRecord> repushed = new ArrayList<>();
+        final List<TagRecord> removed = new ArrayList<>();
+        final Set<String> listed = complete ? new HashSet<>(fetched.size() * 2) : null;
+
+        for(TagRecord record : fetched) {
+            if(listed != null) listed.add(record.getName());
+            final TagRecord previous = byName.put(record.getName(), record);
+            if(previous == null) {
+                added.add(record);
+                sorted.merge(record.getVersion(), 1, Integer::sum);
+            } else if(!previous.isSamePush(record)) {
+                repushed.add(record);
+            }
+        }
+
+        if(complete && byName.size() > listed.size()) {
+            final Iterator<TagRecord> iterator = byName.values().iterator();
+            while(iterator.hasNext()) {
+                final TagRecord record = iterator.next();
+                if(!listed.contains(record.getName())) {
+                    iterator.remove();
+                    sorted.computeIfPresent(record.getVersion(), (version, tags) -> tags == 1 ? null : tags - 1);
+                    removed.add(record);
+                }
+            }
+        }
+
+        if(added.isEmpty() && removed.isEmpty() && repushed.isEmpty()) return TagDelta.empty(revision);
+
+        if(!added.isEmpty() || !removed.isEmpty()) versions = Collections.unmodifiableList(new ArrayList<>(sorted.keySet()));
+        final TagDelta delta = new TagDelta(revision + 1, false, added, removed, repushed);
+        deltas.addLast(delta);
+        while(deltas.size() > maxDeltas) deltas.removeFirst();
+        revision = delta.getRevision();
+        return delta;
+    }
+
+    /**
+     * Replaces the contents of the index with stored tags. The change log starts out empty so only readers at
+     * the restored revision get incremental deltas, everyone else gets a reset.
+     * @param records Collection of stored tags
+     * @param revision long the revision the tags were stored at
+     * @param eTag String the stored ETag validator
+     * @param lastModified String the stored Last-Modified validator
+     */
+    public synchronized void restore(final Collection<TagRecord> records, final long revision, final String eTag, final String lastModified) {
+        byName.clear();
+        sorted.clear();
+        deltas.clear();
+        for(TagRecord record : records) {
+            byName.put(record.getName(), record);
+            sorted.merge(record.getVersion(), 1, Integer::sum);
+        }
+        versions = Collections.unmodifiableList(new ArrayList<>(sorted.keySet()));
+        this.revision = revision;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns every change made to the index after a revision merged into a single delta
+     * @param since long the revision the reader last saw, negative if it has never read this index
+     * @return TagDelta the net changes since that revision
+     */
+    public synchronized TagDelta changesSince(final long since) {
+        if(since == revision) return TagDelta.empty(revision);
+
+        if(since < 0 || deltas.isEmpty() || deltas.peekFirst().getRevision() > since + 1) {
+            return new TagDelta(revision, true, new ArrayList<>(byName.values()), Collections.emptyList(), Collections.emptyList());
+        }
+
+        final Map<String, TagRecord> added = new LinkedHashMap<>();
+        final Map<String, TagRecord> removed = new LinkedHashMap<>();
+        final Map<String, TagRecord> repushed = new LinkedHashMap<>();
+        for(TagDelta delta : deltas) {
+            if(delta.getRevision() <= since) continue;
+            for(TagRecord record : delta.getAdded()) {
+                if(removed.remove(record.getName()) != null) repushed.put(record.getName(), record);
+                else added.put(record.getName(), record);
+            }
+            for(TagRecord record : delta.getRemoved()) {
+                repushed.remove(record.getName());
+                if(added.remove(record.getName()) == null) removed.put(record.getName(), record);
+            }
+            for(TagRecord record : delta.getRepushed()) {
+                if(added.containsKey(record.getName())) added.put(record.getName(), record);
+                else repushed.put(record.getName(), record);
+            }
+        }
+        return new TagDelta(revision, false, added.values(), removed.values(), repushed.values());
+    }
+
+    /**
+     * Returns true if a listed tag is already in the index unchanged and is not newer than the newest known version
+     * @param record TagRecord a tag from a registry listing
+     * @return Boolean true if the tag and every tag pushed before it are already known
+     */
+    public synchronized boolean isKnown(final TagRecord record) {
+        final TagRecord previous = byName.get(record.getName());
+        return previous != null && previous.isSamePush(record) && !sorted.isEmpty() && record.getVersion().compareTo(sorted.lastKey()) <= 0;
+    }
+
+    /**
+     * @return List of every known version sorted by semantic version
+     */
+    public synchronized List<Version> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @param name String tag name
+     * @return TagRecord the record for a tag or null if it is not known
+     */
+    public synchronized TagRecord get(final String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Returns when the most recently pushed tags were pushed, tags without a last updated time are skipped
+     * @param limit int the most push times to return
+     * @return List of epoch millis, newest first
+     */
+    public synchronized List<Long> getPushTimes(final int limit) {
+        final List<Long> times = new ArrayList<>(byName.size());
+        for(TagRecord record : byName.values()) {
+            final long pushedAt = record.getPushedAt();
+            if(pushedAt > 0) times.add(pushedAt);
+        }
+        times.sort(Collections.reverseOrder());
+        return new ArrayList<>(times.subList(0, Math.min(limit, times.size())));
+    }
+
+    public synchronized boolean isEmpty() {
+        return byName.isEmpty();
+    }
+}
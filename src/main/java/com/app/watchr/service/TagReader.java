@@ -0,0 +1,59 @@
+package com.app.watchr.service;
+
+import com.app.watchr.model.Tag;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads a single page of a docker hub tag listing straight off of the response stream. Each entry
+ * in the "results" array is bound to a Tag and handed to the consumer as soon as it is parsed so the
+ * full page is never held in memory as a String or JSON tree.
+ */
+@Slf4j
+public class TagReader {
+
+    private final ObjectMapper mapper;
+    private final ObjectReader tagReader;
+
+    public TagReader(final ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.tagReader = mapper.readerFor(Tag.class);
+    }
+
+    /**
+     * Reads one page of tags
+     * @param inputStream InputStream the response body of a tag listing request
+     * @param consumer Consumer called once for every tag on the page in the order they are listed
+     * @return String the URL of the next page or null if this is the last page
+     * @throws IOException Thrown when the body is not a valid tag listing
+     */
+    public String read(final InputStream inputStream, final Consumer<Tag> consumer) throws IOException {
+        String next = null;
+        try(JsonParser parser = mapper.getFactory().createParser(inputStream)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Expected tag listing to start with an object but found: " + parser.currentToken());
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if("next".equals(field)) {
+                    next = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                } else if("results".equals(field) && value == JsonToken.START_ARRAY) {
+                    while(parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(tagReader.readValue(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return next;
+    }
+}
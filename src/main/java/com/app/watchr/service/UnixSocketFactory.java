@@ -0,0 +1,38 @@
+package com.app.watchr.service;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Connection socket factory which ignores the requested host and always connects to a
+ * unix domain socket such as /var/run/docker.sock.
+ */
+public class UnixSocketFactory implements ConnectionSocketFactory {
+
+    private final File socketFile;
+
+    public UnixSocketFactory(final File socketFile) {
+        this.socketFile = socketFile;
+    }
+
+    @Override
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return AFUNIXSocket.newInstance();
+    }
+
+    @Override
+    public Socket connectSocket(final int connectTimeout, final Socket socket, final HttpHost host, final InetSocketAddress remoteAddress,
+                                final InetSocketAddress localAddress, final HttpContext context) throws IOException {
+        final Socket sock = socket != null ? socket : createSocket(context);
+        sock.connect(AFUNIXSocketAddress.of(socketFile), connectTimeout);
+        return sock;
+    }
+}
@@ -0,0 +1,70 @@
+package com.watchr.app;
+
+import com.app.watchr.service.CommandException;
+import com.app.watchr.service.CommandService;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CommandServiceTest {
+
+	private final CommandService commandService = new CommandService();
+
+	private static List<String> sh(final String script) {
+		return Arrays.asList("sh", "-c", script);
+	}
+
+	@Test
+	void itShouldDrainBothStreamsOfAChattyCommand() {
+		// Far more than a pipe buffer on standard error before anything is written to standard output
+		String output = commandService.exec(sh("i=0; while [ $i -lt 20000 ]; do echo progress-line-$i >&2; i=$((i+1)); done; echo done"));
+		Assert.assertEquals("done", output.trim());
+	}
+
+	@Test
+	void itShouldFailOnANonZeroExitCode() {
+		try {
+			commandService.exec(sh("echo 'No such container: web' >&2; exit 3"));
+			Assert.fail("Expected the command to fail");
+		} catch(CommandException e) {
+			Assert.assertEquals(3, e.getExitCode());
+			Assert.assertTrue(e.getStderr().contains("No such container: web"));
+		}
+	}
+
+	@Test
+	void itShouldSucceedWithOutputOnStandardError() {
+		Assert.assertEquals("ok", commandService.exec(sh("echo deprecated >&2; echo ok")).trim());
+	}
+
+	@Test
+	void itShouldKillACommandPastItsDeadline() {
+		long start = System.currentTimeMillis();
+		try {
+			commandService.exec(sh("exec sleep 30"), 1);
+			Assert.fail("Expected the command to time out");
+		} catch(CommandException e) {
+			Assert.assertTrue(e.isTimedOut());
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+	@Test
+	void itShouldBoundTheOutputItKeeps() {
+		ReflectionTestUtils.setField(commandService, "outputLimit", 10);
+		Assert.assertEquals("0123456789", commandService.exec(sh("printf 0123456789abcdef")));
+	}
+
+	@Test
+	void itShouldFailACommandWhichCannotStart() {
+		try {
+			commandService.exec(Arrays.asList("watchr-no-such-command"));
+			Assert.fail("Expected the command to fail");
+		} catch(CommandException e) {
+			Assert.assertEquals(CommandException.NOT_STARTED, e.getExitCode());
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.watchr.app;
+
+import com.app.watchr.model.ContainerEvent;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.service.ContainerIndex;
+import com.app.watchr.service.DockerEngineClient;
+import com.app.watchr.service.DockerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Follows a stubbed docker event stream, which stays open until the test ends
+ */
+public class ContainerIndexTest {
+
+	private final DockerEngineClient engineClient = mock(DockerEngineClient.class);
+	private final DockerService dockerService = mock(DockerService.class);
+	private final CountDownLatch delivered = new CountDownLatch(1);
+	private final CountDownLatch closed = new CountDownLatch(1);
+	private ContainerIndex index;
+
+	private ContainerIndex index(boolean available) {
+		when(engineClient.isAvailable()).thenReturn(available);
+		index = new ContainerIndex();
+		ReflectionTestUtils.setField(index, "engineClient", engineClient);
+		ReflectionTestUtils.setField(index, "dockerService", dockerService);
+		ReflectionTestUtils.setField(index, "retryDelay", 0L);
+		index.init();
+		return index;
+	}
+
+	@AfterEach
+	void stop() {
+		closed.countDown();
+		if(index != null) index.shutdown();
+	}
+
+	private static ContainerMetaData metaData(String id, String name) throws IOException {
+		return new ObjectMapper().readValue("{\"Id\": \"" + id + "\", \"Name\": \"/" + name + "\", \"Image\": \"sha256:1\"}", ContainerMetaData.class);
+	}
+
+	private static ContainerEvent event(String action, String id) {
+		ContainerEvent.Actor actor = new ContainerEvent.Actor();
+		actor.setId(id);
+		actor.setAttributes(Collections.singletonMap("name", id));
+		ContainerEvent event = new ContainerEvent();
+		event.setType("container");
+		event.setAction(action);
+		event.setActor(actor);
+		return event;
+	}
+
+	/**
+	 * Hands the events to the index and keeps the stream open until the test ends
+	 */
+	@SuppressWarnings("unchecked")
+	private void stream(ContainerEvent... events) {
+		doAnswer(invocation -> {
+			Consumer<ContainerEvent> consumer = invocation.getArgument(1);
+			for(ContainerEvent event : events) consumer.accept(event);
+			delivered.countDown();
+			closed.await();
+			return null;
+		}).when(engineClient).streamEvents(anyLong(), any(Consumer.class));
+	}
+
+	@Test
+	void itShouldMapNamesToIdsAndMetaData() throws Exception {
+		when(engineClient.listContainerIds()).thenReturn(Arrays.asList("a", "b"));
+		when(engineClient.inspectContainer("a")).thenReturn(metaData("a", "web"));
+		when(engineClient.inspectContainer("b")).thenReturn(metaData("b", "db"));
+		stream();
+		index(true);
+		Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+		Assert.assertEquals("a", index.getContainerId("web"));
+		Assert.assertEquals("b", index.getContainerId("db"));
+		Assert.assertEquals("web", index.getMetaData("web").getContainerName());
+		Assert.assertEquals("b", index.getMetaData("db").getId());
+		Assert.assertNull(index.getContainerId("cache"));
+		verify(dockerService, never()).getContainerId(any());
+	}
+
+	@Test
+	void itShouldFollowDestroyAndRenameEvents() throws Exception {
+		when(engineClient.listContainerIds()).thenReturn(Arrays.asList("a", "b", "c"));
+		when(engineClient.inspectContainer("a")).thenReturn(metaData("a", "web_next"), metaData("a", "web"));
+		when(engineClient.inspectContainer("b")).thenReturn(metaData("b", "web"));
+		when(engineClient.inspectContainer("c")).thenReturn(metaData("c", "db"))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+		stream(event("destroy", "b"), event("rename", "a"), event("exec_start", "a"), event("die", "c"));
+		index(true);
+		Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+		// The rename re-keys "a" from its previous name, the destroyed "b" no longer holds "web"
+		Assert.assertEquals("a", index.getContainerId("web"));
+		Assert.assertEquals("a", index.getMetaData("web").getId());
+		Assert.assertNull(index.getContainerId("web_next"));
+		// A container which is gone by the time it's inspected is dropped
+		Assert.assertNull(index.getContainerId("db"));
+		verify(engineClient, times(2)).inspectContainer("a");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void itShouldResyncWhenTheStreamDrops() throws Exception {
+		when(engineClient.listContainerIds()).thenReturn(Collections.singletonList("a"), Arrays.asList("a", "b"));
+		when(engineClient.inspectContainer("a")).thenReturn(metaData("a", "web"));
+		when(engineClient.inspectContainer("b")).thenReturn(metaData("b", "db"));
+		doAnswer(invocation -> null).doAnswer(invocation -> {
+			delivered.countDown();
+			closed.await();
+			return null;
+		}).when(engineClient).streamEvents(anyLong(), any(Consumer.class));
+		index(true);
+		Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+		// "b" was created while the stream was down and is picked up by the re-sync
+		Assert.assertEquals("b", index.getContainerId("db"));
+		verify(engineClient, times(2)).listContainerIds();
+	}
+
+	@Test
+	void itShouldInspectContainersWhenNotSubscribed() throws Exception {
+		when(dockerService.getContainerId("web")).thenReturn("a");
+		when(dockerService.getMetaData("a")).thenReturn(metaData("a", "web"));
+		index(false);
+
+		Assert.assertEquals("a", index.getContainerId("web"));
+		Assert.assertEquals("web", index.getMetaData("web").getContainerName());
+		Assert.assertNull(index.getMetaData("db"));
+		verify(engineClient, never()).listContainerIds();
+	}
+}
@@ -0,0 +1,177 @@
+package com.watchr.app;
+
+import com.app.watchr.model.ContainerEvent;
+import com.app.watchr.service.DockerEngineClient;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXServerSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DockerEngineClientTest {
+
+	private File socketFile;
+	private AFUNIXServerSocket server;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void startFakeDaemon() throws IOException {
+		socketFile = new File(Files.createTempDirectory("watchr").toFile(), "docker.sock");
+		server = AFUNIXServerSocket.newInstance();
+		server.bind(AFUNIXSocketAddress.of(socketFile));
+
+		Thread acceptor = new Thread(() -> {
+			while(!server.isClosed()) {
+				try {
+					Socket socket = server.accept();
+					connections.incrementAndGet();
+					Thread handler = new Thread(() -> handle(socket));
+					handler.setDaemon(true);
+					handler.start();
+				} catch(IOException e) {
+					return;
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	@AfterEach
+	void stopFakeDaemon() throws IOException {
+		server.close();
+		socketFile.delete();
+	}
+
+	/**
+	 * Minimal keep-alive HTTP/1.1 responder which mimics the few engine endpoints Watchr uses
+	 */
+	private void handle(final Socket socket) {
+		try(Socket s = socket) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			OutputStream out = s.getOutputStream();
+			String requestLine;
+			while((requestLine = reader.readLine()) != null) {
+				String line;
+				while((line = reader.readLine()) != null && !line.isEmpty()) {
+					// Ignore headers, none of the requests Watchr sends have a body
+				}
+				requests.add(requestLine);
+
+				if(requestLine.startsWith("GET /containers/inventory_mgmt/json")) {
+					write(out, "200 OK", "{\"Id\": \"abc123\", \"Name\": \"/inventory_mgmt\", \"Config\": {\"Env\": [\"A=B\"]}}", false);
+				} else if(requestLine.startsWith("POST /images/create")) {
+					write(out, "200 OK", "{\"status\": \"Pulling from foo/bar\"}\r\n{\"errorDetail\": {\"message\": \"denied\"}, \"error\": \"denied\"}\r\n", true);
+				} else if(requestLine.startsWith("GET /events")) {
+					write(out, "200 OK", "{\"Type\": \"container\", \"Action\": \"start\", \"Actor\": {\"ID\": \"abc123\", \"Attributes\": {\"name\": \"inventory_mgmt\"}}, \"time\": 1}\n" +
+							"{\"Type\": \"container\", \"Action\": \"destroy\", \"Actor\": {\"ID\": \"def456\"}, \"time\": 2}\n", true);
+				} else if(requestLine.startsWith("POST /containers/inventory_mgmt/stop")) {
+					write(out, "204 No Content", null, false);
+				} else if(requestLine.startsWith("GET /containers/hung/json")) {
+					// Hold the connection open without ever answering
+					Thread.sleep(30000);
+					return;
+				} else if(requestLine.startsWith("POST /containers/slow/stop")) {
+					Thread.sleep(2000);
+					write(out, "204 No Content", null, false);
+				} else {
+					write(out, "404 Not Found", "{\"message\": \"No such container\"}", false);
+				}
+			}
+		} catch(IOException | InterruptedException e) {
+			// Client hung up
+		}
+	}
+
+	private void write(final OutputStream out, final String status, final String body, final boolean chunked) throws IOException {
+		StringBuilder response = new StringBuilder("HTTP/1.1 ").append(status).append("\r\nContent-Type: application/json\r\n");
+		if(body == null) {
+			response.append("\r\n");
+		} else if(chunked) {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			response.append("Transfer-Encoding: chunked\r\n\r\n")
+					.append(Integer.toHexString(bytes.length)).append("\r\n").append(body).append("\r\n0\r\n\r\n");
+		} else {
+			response.append("Content-Length: ").append(body.getBytes(StandardCharsets.UTF_8).length).append("\r\n\r\n").append(body);
+		}
+		out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	@Test
+	void itShouldReadTheContainerIdAndReuseTheConnection() {
+		DockerEngineClient client = new DockerEngineClient("unix://" + socketFile.getAbsolutePath(), 2);
+
+		Assert.assertTrue(client.isAvailable());
+		Assert.assertEquals("abc123", client.getContainerId("inventory_mgmt"));
+		Assert.assertEquals("A=B", client.inspectContainer("inventory_mgmt").getConfig().getEnv().get(0));
+		client.stopContainer("inventory_mgmt", 10);
+
+		Assert.assertEquals(3, requests.size());
+		Assert.assertEquals("POST /containers/inventory_mgmt/stop?t=10 HTTP/1.1", requests.get(2));
+		Assert.assertEquals(1, connections.get());
+	}
+
+	@Test
+	void itShouldFailAPullWhenTheDaemonStreamsAnError() {
+		DockerEngineClient client = new DockerEngineClient("unix://" + socketFile.getAbsolutePath(), 2);
+
+		try {
+			client.pullImage("foo/bar", "1.0.0");
+			Assert.fail("Expected the pull to fail");
+		} catch(RuntimeException e) {
+			Assert.assertTrue(e.getMessage().contains("denied"));
+		}
+	}
+
+	@Test
+	void itShouldStreamEveryContainerEvent() {
+		DockerEngineClient client = new DockerEngineClient("unix://" + socketFile.getAbsolutePath(), 2);
+
+		List<ContainerEvent> events = new ArrayList<>();
+		client.streamEvents(0, events::add);
+
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals("start", events.get(0).getAction());
+		Assert.assertEquals("inventory_mgmt", events.get(0).getActor().getAttributes().get("name"));
+		Assert.assertEquals("def456", events.get(1).getActor().getId());
+		Assert.assertTrue(requests.get(0).contains("filters="));
+	}
+
+	@Test
+	void itShouldGiveUpOnAHungDaemonButWaitForAStop() {
+		DockerEngineClient client = new DockerEngineClient("unix://" + socketFile.getAbsolutePath(), 2, 1, 600);
+
+		long start = System.currentTimeMillis();
+		try {
+			client.inspectContainer("hung");
+			Assert.fail("Expected the request to time out");
+		} catch(RuntimeException e) {
+			long took = System.currentTimeMillis() - start;
+			Assert.assertTrue("Gave up after " + took + "ms", took >= 900 && took < 10000);
+		}
+
+		// The stop takes longer than the read timeout but the container's stop timeout plus a grace period applies
+		client.stopContainer("slow", 0);
+	}
+
+	@Test
+	void itShouldNotBeAvailableWhenTheSocketDoesNotExist() {
+		Assert.assertFalse(new DockerEngineClient("unix:///does/not/exist.sock", 2).isAvailable());
+	}
+}
@@ -0,0 +1,128 @@
+package com.watchr.app;
+
+import com.app.watchr.Version;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPage;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.RegistryBackend;
+import com.app.watchr.service.StateStore;
+import com.app.watchr.service.TagIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerServiceTest {
+
+	private final List<CompletableFuture<TagPage>> fetches = new ArrayList<>();
+	private final List<TagIndex> cachedIndexes = new ArrayList<>();
+	private StateStore stateStore;
+	private DockerService dockerService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		RegistryBackend backend = mock(RegistryBackend.class);
+		when(backend.supports(anyString())).thenReturn(true);
+		when(backend.fetchTags(eq("app"), any(), any(), any())).thenAnswer(invocation -> {
+			Tag tag = new Tag();
+			tag.setName("1." + fetches.size() + ".0");
+			((Consumer<Tag>) invocation.getArguments()[3]).accept(tag);
+			CompletableFuture<TagPage> page = new CompletableFuture<>();
+			fetches.add(page);
+			return page;
+		});
+
+		// The first listing of "cached" reads a tag, after which the registry reports it as not modified
+		AtomicInteger listings = new AtomicInteger();
+		when(backend.fetchTags(eq("cached"), any(), any(), any())).thenAnswer(invocation -> {
+			cachedIndexes.add((TagIndex) invocation.getArguments()[2]);
+			if(listings.getAndIncrement() > 0) return CompletableFuture.completedFuture(new TagPage(true, null, "\"v1\"", null));
+			Tag tag = new Tag();
+			tag.setName("1.0.0");
+			((Consumer<Tag>) invocation.getArguments()[3]).accept(tag);
+			return CompletableFuture.completedFuture(new TagPage(false, null, "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT"));
+		});
+
+		stateStore = mock(StateStore.class);
+		when(stateStore.restoreIndex(anyString(), anyInt())).thenAnswer(invocation -> new TagIndex(64));
+
+		dockerService = new DockerService();
+		ReflectionTestUtils.setField(dockerService, "registryBackends", Collections.singletonList(backend));
+		ReflectionTestUtils.setField(dockerService, "stateStore", stateStore);
+		ReflectionTestUtils.setField(dockerService, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(dockerService, "maxDeltas", 64);
+		ReflectionTestUtils.setField(dockerService, "cacheTtl", 60L);
+	}
+
+	@Test
+	void itShouldShareOneFetchBetweenWatchesOfAnImage() {
+		CompletableFuture<TagIndex> first = dockerService.refreshTagsAsync("app");
+		CompletableFuture<TagIndex> second = dockerService.refreshTagsAsync("app");
+		Assert.assertEquals(1, fetches.size());
+
+		fetches.get(0).complete(new TagPage(false, null, null, null));
+		Assert.assertSame(first.join(), second.join());
+		Assert.assertSame(first.join().getVersions(), dockerService.refreshTagsAsync("app").join().getVersions());
+		Assert.assertEquals(1, fetches.size());
+
+		// A push webhook skips the rest of the freshness window
+		dockerService.expireTags("app");
+		dockerService.refreshTagsAsync("app");
+		Assert.assertEquals(2, fetches.size());
+	}
+
+	@Test
+	void itShouldNotShareAFailedFetch() {
+		CompletableFuture<TagIndex> first = dockerService.refreshTagsAsync("app");
+		fetches.get(0).completeExceptionally(new IllegalStateException("registry down"));
+		try {
+			first.join();
+			Assert.fail("Expected the refresh to fail");
+		} catch(CompletionException e) {
+			Assert.assertEquals("registry down", e.getCause().getMessage());
+		}
+
+		dockerService.refreshTagsAsync("app");
+		Assert.assertEquals(2, fetches.size());
+	}
+
+	@Test
+	void itShouldLeaveTheIndexUntouchedWhenTheTagsAreNotModified() {
+		TagIndex index = dockerService.refreshTagsAsync("cached").join();
+		long revision = index.getRevision();
+		List<Version> versions = index.getVersions();
+		Assert.assertEquals(1, versions.size());
+
+		dockerService.expireTags("cached");
+		Assert.assertSame(index, dockerService.refreshTagsAsync("cached").join());
+
+		// The repeat listing is sent the validators of the first one
+		Assert.assertEquals(2, cachedIndexes.size());
+		Assert.assertEquals("\"v1\"", cachedIndexes.get(1).getETag());
+		Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", cachedIndexes.get(1).getLastModified());
+
+		// Nothing was parsed, merged, re-sorted or stored
+		Assert.assertEquals(revision, index.getRevision());
+		Assert.assertSame(versions, index.getVersions());
+		verify(stateStore, times(1)).appendTags(eq("cached"), any(), any(), any());
+	}
+}
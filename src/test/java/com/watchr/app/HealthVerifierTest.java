@@ -0,0 +1,67 @@
+package com.watchr.app;
+
+import com.app.watchr.HealthVerifier;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.service.DockerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HealthVerifierTest {
+
+	private HttpServer server;
+	private volatile int status = 200;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/health", exchange -> {
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	private HealthVerifier verifier() throws IOException {
+		ContainerMetaData metaData = new ObjectMapper().readValue("{\"Id\": \"abc\", \"Name\": \"/web\"," +
+				"\"State\": {\"Status\": \"running\", \"Running\": true}," +
+				"\"NetworkSettings\": {\"Ports\": {\"8080/tcp\": [{\"HostIp\": \"0.0.0.0\", \"HostPort\": \"" + server.getAddress().getPort() + "\"}], \"9090/tcp\": null}}}", ContainerMetaData.class);
+		DockerService dockerService = mock(DockerService.class);
+		when(dockerService.getMetaData("web")).thenReturn(metaData);
+
+		HealthVerifier verifier = new HealthVerifier();
+		ReflectionTestUtils.setField(verifier, "dockerService", dockerService);
+		ReflectionTestUtils.setField(verifier, "healthTimeout", 2L);
+		ReflectionTestUtils.setField(verifier, "healthInterval", 1L);
+		ReflectionTestUtils.setField(verifier, "healthGrace", 0L);
+		ReflectionTestUtils.setField(verifier, "probeHost", "localhost");
+		return verifier;
+	}
+
+	@Test
+	void itShouldProbeTheBoundHostPort() throws IOException {
+		Assert.assertTrue(verifier().waitUntilHealthy("web", "/health", 8080));
+	}
+
+	@Test
+	void itShouldFailWhenTheProbeNeverSucceeds() throws IOException {
+		status = 503;
+		Assert.assertFalse(verifier().waitUntilHealthy("web", "/health", 8080));
+		Assert.assertFalse(verifier().waitUntilHealthy("web", "/health", 9090));
+	}
+}
@@ -0,0 +1,116 @@
+package com.watchr.app;
+
+import com.app.watchr.ImageCollector;
+import com.app.watchr.UpdateOrchestrator;
+import com.app.watchr.Version;
+import com.app.watchr.WatchRegistry;
+import com.app.watchr.model.LocalImage;
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.TagIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImageCollectorTest {
+
+	private final DockerService dockerService = mock(DockerService.class);
+	private final ImageCollector collector = new ImageCollector();
+
+	private static LocalImage image(final String id, final long size, final String... repoTags) {
+		LocalImage image = new LocalImage();
+		image.setId(id);
+		image.setSize(size);
+		image.setRepoTags(new ArrayList<>(Arrays.asList(repoTags)));
+		return image;
+	}
+
+	@BeforeEach
+	void setUp() {
+		WatchRegistry watchRegistry = new WatchRegistry();
+		watchRegistry.register(new Watch("app", "team/app", UpdatePolicy.AUTO)).setCurrentVersion(Version.of("1.1.0"));
+
+		List<LocalImage> images = Arrays.asList(
+				image("sha256:6", 600, "team/app:1.5.0", "team/app:latest"),
+				image("sha256:4", 400, "team/app:1.4.0"),
+				image("sha256:3", 300, "team/app:1.3.0"),
+				image("sha256:2", 200, "team/app:1.2.0"),
+				image("sha256:1", 100, "team/app:1.1.0"),
+				image("sha256:0", 50, "team/app:1.0.0"),
+				image("sha256:9", 900, "team/app:0.9.0"));
+		when(dockerService.listImages("team/app")).thenReturn(images);
+		when(dockerService.getPlatform()).thenReturn(Platform.parse("linux/amd64"));
+
+		TagIndex index = new TagIndex(64);
+		index.apply(Collections.singletonList(new TagRecord("1.2.0", Version.of("1.2.0"), "sha256:r2", null, Collections.emptyList(), 2048)),
+				true, null, null);
+		when(dockerService.getTagIndex("team/app")).thenReturn(index);
+
+		ReflectionTestUtils.setField(collector, "dockerService", dockerService);
+		ReflectionTestUtils.setField(collector, "watchRegistry", watchRegistry);
+		ReflectionTestUtils.setField(collector, "updateOrchestrator", mock(UpdateOrchestrator.class));
+		ReflectionTestUtils.setField(collector, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(collector, "keep", 2);
+		ReflectionTestUtils.setField(collector, "batchSize", 2);
+	}
+
+	@Test
+	void itShouldRemoveTheOldestVersionsBeyondTheKeptOnes() {
+		// 0.9.0 is still used by a stopped container
+		doThrow(new IllegalStateException("conflict: image is being used")).when(dockerService).removeImage("team/app:0.9.0");
+
+		// 1.0.0 is sized by the daemon and 1.2.0 by the registry
+		Assert.assertEquals(50 + 2048, collector.collect());
+		verify(dockerService).removeImage("team/app:1.0.0");
+		verify(dockerService).removeImage("team/app:1.2.0");
+
+		// 1.5.0 which is also tagged "latest", the two newest versions and the version the watch runs are kept
+		verify(dockerService, never()).removeImage("team/app:1.5.0");
+		verify(dockerService, never()).removeImage("team/app:1.4.0");
+		verify(dockerService, never()).removeImage("team/app:1.3.0");
+		verify(dockerService, never()).removeImage("team/app:1.1.0");
+	}
+
+	@Test
+	void itShouldOnlyRunWithinItsWindow() {
+		Assert.assertTrue(collector.isInWindow(LocalTime.NOON));
+
+		ReflectionTestUtils.setField(collector, "enabled", false);
+		ReflectionTestUtils.setField(collector, "window", "22:00-04:00");
+		collector.init();
+		Assert.assertTrue(collector.isInWindow(LocalTime.of(23, 30)));
+		Assert.assertTrue(collector.isInWindow(LocalTime.of(1, 0)));
+		Assert.assertFalse(collector.isInWindow(LocalTime.NOON));
+	}
+
+	@Test
+	void itShouldRejectAMalformedWindowAtStartup() {
+		ReflectionTestUtils.setField(collector, "enabled", false);
+		for(String window : Arrays.asList("02:00", "02:00-25:00", "late-early", "02:00-02:00")) {
+			ReflectionTestUtils.setField(collector, "window", window);
+			try {
+				collector.init();
+				Assert.fail("Expected gc.window " + window + " to be rejected");
+			} catch(IllegalArgumentException e) {
+				Assert.assertTrue(e.getMessage().contains("gc.window"));
+			}
+		}
+	}
+}
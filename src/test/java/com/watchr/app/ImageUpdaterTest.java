@@ -1,15 +1,32 @@
 package com.watchr.app;
 
+import com.app.watchr.HealthVerifier;
 import com.app.watchr.ImageUpdater;
+import com.app.watchr.RunCommandBuilder;
 import com.app.watchr.Version;
+import com.app.watchr.model.ContainerMetaData;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
+import com.app.watchr.service.CommandService;
+import com.app.watchr.service.ContainerIndex;
 import com.app.watchr.service.DockerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ImageUpdaterTest {
@@ -83,4 +100,130 @@ public class ImageUpdaterTest {
 		Assert.assertFalse(imageUpdater.shouldUpdate(currentImages, latestImages));
 	}
 
+	@Test
+	void itShouldRollBackWhenTheNewVersionIsNotHealthy() throws Exception {
+		ContainerMetaData previous = new ObjectMapper().readValue("{\"Id\": \"abc\", \"Name\": \"/web\", \"Image\": \"sha256:1\"," +
+				"\"Config\": {\"Image\": \"foo:1.0.0\"}}", ContainerMetaData.class);
+		Watch watch = new Watch("web", "foo", UpdatePolicy.AUTO);
+
+		ContainerIndex containerIndex = mock(ContainerIndex.class);
+		when(containerIndex.getMetaData("web")).thenReturn(previous);
+		DockerService dockerService = mock(DockerService.class);
+		when(dockerService.getContainerId("web")).thenReturn("def");
+		HealthVerifier healthVerifier = mock(HealthVerifier.class);
+		when(healthVerifier.waitUntilHealthy("web", watch)).thenReturn(false, true);
+		CommandService commandService = mock(CommandService.class);
+
+		ImageUpdater imageUpdater = new ImageUpdater();
+		ReflectionTestUtils.setField(imageUpdater, "dockerService", dockerService);
+		ReflectionTestUtils.setField(imageUpdater, "commandService", commandService);
+		ReflectionTestUtils.setField(imageUpdater, "containerIndex", containerIndex);
+		ReflectionTestUtils.setField(imageUpdater, "runCommandBuilder", new RunCommandBuilder());
+		ReflectionTestUtils.setField(imageUpdater, "healthVerifier", healthVerifier);
+
+		Assert.assertFalse(imageUpdater.updateContainer(watch, new Version("1.1.0"), false));
+		verify(commandService).exec(Arrays.asList("docker", "run", "-d", "--name", "web", "foo:1.1.0"));
+		verify(commandService).exec(Arrays.asList("docker", "run", "-d", "--name", "web", "foo:1.0.0"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void itShouldSwapAContainerBackOntoItsOriginalHostPorts() throws Exception {
+		ContainerMetaData previous = new ObjectMapper().readValue("{\"Id\": \"abc\", \"Name\": \"/web\", \"Image\": \"sha256:1\"," +
+				"\"Config\": {\"Image\": \"foo:1.0.0\"}, \"HostConfig\": {\"PortBindings\": {\"80/tcp\": [{\"HostIp\": \"\", \"HostPort\": \"8080\"}]}}}",
+				ContainerMetaData.class);
+		Watch watch = new Watch("web", "foo", UpdatePolicy.AUTO);
+		watch.setPortOffset(10);
+
+		ContainerIndex containerIndex = mock(ContainerIndex.class);
+		when(containerIndex.getMetaData("web")).thenReturn(previous);
+		HealthVerifier healthVerifier = mock(HealthVerifier.class);
+		when(healthVerifier.waitUntilHealthy("web_next", watch)).thenReturn(true);
+		when(healthVerifier.waitUntilHealthy("web", watch)).thenReturn(true);
+		DockerService dockerService = mock(DockerService.class);
+		CommandService commandService = mock(CommandService.class);
+
+		ImageUpdater imageUpdater = new ImageUpdater();
+		ReflectionTestUtils.setField(imageUpdater, "dockerService", dockerService);
+		ReflectionTestUtils.setField(imageUpdater, "commandService", commandService);
+		ReflectionTestUtils.setField(imageUpdater, "containerIndex", containerIndex);
+		ReflectionTestUtils.setField(imageUpdater, "runCommandBuilder", new RunCommandBuilder());
+		ReflectionTestUtils.setField(imageUpdater, "healthVerifier", healthVerifier);
+
+		Assert.assertTrue(imageUpdater.swapContainer(watch, new Version("1.1.0"), false));
+
+		ArgumentCaptor<List> commands = ArgumentCaptor.forClass(List.class);
+		verify(commandService, times(2)).exec(commands.capture());
+		Assert.assertEquals(Arrays.asList("docker", "run", "-d", "--name", "web_next", "-p", "8090:80/tcp", "foo:1.1.0"), commands.getAllValues().get(0));
+		// The container that is left is the new version on the ports it was published on before the update
+		Assert.assertEquals(Arrays.asList("docker", "run", "-d", "--name", "web", "-p", "8080:80/tcp", "foo:1.1.0"), commands.getAllValues().get(1));
+		verify(dockerService).removeContainer("web");
+		verify(dockerService).removeContainer("web_next");
+		verify(dockerService, never()).renameContainer("web_next", "web");
+	}
+
+	@Test
+	void itShouldKeepTheShiftedContainerWhenItFailsOnTheOriginalHostPorts() throws Exception {
+		ContainerMetaData previous = new ObjectMapper().readValue("{\"Id\": \"abc\", \"Name\": \"/web\", \"Image\": \"sha256:1\"," +
+				"\"Config\": {\"Image\": \"foo:1.0.0\"}, \"HostConfig\": {\"PortBindings\": {\"80/tcp\": [{\"HostIp\": \"\", \"HostPort\": \"8080\"}]}}}",
+				ContainerMetaData.class);
+		Watch watch = new Watch("web", "foo", UpdatePolicy.AUTO);
+		watch.setRollback(false);
+
+		ContainerIndex containerIndex = mock(ContainerIndex.class);
+		when(containerIndex.getMetaData("web")).thenReturn(previous);
+		HealthVerifier healthVerifier = mock(HealthVerifier.class);
+		when(healthVerifier.waitUntilHealthy("web_next", watch)).thenReturn(true);
+		when(healthVerifier.waitUntilHealthy("web", watch)).thenReturn(false);
+		DockerService dockerService = mock(DockerService.class);
+		// The failed container on the original ports exists until it's removed
+		when(dockerService.getContainerId("web")).thenReturn("def", (String) null);
+
+		ImageUpdater imageUpdater = new ImageUpdater();
+		ReflectionTestUtils.setField(imageUpdater, "dockerService", dockerService);
+		ReflectionTestUtils.setField(imageUpdater, "commandService", mock(CommandService.class));
+		ReflectionTestUtils.setField(imageUpdater, "containerIndex", containerIndex);
+		ReflectionTestUtils.setField(imageUpdater, "runCommandBuilder", new RunCommandBuilder());
+		ReflectionTestUtils.setField(imageUpdater, "healthVerifier", healthVerifier);
+
+		Assert.assertFalse(imageUpdater.swapContainer(watch, new Version("1.1.0"), false));
+
+		// The old container and the failed one are removed, the healthy shifted copy is all that is left running
+		verify(dockerService, times(2)).removeContainer("web");
+		verify(dockerService, never()).stopContainer("web_next");
+		verify(dockerService, never()).removeContainer("web_next");
+		verify(dockerService).renameContainer("web_next", "web");
+	}
+
+	@Test
+	void itShouldDrainTheOldContainerWhileThePullRunsAndRestartItWhenThePullFails() throws Exception {
+		ContainerMetaData previous = new ObjectMapper().readValue("{\"Id\": \"abc\", \"Name\": \"/web\", \"Image\": \"sha256:1\"," +
+				"\"Config\": {\"Image\": \"foo:1.0.0\", \"StopTimeout\": 30}}", ContainerMetaData.class);
+		Watch watch = new Watch("web", "foo", UpdatePolicy.AUTO);
+		watch.setStopSignal("SIGQUIT");
+
+		ContainerIndex containerIndex = mock(ContainerIndex.class);
+		when(containerIndex.getMetaData("web")).thenReturn(previous);
+		DockerService dockerService = mock(DockerService.class);
+		CommandService commandService = mock(CommandService.class);
+
+		ImageUpdater imageUpdater = new ImageUpdater();
+		ReflectionTestUtils.setField(imageUpdater, "dockerService", dockerService);
+		ReflectionTestUtils.setField(imageUpdater, "commandService", commandService);
+		ReflectionTestUtils.setField(imageUpdater, "containerIndex", containerIndex);
+
+		CompletableFuture<Boolean> pulled = new CompletableFuture<>();
+		doAnswer(invocation -> {
+			// The container is stopped before the pull has finished
+			Assert.assertFalse(pulled.isDone());
+			pulled.complete(false);
+			return null;
+		}).when(dockerService).stopContainer("web", 30, "SIGQUIT");
+
+		Assert.assertFalse(imageUpdater.updateContainer(watch, new Version("1.1.0"), pulled));
+		verify(dockerService).stopContainer("web", 30, "SIGQUIT");
+		verify(dockerService).startContainer("web");
+		verify(dockerService, never()).removeContainer("web");
+		verify(commandService, never()).exec(anyList());
+	}
 }
@@ -0,0 +1,51 @@
+package com.watchr.app;
+
+import com.app.watchr.service.EmbeddedServer;
+import com.app.watchr.service.MetricsEndpoint;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsEndpointTest {
+
+	@Test
+	void itShouldServeMetricsInThePrometheusFormat() throws Exception {
+		EmbeddedServer server = new EmbeddedServer();
+		ReflectionTestUtils.setField(server, "enabled", true);
+		ReflectionTestUtils.setField(server, "port", 0);
+		ReflectionTestUtils.setField(server, "threads", 1);
+		server.start();
+
+		PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		registry.timer("watchr.registry.fetch", "image", "nginx", "status", "304").record(15, TimeUnit.MILLISECONDS);
+
+		MetricsEndpoint endpoint = new MetricsEndpoint();
+		ReflectionTestUtils.setField(endpoint, "embeddedServer", server);
+		ReflectionTestUtils.setField(endpoint, "registry", registry);
+		endpoint.init();
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + MetricsEndpoint.PATH).openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try(InputStream in = connection.getInputStream()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while((read = in.read(buffer)) != -1) body.write(buffer, 0, read);
+			}
+			Assert.assertTrue(body.toString(StandardCharsets.UTF_8.name()).contains("watchr_registry_fetch_seconds_count{image=\"nginx\",status=\"304\",} 1.0"));
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.watchr.app;
+
+import com.app.watchr.config.RegistryProperties;
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPage;
+import com.app.watchr.service.OciRegistryBackend;
+import com.app.watchr.service.RegistryBackend;
+import com.app.watchr.service.RegistryClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lists tags from a stub registry which requires a bearer token and pages its tag list two tags at a time
+ */
+public class OciRegistryBackendTest {
+
+	private HttpServer server;
+	private RegistryClient client;
+	private OciRegistryBackend backend;
+	private String host;
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private final AtomicInteger challenges = new AtomicInteger();
+	private final AtomicReference<String> tokenAuthorization = new AtomicReference<>();
+	private RegistryProperties registryProperties;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		host = "localhost:" + server.getAddress().getPort();
+		server.createContext("/token", exchange -> {
+			tokenRequests.incrementAndGet();
+			tokenAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+			Assert.assertEquals("scope=repository%3Ateam%2Fapp%3Apull&service=stub", exchange.getRequestURI().getRawQuery());
+			respond(exchange, 200, "{\"token\": \"t1\", \"expires_in\": 300}");
+		});
+		server.createContext("/v2/team/app/", exchange -> {
+			if(!"Bearer t1".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+				challenges.incrementAndGet();
+				exchange.getResponseHeaders().add("WWW-Authenticate",
+						"Bearer realm=\"http://" + host + "/token\",service=\"stub\",scope=\"repository:team/app:pull\"");
+				respond(exchange, 401, "");
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			if(path.equals("/v2/team/app/manifests/1.2.0") && "GET".equals(exchange.getRequestMethod())) {
+				respond(exchange, 200, "{\"manifests\": [{\"platform\": {\"os\": \"linux\", \"architecture\": \"amd64\"}}," +
+						"{\"platform\": {\"os\": \"unknown\", \"architecture\": \"unknown\"}}]}");
+			} else if(path.equals("/v2/team/app/manifests/1.1.0") && "GET".equals(exchange.getRequestMethod())) {
+				respond(exchange, 200, "{\"config\": {\"digest\": \"sha256:config\"}}");
+			} else if(path.equals("/v2/team/app/blobs/sha256:config")) {
+				respond(exchange, 200, "{\"os\": \"linux\", \"architecture\": \"arm64\", \"variant\": \"v8\"}");
+			} else if(path.startsWith("/v2/team/app/manifests/")) {
+				Assert.assertEquals("HEAD", exchange.getRequestMethod());
+				exchange.getResponseHeaders().add("Docker-Content-Digest", "sha256:" + path.substring(path.lastIndexOf('/') + 1));
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			} else if(exchange.getRequestURI().getQuery().contains("last=1.1.0")) {
+				respond(exchange, 200, "{\"name\": \"team/app\", \"tags\": [\"1.2.0\", \"latest\"]}");
+			} else {
+				exchange.getResponseHeaders().add("Link", "</v2/team/app/tags/list?n=2&last=1.1.0>; rel=\"next\"");
+				respond(exchange, 200, "{\"name\": \"team/app\", \"tags\": [\"1.0.0\", \"1.1.0\"]}");
+			}
+		});
+		server.start();
+
+		client = new RegistryClient();
+		ReflectionTestUtils.setField(client, "maxConnections", 4);
+		ReflectionTestUtils.setField(client, "connectTimeout", 1L);
+		ReflectionTestUtils.setField(client, "socketTimeout", 5L);
+		ReflectionTestUtils.setField(client, "requestDeadline", 5L);
+		ReflectionTestUtils.setField(client, "keepAlive", 5L);
+		ReflectionTestUtils.setField(client, "threads", 1);
+		client.start();
+
+		backend = new OciRegistryBackend();
+		ReflectionTestUtils.setField(backend, "registryClient", client);
+		ReflectionTestUtils.setField(backend, "pageSize", 2);
+		ReflectionTestUtils.setField(backend, "digestTags", 2);
+		ReflectionTestUtils.setField(backend, "insecure", "registry.example.com, " + host);
+		registryProperties = new RegistryProperties();
+		ReflectionTestUtils.setField(backend, "registryProperties", registryProperties);
+		ReflectionTestUtils.setField(backend, "defaultTokenLifetime", 60L);
+	}
+
+	@AfterEach
+	void stop() {
+		client.stop();
+		server.stop(0);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@Test
+	void itShouldFollowLinksAndResolveTheNewestDigests() throws Exception {
+		List<Tag> tags = new ArrayList<>();
+		TagPage page = backend.fetchTags(host + "/team/app", null, null, tags::add).get();
+		Assert.assertNull(page.getNext());
+		Assert.assertEquals(4, tags.size());
+		Assert.assertEquals("1.0.0", tags.get(0).getName());
+		Assert.assertNull(tags.get(0).getDigest());
+		Assert.assertEquals("sha256:1.1.0", tags.get(1).getDigest());
+		Assert.assertEquals("sha256:1.2.0", tags.get(2).getDigest());
+		Assert.assertNull(tags.get(3).getDigest());
+	}
+
+	@Test
+	void itShouldReuseTheCachedToken() throws Exception {
+		backend.fetchTags(host + "/team/app", null, null, tag -> {}).get();
+		backend.fetchTags(host + "/team/app", null, null, tag -> {}).get();
+		Assert.assertEquals("sha256:1.2.0", backend.getDigest(host + "/team/app", "1.2.0").get());
+		Assert.assertEquals(1, challenges.get());
+		Assert.assertEquals(1, tokenRequests.get());
+	}
+
+	@Test
+	void itShouldOnlySendCredentialsToTheirOwnHost() throws Exception {
+		RegistryProperties.Credentials other = new RegistryProperties.Credentials();
+		other.setUsername("other");
+		other.setPassword("secret");
+		registryProperties.getCredentials().put("registry.example.com", other);
+		backend.fetchTags(host + "/team/app", null, null, tag -> {}).get();
+		Assert.assertEquals(1, tokenRequests.get());
+		Assert.assertNull(tokenAuthorization.get());
+	}
+
+	@Test
+	void itShouldSendTheHostsOwnCredentialsToItsRealm() throws Exception {
+		RegistryProperties.Credentials own = new RegistryProperties.Credentials();
+		own.setUsername("user");
+		own.setPassword("pass");
+		registryProperties.getCredentials().put(host.toUpperCase(), own);
+		backend.fetchTags(host + "/team/app", null, null, tag -> {}).get();
+		Assert.assertEquals(1, tokenRequests.get());
+		Assert.assertEquals("Basic dXNlcjpwYXNz", tokenAuthorization.get());
+	}
+
+	@Test
+	void itShouldReadPlatformsFromTheImageIndexOrTheImageConfig() throws Exception {
+		List<Platform> index = backend.fetchPlatforms(host + "/team/app", "1.2.0").get();
+		Assert.assertEquals(2, index.size());
+		Assert.assertTrue(Platform.parse("linux/amd64").matches(index.get(0)));
+		Assert.assertFalse(Platform.parse("linux/arm64").matches(index.get(0)));
+
+		List<Platform> single = backend.fetchPlatforms(host + "/team/app", "1.1.0").get();
+		Assert.assertEquals(Collections.singletonList(Platform.parse("linux/arm64/v8")), single);
+	}
+
+	@Test
+	void itShouldPickTheBackendByRegistryHost() {
+		Assert.assertNull(RegistryBackend.registryHost("nginx"));
+		Assert.assertNull(RegistryBackend.registryHost("cbartram/inventory_management"));
+		Assert.assertNull(RegistryBackend.registryHost("docker.io/library/nginx"));
+		Assert.assertEquals("localhost:5000", RegistryBackend.registryHost("localhost:5000/team/app"));
+		Assert.assertEquals("ghcr.io", RegistryBackend.registryHost("ghcr.io/team/app"));
+	}
+}
@@ -0,0 +1,94 @@
+package com.watchr.app;
+
+import com.app.watchr.ImageUpdater;
+import com.app.watchr.TagFilter;
+import com.app.watchr.Version;
+import com.app.watchr.model.DockerImage;
+import com.app.watchr.model.Platform;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagPolicy;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.PlatformResolver;
+import com.app.watchr.service.RegistryBackend;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PlatformTest {
+
+	private DockerImage image(final String architecture, final String variant, final String digest) {
+		DockerImage image = new DockerImage();
+		image.setOs("linux");
+		image.setArchitecture(architecture);
+		image.setVariant(variant);
+		image.setDigest(digest);
+		return image;
+	}
+
+	@Test
+	void itShouldNormalizeMachineArchitectures() {
+		Assert.assertEquals("linux/amd64", Platform.of("linux", "x86_64").toString());
+		Assert.assertEquals("linux/arm64/v8", Platform.of("linux", "aarch64").toString());
+		Assert.assertEquals("linux/arm/v7", Platform.of("linux", "armv7l").toString());
+		Assert.assertEquals(Platform.of("linux", "armv7l"), Platform.parse("linux/arm/v7"));
+	}
+
+	@Test
+	void itShouldMatchRunningDigestsForThePlatform() {
+		TagRecord record = new TagRecord("1.4", Version.of("1.4"), "sha256:list", null,
+				Arrays.asList(image("amd64", null, "sha256:amd"), image("arm", "v6", "sha256:armv6"), image("arm", "v7", "sha256:armv7")));
+		Platform arm = Platform.parse("linux/arm/v7");
+
+		Assert.assertEquals("sha256:armv7", record.getDigest(arm));
+		Assert.assertTrue(record.matchesAny(Collections.singletonList("sha256:list"), arm));
+		Assert.assertTrue(record.matchesAny(Collections.singletonList("sha256:armv7"), arm));
+		Assert.assertFalse(record.matchesAny(Collections.singletonList("sha256:amd"), arm));
+		Assert.assertFalse(record.matchesAny(Collections.emptyList(), arm));
+	}
+
+	@Test
+	void itShouldUpdateToTheNewestVersionWithAnImageForThePlatform() {
+		DockerService dockerService = mock(DockerService.class);
+		when(dockerService.getPlatform()).thenReturn(Platform.parse("linux/arm64"));
+		PlatformResolver resolver = new PlatformResolver();
+		ReflectionTestUtils.setField(resolver, "dockerService", dockerService);
+
+		TagRecord amdOnly = new TagRecord("1.2.0", Version.of("1.2.0"), "sha256:list2", null, Collections.singletonList(image("amd64", null, "sha256:a2")));
+		TagRecord both = new TagRecord("1.1.0", Version.of("1.1.0"), "sha256:list1", null,
+				Arrays.asList(image("amd64", null, "sha256:a1"), image("arm64", "v8", "sha256:b1")));
+		TagDelta delta = new TagDelta(2, false, Arrays.asList(amdOnly, both), Collections.emptyList(), Collections.emptyList());
+
+		TagRecord update = new ImageUpdater().findUpdate(Version.of("1.0.0"), delta, new TagFilter(new TagPolicy()),
+				record -> resolver.isAvailable("app", record));
+		Assert.assertEquals("1.1.0", update.getName());
+	}
+
+	@Test
+	void itShouldCacheManifestLookupsUntilTheTagIsRepushed() {
+		RegistryBackend backend = mock(RegistryBackend.class);
+		when(backend.fetchPlatforms("ghcr.io/team/app", "1.2.0"))
+				.thenReturn(CompletableFuture.completedFuture(Collections.singletonList(Platform.parse("linux/amd64"))));
+		DockerService dockerService = mock(DockerService.class);
+		when(dockerService.getPlatform()).thenReturn(Platform.parse("linux/arm64"));
+		when(dockerService.getBackend("ghcr.io/team/app")).thenReturn(backend);
+		PlatformResolver resolver = new PlatformResolver();
+		ReflectionTestUtils.setField(resolver, "dockerService", dockerService);
+
+		Assert.assertFalse(resolver.isAvailable("ghcr.io/team/app", new TagRecord("1.2.0", Version.of("1.2.0"), "sha256:1", null)));
+		Assert.assertFalse(resolver.isAvailable("ghcr.io/team/app", new TagRecord("1.2.0", Version.of("1.2.0"), "sha256:1", null)));
+		verify(backend, times(1)).fetchPlatforms("ghcr.io/team/app", "1.2.0");
+
+		Assert.assertFalse(resolver.isAvailable("ghcr.io/team/app", new TagRecord("1.2.0", Version.of("1.2.0"), "sha256:2", null)));
+		verify(backend, times(2)).fetchPlatforms("ghcr.io/team/app", "1.2.0");
+	}
+}
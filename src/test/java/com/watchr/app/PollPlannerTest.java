@@ -0,0 +1,144 @@
+package com.watchr.app;
+
+import com.app.watchr.PollPlanner;
+import com.app.watchr.Version;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.RegistryClient;
+import com.app.watchr.service.RegistryException;
+import com.app.watchr.service.TagIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PollPlannerTest {
+
+	private final DockerService dockerService = mock(DockerService.class);
+	private final RegistryClient registryClient = mock(RegistryClient.class);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private PollPlanner planner(long budget) {
+		PollPlanner planner = new PollPlanner();
+		ReflectionTestUtils.setField(planner, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(planner, "dockerService", dockerService);
+		ReflectionTestUtils.setField(planner, "registryClient", registryClient);
+		ReflectionTestUtils.setField(planner, "pollingDelay", 60L);
+		ReflectionTestUtils.setField(planner, "adaptive", true);
+		ReflectionTestUtils.setField(planner, "minDelay", 30L);
+		ReflectionTestUtils.setField(planner, "maxDelay", 3600L);
+		ReflectionTestUtils.setField(planner, "pollsPerPublish", 10);
+		ReflectionTestUtils.setField(planner, "cadenceSamples", 20);
+		ReflectionTestUtils.setField(planner, "budget", budget);
+		return planner;
+	}
+
+	/**
+	 * Builds an index for an image with a release pushed every interval, the newest one sinceLast ago
+	 */
+	private void publish(String imageName, long interval, long sinceLast) {
+		List<TagRecord> records = new ArrayList<>();
+		long newest = System.currentTimeMillis() - sinceLast;
+		for(int i = 0; i < 10; i++) {
+			String name = "1." + i + ".0";
+			records.add(new TagRecord(name, Version.parse(name), "sha256:" + i, Instant.ofEpochMilli(newest - (9 - i) * interval).toString()));
+		}
+		TagIndex index = new TagIndex(8);
+		index.apply(records, true, null, null);
+		when(dockerService.getTagIndex(imageName)).thenReturn(index);
+	}
+
+	private WatchState watch(String container, String image) {
+		Watch watch = new Watch();
+		watch.setContainerName(container);
+		watch.setImageName(image);
+		return new WatchState(watch);
+	}
+
+	@Test
+	void itShouldPollHotImagesMoreOftenThanDormantOnes() {
+		publish("hot", TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(10));
+		publish("dormant", TimeUnit.DAYS.toMillis(30), TimeUnit.DAYS.toMillis(200));
+		PollPlanner planner = planner(0);
+
+		Assert.assertEquals(TimeUnit.MINUTES.toMillis(6), planner.nextDelay(watch("a", "hot"), null));
+		Assert.assertEquals(TimeUnit.HOURS.toMillis(1), planner.nextDelay(watch("b", "dormant"), null));
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(60), planner.nextDelay(watch("c", "unknown"), null));
+	}
+
+	@Test
+	void itShouldStretchDelaysToStayWithinTheBudget() {
+		for(String image : new String[] { "hot", "warm", "busy", "live" }) {
+			publish(image, TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		}
+		PollPlanner planner = planner(240);
+
+		// Two images at the 30s minimum want 240 requests an hour together
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), planner.nextDelay(watch("a", "hot"), null));
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), planner.nextDelay(watch("b", "warm"), null));
+		planner.nextDelay(watch("c", "busy"), null);
+		planner.nextDelay(watch("d", "live"), null);
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(60), planner.nextDelay(watch("a", "hot"), null));
+	}
+
+	@Test
+	void itShouldCountWatchesOfTheSameImageOnce() {
+		publish("hot", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		PollPlanner planner = planner(120);
+
+		// Replicas of one image share their registry requests, 120 an hour at the 30s minimum
+		for(String container : new String[] { "a", "b", "c", "d" }) {
+			Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), planner.nextDelay(watch(container, "hot"), null));
+		}
+	}
+
+	@Test
+	void itShouldDropWatchesWhichAreNoLongerPolled() throws InterruptedException {
+		publish("hot", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		publish("warm", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		PollPlanner planner = planner(120);
+		ReflectionTestUtils.setField(planner, "maxDelay", 0L);
+		ReflectionTestUtils.setField(planner, "minDelay", 0L);
+
+		planner.nextDelay(watch("a", "hot"), null);
+		Assert.assertNotNull(meterRegistry.find("watchr.poll.delay").tag("container", "a").gauge());
+		TimeUnit.MILLISECONDS.sleep(20);
+
+		// "a" is past its planned delay without being polled again so it no longer counts against the budget
+		planner.nextDelay(watch("b", "warm"), null);
+		Assert.assertNull(meterRegistry.find("watchr.poll.delay").tag("container", "a").gauge());
+		Assert.assertNotNull(meterRegistry.find("watchr.poll.delay").tag("container", "b").gauge());
+	}
+
+	@Test
+	void itShouldBackOffAfterFailuresAndRateLimits() {
+		publish("hot", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		PollPlanner planner = planner(0);
+		WatchState state = watch("a", "hot");
+
+		state.setFailures(3);
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(240), planner.nextDelay(state, new RuntimeException("failed")));
+
+		RegistryException limited = new RegistryException(URI.create("http://localhost"), 429, "Too Many Requests", TimeUnit.MINUTES.toMillis(30));
+		Assert.assertEquals(TimeUnit.MINUTES.toMillis(30), planner.nextDelay(state, limited));
+
+		when(registryClient.getBlockedUntil("hot")).thenReturn(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2));
+		Assert.assertTrue(planner.nextDelay(watch("b", "hot"), null) > TimeUnit.MINUTES.toMillis(119));
+
+		// A watch on another registry isn't held back by the limit
+		publish("ghcr.io/team/app", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(1));
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), planner.nextDelay(watch("c", "ghcr.io/team/app"), null));
+	}
+}
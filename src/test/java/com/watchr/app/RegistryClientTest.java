@@ -0,0 +1,183 @@
+package com.watchr.app;
+
+import com.app.watchr.model.Tag;
+import com.app.watchr.model.TagPage;
+import com.app.watchr.service.DockerHubBackend;
+import com.app.watchr.service.RegistryClient;
+import com.app.watchr.service.RegistryException;
+import com.app.watchr.service.TagIndex;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegistryClientTest {
+
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+	private HttpServer server;
+	private RegistryClient client;
+	private final AtomicInteger limitedRequests = new AtomicInteger();
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/tags", exchange -> {
+			if("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+					&& LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			byte[] body = "{\"count\": 2, \"next\": \"http://localhost/tags?page=2\", \"results\": [{\"name\": \"1.1.0\"}, {\"name\": \"1.0.0\"}]}"
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.createContext("/slow", exchange -> {
+			try {
+				Thread.sleep(3000);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.createContext("/limited", exchange -> {
+			limitedRequests.incrementAndGet();
+			exchange.getResponseHeaders().add("Retry-After", "120");
+			exchange.sendResponseHeaders(429, -1);
+			exchange.close();
+		});
+		server.createContext("/error", exchange -> {
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		client = new RegistryClient();
+		ReflectionTestUtils.setField(client, "maxConnections", 4);
+		ReflectionTestUtils.setField(client, "connectTimeout", 1L);
+		ReflectionTestUtils.setField(client, "socketTimeout", 5L);
+		ReflectionTestUtils.setField(client, "requestDeadline", 1L);
+		ReflectionTestUtils.setField(client, "keepAlive", 5L);
+		ReflectionTestUtils.setField(client, "threads", 1);
+		ReflectionTestUtils.setField(client, "rateLimitBackoff", 60L);
+		client.start();
+	}
+
+	@AfterEach
+	void stop() {
+		client.stop();
+		server.stop(0);
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	private CompletableFuture<Integer> get(String path) {
+		return client.execute("foo", new HttpGet(uri(path)), response -> response.getStatusLine().getStatusCode());
+	}
+
+	@Test
+	void itShouldStreamTagsAndMakeRepeatRequestsConditional() throws Exception {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		DockerHubBackend backend = new DockerHubBackend();
+		ReflectionTestUtils.setField(backend, "registryClient", client);
+		ReflectionTestUtils.setField(backend, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(backend, "dockerHubUrl", uri("").toString());
+		ReflectionTestUtils.setField(backend, "pageSize", 100);
+
+		List<String> names = new ArrayList<>();
+		TagPage page = backend.fetchTags("foo", uri("/tags").toString(), null, tag -> names.add(tag.getName())).get();
+		Assert.assertFalse(page.isNotModified());
+		Assert.assertEquals("\"v1\"", page.getETag());
+		Assert.assertEquals(LAST_MODIFIED, page.getLastModified());
+		Assert.assertEquals("http://localhost/tags?page=2", page.getNext());
+		Assert.assertEquals(2, names.size());
+		Assert.assertEquals("1.1.0", names.get(0));
+
+		TagIndex cached = new TagIndex(8);
+		cached.apply(Collections.emptyList(), true, page.getETag(), page.getLastModified());
+		List<Tag> unchanged = new ArrayList<>();
+		page = backend.fetchTags("foo", uri("/tags").toString(), cached, unchanged::add).get();
+		Assert.assertTrue(page.isNotModified());
+		Assert.assertTrue(unchanged.isEmpty());
+		// Only the first listing was parsed
+		Assert.assertEquals(1, meterRegistry.timer("watchr.registry.parse", "image", "foo").count());
+	}
+
+	@Test
+	void itShouldFailWithTheStatusOfAnUnexpectedResponse() throws InterruptedException {
+		try {
+			get("/error").get();
+			Assert.fail("Expected the request to fail");
+		} catch(ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RegistryException);
+			Assert.assertEquals(500, ((RegistryException) e.getCause()).getStatus());
+		}
+	}
+
+	@Test
+	void itShouldAbortRequestsPastTheirDeadline() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		try {
+			get("/slow").get();
+			Assert.fail("Expected the request to time out");
+		} catch(ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 2500);
+	}
+
+	@Test
+	void itShouldHoldBackRequestsWhileRateLimited() throws InterruptedException {
+		for(int i = 0; i < 2; i++) {
+			try {
+				get("/limited").get();
+				Assert.fail("Expected the request to be rate limited");
+			} catch(ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RegistryException);
+				Assert.assertEquals(429, ((RegistryException) e.getCause()).getStatus());
+				Assert.assertTrue(((RegistryException) e.getCause()).getRetryAfter() > 110_000);
+			}
+		}
+		Assert.assertEquals(1, limitedRequests.get());
+		Assert.assertTrue(client.getBlockedUntil("foo") > System.currentTimeMillis() + 110_000);
+
+		// Images on another registry aren't held back by Docker Hub's limit
+		String other = "localhost:" + server.getAddress().getPort() + "/team/app";
+		Assert.assertEquals(0, client.getBlockedUntil(other));
+		try {
+			client.execute(other, new HttpGet(uri("/limited")), response -> response.getStatusLine().getStatusCode()).get();
+			Assert.fail("Expected the request to be rate limited");
+		} catch(ExecutionException e) {
+			Assert.assertEquals(429, ((RegistryException) e.getCause()).getStatus());
+		}
+		Assert.assertEquals(2, limitedRequests.get());
+	}
+}
@@ -0,0 +1,84 @@
+package com.watchr.app;
+
+import com.app.watchr.RunCommandBuilder;
+import com.app.watchr.Version;
+import com.app.watchr.model.ContainerMetaData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RunCommandBuilderTest {
+
+	private static final String INSPECT = "{" +
+			"\"Id\": \"abc123\", \"Name\": \"/inventory_mgmt\", \"Image\": \"sha256:1\"," +
+			"\"Config\": {\"Image\": \"cbartram/inventory_management:1.0.2\", \"Env\": [\"PATH=/usr/bin\", \"GREETING=hello world\"], \"Labels\": {\"team\": \"inventory\"}}," +
+			"\"HostConfig\": {" +
+			"  \"PortBindings\": {\"80/tcp\": [{\"HostIp\": \"\", \"HostPort\": \"8080\"}, {\"HostIp\": \"127.0.0.1\", \"HostPort\": \"8081\"}], \"9090/udp\": [{\"HostIp\": \"\", \"HostPort\": \"\"}]}," +
+			"  \"RestartPolicy\": {\"Name\": \"on-failure\", \"MaximumRetryCount\": 3}," +
+			"  \"NetworkMode\": \"backend\"" +
+			"}," +
+			"\"Mounts\": [" +
+			"  {\"Type\": \"bind\", \"Source\": \"/srv/data\", \"Destination\": \"/data\", \"RW\": false}," +
+			"  {\"Type\": \"volume\", \"Name\": \"cache\", \"Source\": \"/var/lib/docker/volumes/cache/_data\", \"Destination\": \"/cache\", \"RW\": true}" +
+			"]," +
+			"\"NetworkSettings\": {\"Networks\": {\"backend\": {}, \"monitoring\": {}}}" +
+			"}";
+
+	private final RunCommandBuilder builder = new RunCommandBuilder();
+
+	@Test
+	void itShouldRebuildTheRunCommandFromTheContainerMetaData() throws Exception {
+		ContainerMetaData metaData = new ObjectMapper().readValue(INSPECT, ContainerMetaData.class);
+
+		List<String> command = builder.build("inventory_mgmt", "cbartram/inventory_management", new Version("1.0.3"), metaData);
+
+		Assert.assertEquals(Arrays.asList(
+				"docker", "run", "-d", "--name", "inventory_mgmt",
+				"--restart", "on-failure:3",
+				"--network", "backend",
+				"-p", "8080:80/tcp", "-p", "127.0.0.1:8081:80/tcp", "-p", "9090/udp",
+				"-v", "/srv/data:/data:ro", "-v", "cache:/cache",
+				"-e", "PATH=/usr/bin", "-e", "GREETING=hello world",
+				"--label", "team=inventory",
+				"cbartram/inventory_management:1.0.3"), command);
+		Assert.assertEquals(Arrays.asList("monitoring"), builder.getAdditionalNetworks(metaData));
+	}
+
+	@Test
+	void itShouldShiftFixedHostPortsByTheOffset() throws Exception {
+		ContainerMetaData metaData = new ObjectMapper().readValue(INSPECT, ContainerMetaData.class);
+
+		Assert.assertEquals(Arrays.asList("-p", "8090:80/tcp", "-p", "127.0.0.1:8091:80/tcp", "-p", "9090/udp"),
+				builder.getPorts(metaData, 10));
+	}
+
+	@Test
+	void itShouldNotCopyLabelsInheritedFromTheOldImage() throws Exception {
+		ContainerMetaData metaData = new ObjectMapper().readValue("{\"Id\": \"abc123\", \"Name\": \"/foo\", \"Config\": {\"Labels\": {" +
+				"\"team\": \"inventory\", \"maintainer\": \"ops\", \"org.opencontainers.image.version\": \"1.0.0\"}}}", ContainerMetaData.class);
+		Map<String, String> imageLabels = new HashMap<>();
+		imageLabels.put("org.opencontainers.image.version", "1.0.0");
+		imageLabels.put("maintainer", "dev");
+
+		// "maintainer" was overridden when the container was created so it's kept
+		Assert.assertEquals(Arrays.asList("--label", "team=inventory", "--label", "maintainer=ops"),
+				builder.getLabels(metaData, imageLabels));
+		// Without the image's labels at least the labels images describe themselves with are skipped
+		Assert.assertEquals(Arrays.asList("--label", "team=inventory", "--label", "maintainer=ops"),
+				builder.getLabels(metaData));
+	}
+
+	@Test
+	void itShouldHandleMissingSections() throws Exception {
+		ContainerMetaData metaData = new ObjectMapper().readValue("{\"Id\": \"abc123\", \"Name\": \"/foo\", \"Config\": {\"Env\": null}}", ContainerMetaData.class);
+
+		Assert.assertEquals(Arrays.asList("docker", "run", "-d", "--name", "foo", "foo/bar:1.0.0"),
+				builder.build("foo", "foo/bar", new Version("1.0.0"), metaData));
+		Assert.assertEquals("foo", metaData.getContainerName());
+	}
+}
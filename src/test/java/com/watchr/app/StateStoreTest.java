@@ -0,0 +1,113 @@
+package com.watchr.app;
+
+import com.app.watchr.Version;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.StateStore;
+import com.app.watchr.service.TagIndex;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StateStoreTest {
+
+	private TagRecord tag(final String name, final String digest) {
+		return new TagRecord(name, Version.of(name), digest, null);
+	}
+
+	private List<TagRecord> tags(final int count, final int push) {
+		List<TagRecord> tags = new ArrayList<>();
+		for(int i = 0; i < count; i++) tags.add(tag("1.0." + i, "sha256:" + i + "-" + push));
+		return tags;
+	}
+
+	@Test
+	void itShouldRestoreTagsAndWatchesAfterARestart() throws IOException {
+		Path directory = Files.createTempDirectory("watchr-state");
+		StateStore store = new StateStore(directory.toString(), 1 << 20);
+		TagIndex index = store.restoreIndex("app", 8);
+		store.appendTags("app", index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.1.0", "sha256:b")), true, "\"v1\"", null), "\"v1\"", null);
+		store.appendTags("app", index.apply(Arrays.asList(tag("1.1.0", "sha256:c"), tag("1.2.0", "sha256:d")), true, "\"v2\"", null), "\"v2\"", null);
+
+		WatchState state = new WatchState(new Watch("web", "app", null));
+		state.setCurrentVersion(Version.of("1.1.0"));
+		state.setRevision(index.getRevision());
+		store.saveWatch(state);
+		store.close();
+
+		StateStore restarted = new StateStore(directory.toString(), 1 << 20);
+		TagIndex restored = restarted.restoreIndex("app", 8);
+		Assert.assertEquals(index.getRevision(), restored.getRevision());
+		Assert.assertEquals("\"v2\"", restored.getETag());
+		Assert.assertEquals(Arrays.asList(Version.of("1.1.0"), Version.of("1.2.0")), restored.getVersions());
+		Assert.assertEquals("sha256:c", restored.get("1.1.0").getDigest());
+
+		WatchState restoredState = new WatchState(new Watch("web", "app", null));
+		Assert.assertTrue(restarted.restore(restoredState));
+		Assert.assertEquals(Version.of("1.1.0"), restoredState.getCurrentVersion());
+		Assert.assertTrue(restored.changesSince(restoredState.getRevision()).isEmpty());
+		Assert.assertFalse(restarted.restore(new WatchState(new Watch("web", "other", null))));
+		restarted.close();
+	}
+
+	@Test
+	void itShouldDiscardATornRecord() throws IOException {
+		Path directory = Files.createTempDirectory("watchr-state");
+		StateStore store = new StateStore(directory.toString(), 1 << 20);
+		TagIndex index = store.restoreIndex("app", 8);
+		store.appendTags("app", index.apply(Arrays.asList(tag("1.0.0", "sha256:a")), true, null, null), null, null);
+		store.appendTags("app", index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.1.0", "sha256:b")), true, null, null), null, null);
+		store.close();
+
+		// Corrupt the last byte of the second record as if the write was interrupted
+		Path file = directory.resolve("watchr.state");
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			long end = 8;
+			for(int i = 0; i < 2; i++) {
+				raf.seek(end);
+				end += 8 + raf.readInt();
+			}
+			raf.seek(end - 1);
+			int last = raf.read();
+			raf.seek(end - 1);
+			raf.write(last ^ 0xFF);
+		}
+
+		StateStore restarted = new StateStore(directory.toString(), 1 << 20);
+		Assert.assertEquals(Arrays.asList(Version.of("1.0.0")), restarted.restoreIndex("app", 8).getVersions());
+
+		// The torn record is overwritten by the next append
+		TagIndex restored = restarted.restoreIndex("app", 8);
+		TagDelta delta = restored.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.2.0", "sha256:c")), true, null, null);
+		restarted.appendTags("app", delta, null, null);
+		restarted.close();
+		Assert.assertEquals(Arrays.asList(Version.of("1.0.0"), Version.of("1.2.0")), new StateStore(directory.toString(), 1 << 20).restoreIndex("app", 8).getVersions());
+	}
+
+	@Test
+	void itShouldCompactTheLogIntoASnapshot() throws IOException {
+		Path directory = Files.createTempDirectory("watchr-state");
+		StateStore store = new StateStore(directory.toString(), 64 * 1024);
+		TagIndex index = store.restoreIndex("app", 8);
+		// Every tag is re-pushed 200 times, about 2MB of deltas which would outgrow the initial 1MB mapping without compaction
+		for(int push = 0; push < 200; push++) {
+			store.appendTags("app", index.apply(tags(300, push), true, null, null), null, null);
+		}
+		store.close();
+
+		Assert.assertTrue(Files.size(directory.resolve("watchr.state")) <= 1 << 20);
+		TagIndex restored = new StateStore(directory.toString(), 64 * 1024).restoreIndex("app", 8);
+		Assert.assertEquals(300, restored.getVersions().size());
+		Assert.assertEquals("sha256:7-199", restored.get("1.0.7").getDigest());
+		Assert.assertEquals(index.getRevision(), restored.getRevision());
+	}
+}
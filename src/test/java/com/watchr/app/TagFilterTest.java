@@ -0,0 +1,56 @@
+package com.watchr.app;
+
+import com.app.watchr.TagFilter;
+import com.app.watchr.Version;
+import com.app.watchr.model.TagPolicy;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TagFilterTest {
+
+	private List<Version> versions(final String... tags) {
+		List<Version> versions = new ArrayList<>();
+		for(String tag : tags) {
+			versions.add(Version.of(tag));
+		}
+		return versions;
+	}
+
+	@Test
+	void itShouldSkipPreReleasesByDefault() {
+		TagFilter filter = new TagFilter(new TagPolicy());
+
+		Assert.assertEquals(versions("1.0.0", "1.1.0"), filter.filter(versions("1.0.0", "1.1.0-rc.1", "1.1.0", "2.0.0-alpine")));
+	}
+
+	@Test
+	void itShouldPinTheMajorVersion() {
+		TagPolicy policy = new TagPolicy();
+		policy.setPinMajor(1);
+
+		Assert.assertEquals(versions("1.0.0", "1.9.0"), new TagFilter(policy).filter(versions("1.0.0", "1.9.0", "2.0.0")));
+	}
+
+	@Test
+	void itShouldOnlyKeepASuffixFamily() {
+		TagPolicy policy = new TagPolicy();
+		policy.setSuffix("alpine");
+
+		Assert.assertEquals(versions("1.0.0-alpine", "1.1.0-alpine3.18"),
+				new TagFilter(policy).filter(versions("1.0.0", "1.0.0-alpine", "1.1.0-alpine3.18", "1.1.0-slim")));
+	}
+
+	@Test
+	void itShouldApplyIncludeAndExcludePatterns() {
+		TagPolicy policy = new TagPolicy();
+		policy.setStableOnly(false);
+		policy.setInclude("^1\\.");
+		policy.setExclude("-beta");
+
+		Assert.assertEquals(versions("1.0.0", "1.1.0-rc.1"),
+				new TagFilter(policy).filter(versions("1.0.0", "1.1.0-beta.1", "1.1.0-rc.1", "2.0.0")));
+	}
+}
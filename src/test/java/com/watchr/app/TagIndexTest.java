@@ -0,0 +1,105 @@
+package com.watchr.app;
+
+import com.app.watchr.Version;
+import com.app.watchr.model.TagDelta;
+import com.app.watchr.model.TagRecord;
+import com.app.watchr.service.TagIndex;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+public class TagIndexTest {
+
+	private TagRecord tag(final String name, final String digest) {
+		return new TagRecord(name, Version.of(name), digest, null);
+	}
+
+	private String names(final Collection<TagRecord> records) {
+		return records.stream().map(TagRecord::getName).sorted().collect(Collectors.joining(","));
+	}
+
+	@Test
+	void itShouldReportAddedRemovedAndRepushedTags() {
+		TagIndex index = new TagIndex(8);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b"), tag("1.1.0", "sha256:c")), true, null, null);
+		long revision = index.getRevision();
+
+		// 1.0.1 is deleted and 1.1.0 re-pushed within the same interval, the tag count stays the same
+		TagDelta delta = index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.1.0", "sha256:d"), tag("1.2.0", "sha256:e")), true, null, null);
+
+		Assert.assertEquals(revision + 1, delta.getRevision());
+		Assert.assertEquals("1.2.0", names(delta.getAdded()));
+		Assert.assertEquals("1.0.1", names(delta.getRemoved()));
+		Assert.assertEquals("1.1.0", names(delta.getRepushed()));
+		Assert.assertEquals(Arrays.asList(Version.of("1.0.0"), Version.of("1.1.0"), Version.of("1.2.0")), index.getVersions());
+	}
+
+	@Test
+	void itShouldNotRemoveTagsMissingFromAPartialListing() {
+		TagIndex index = new TagIndex(8);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b")), true, null, null);
+
+		TagDelta delta = index.apply(Collections.singletonList(tag("1.0.2", "sha256:c")), false, null, null);
+
+		Assert.assertEquals("1.0.2", names(delta.getAdded()));
+		Assert.assertTrue(delta.getRemoved().isEmpty());
+		Assert.assertEquals(3, index.getVersions().size());
+	}
+
+	@Test
+	void itShouldMergeEveryChangeSinceARevision() {
+		TagIndex index = new TagIndex(8);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a")), true, null, null);
+		long revision = index.getRevision();
+
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b"), tag("1.0.2", "sha256:c")), true, null, null);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.2", "sha256:c")), true, null, null);
+
+		TagDelta delta = index.changesSince(revision);
+		Assert.assertEquals("1.0.2", names(delta.getAdded()));
+		Assert.assertTrue(delta.getRemoved().isEmpty());
+		Assert.assertTrue(index.changesSince(index.getRevision()).isEmpty());
+	}
+
+	@Test
+	void itShouldResetReadersThatFellTooFarBehind() {
+		TagIndex index = new TagIndex(1);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a")), true, null, null);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b")), true, null, null);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b"), tag("1.0.2", "sha256:c")), true, null, null);
+
+		TagDelta delta = index.changesSince(1);
+		Assert.assertTrue(delta.isReset());
+		Assert.assertEquals("1.0.0,1.0.1,1.0.2", names(delta.getAdded()));
+		Assert.assertTrue(index.changesSince(-1).isReset());
+	}
+
+	@Test
+	void itShouldKeepAVersionWhileAnAliasStillCarriesIt() {
+		TagIndex index = new TagIndex(8);
+		index.apply(Arrays.asList(tag("1.1.0", "sha256:a"), tag("1.2", "sha256:b"), tag("1.2.0", "sha256:b")), true, null, null);
+		Assert.assertEquals(Arrays.asList(Version.of("1.1.0"), Version.of("1.2.0")), index.getVersions());
+
+		TagDelta delta = index.apply(Arrays.asList(tag("1.1.0", "sha256:a"), tag("1.2.0", "sha256:b")), true, null, null);
+		Assert.assertEquals("1.2", names(delta.getRemoved()));
+		Assert.assertEquals(Arrays.asList(Version.of("1.1.0"), Version.of("1.2.0")), index.getVersions());
+		Assert.assertTrue(index.isKnown(tag("1.2.0", "sha256:b")));
+
+		index.apply(Collections.singletonList(tag("1.1.0", "sha256:a")), true, null, null);
+		Assert.assertEquals(Collections.singletonList(Version.of("1.1.0")), index.getVersions());
+	}
+
+	@Test
+	void itShouldKnowUnchangedTagsNoNewerThanTheMaxVersion() {
+		TagIndex index = new TagIndex(8);
+		index.apply(Arrays.asList(tag("1.0.0", "sha256:a"), tag("1.0.1", "sha256:b")), true, null, null);
+
+		Assert.assertTrue(index.isKnown(tag("1.0.0", "sha256:a")));
+		Assert.assertFalse(index.isKnown(tag("1.0.0", "sha256:z")));
+		Assert.assertFalse(index.isKnown(tag("1.0.2", "sha256:c")));
+	}
+}
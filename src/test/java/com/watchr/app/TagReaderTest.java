@@ -0,0 +1,43 @@
+package com.watchr.app;
+
+import com.app.watchr.model.Tag;
+import com.app.watchr.service.TagReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TagReaderTest {
+
+	private final TagReader tagReader = new TagReader(new ObjectMapper());
+
+	@Test
+	void itShouldStreamEveryTagAndReturnTheNextPage() throws Exception {
+		String page = "{\"count\": 3, \"next\": \"https://hub/v2/repositories/foo/bar/tags?page=2\", \"previous\": null, \"results\": [" +
+				"{\"name\": \"1.0.2\", \"full_size\": 10, \"images\": [{\"digest\": \"sha256:a\", \"architecture\": \"amd64\", \"os\": \"linux\"}]}," +
+				"{\"name\": \"1.0.1\", \"last_updated\": \"2020-01-01T00:00:00.000000Z\"}" +
+				"]}";
+
+		List<Tag> tags = new ArrayList<>();
+		String next = tagReader.read(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), tags::add);
+
+		Assert.assertEquals("https://hub/v2/repositories/foo/bar/tags?page=2", next);
+		Assert.assertEquals(2, tags.size());
+		Assert.assertEquals("1.0.2", tags.get(0).getName());
+		Assert.assertEquals("sha256:a", tags.get(0).getImages().get(0).getDigest());
+		Assert.assertEquals("2020-01-01T00:00:00.000000Z", tags.get(1).getLastUpdated());
+	}
+
+	@Test
+	void itShouldReturnNullWhenThereIsNoNextPage() throws Exception {
+		String page = "{\"results\": [{\"name\": \"2.0.0\"}], \"next\": null}";
+
+		List<Tag> tags = new ArrayList<>();
+		Assert.assertNull(tagReader.read(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), tags::add));
+		Assert.assertEquals(1, tags.size());
+	}
+}
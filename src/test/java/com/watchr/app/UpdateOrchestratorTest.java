@@ -0,0 +1,99 @@
+package com.watchr.app;
+
+import com.app.watchr.ImageUpdater;
+import com.app.watchr.UpdateOrchestrator;
+import com.app.watchr.Version;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.StateStore;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UpdateOrchestratorTest {
+
+	private final List<String> updated = Collections.synchronizedList(new ArrayList<>());
+
+	private UpdateOrchestrator orchestrator(final ImageUpdater imageUpdater) {
+		UpdateOrchestrator orchestrator = new UpdateOrchestrator();
+		ReflectionTestUtils.setField(orchestrator, "imageUpdater", imageUpdater);
+		ReflectionTestUtils.setField(orchestrator, "stateStore", mock(StateStore.class));
+		ReflectionTestUtils.setField(orchestrator, "maxConcurrent", 2);
+		ReflectionTestUtils.setField(orchestrator, "maxPulls", 1);
+		ReflectionTestUtils.setField(orchestrator, "canary", true);
+		ReflectionTestUtils.setField(orchestrator, "rolloutRetention", 30L);
+		orchestrator.init();
+		return orchestrator;
+	}
+
+	private ImageUpdater imageUpdater(final String failing) {
+		ImageUpdater imageUpdater = mock(ImageUpdater.class);
+		when(imageUpdater.pullImage(anyString(), any(Version.class))).thenReturn(true);
+		when(imageUpdater.updateContainer(any(Watch.class), any(Version.class), any(CompletableFuture.class))).thenAnswer(invocation -> {
+			Watch watch = (Watch) invocation.getArguments()[0];
+			Thread.sleep(20);
+			updated.add(watch.getContainerName());
+			return !watch.getContainerName().equals(failing);
+		});
+		return imageUpdater;
+	}
+
+	private WatchState state(final String containerName) {
+		return new WatchState(new Watch(containerName, "app", UpdatePolicy.AUTO));
+	}
+
+	@Test
+	void itShouldPullOnceAndUpdateTheCanaryFirst() {
+		ImageUpdater imageUpdater = imageUpdater(null);
+		UpdateOrchestrator orchestrator = orchestrator(imageUpdater);
+		Version version = Version.of("1.1.0");
+
+		List<WatchState> states = new ArrayList<>();
+		List<CompletableFuture<Boolean>> updates = new ArrayList<>();
+		for(int i = 0; i < 5; i++) {
+			WatchState state = state("web-" + i);
+			states.add(state);
+			updates.add(orchestrator.submit(state, version, 7));
+		}
+
+		for(CompletableFuture<Boolean> update : updates) Assert.assertTrue(update.join());
+		verify(imageUpdater, times(1)).pullImage("app", version);
+		Assert.assertEquals("web-0", updated.get(0));
+		Assert.assertEquals(5, updated.size());
+		for(WatchState state : states) {
+			Assert.assertEquals(version, state.getCurrentVersion());
+			Assert.assertEquals(7, state.getRevision());
+		}
+		orchestrator.shutdown();
+	}
+
+	@Test
+	void itShouldHaltTheRolloutWhenTheCanaryFails() {
+		UpdateOrchestrator orchestrator = orchestrator(imageUpdater("web-0"));
+		Version version = Version.of("1.1.0");
+
+		List<CompletableFuture<Boolean>> updates = new ArrayList<>();
+		for(int i = 0; i < 3; i++) updates.add(orchestrator.submit(state("web-" + i), version, 7));
+
+		for(CompletableFuture<Boolean> update : updates) Assert.assertFalse(update.join());
+		Assert.assertEquals(Collections.singletonList("web-0"), updated);
+
+		WatchState late = state("web-3");
+		Assert.assertFalse(orchestrator.submit(late, version, 7).join());
+		Assert.assertEquals(-1, late.getRevision());
+		orchestrator.shutdown();
+	}
+}
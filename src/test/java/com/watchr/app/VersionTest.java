@@ -0,0 +1,80 @@
+package com.watchr.app;
+
+import com.app.watchr.Version;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class VersionTest {
+
+	@Test
+	void itShouldCompareNumericComponents() {
+		Assert.assertTrue(new Version("1.0.10").compareTo(new Version("1.0.9")) > 0);
+		Assert.assertTrue(new Version("1.2").compareTo(new Version("1.10")) < 0);
+		Assert.assertTrue(new Version("2").compareTo(new Version("1.99.99")) > 0);
+		Assert.assertEquals(0, new Version("1.0").compareTo(new Version("1.0.0")));
+		Assert.assertEquals(1, new Version("1.0").compareTo(null));
+	}
+
+	@Test
+	void itShouldHaveAHashCodeConsistentWithEquals() {
+		Assert.assertEquals(new Version("1.0"), new Version("1.0.0"));
+		Assert.assertEquals(new Version("1.0").hashCode(), new Version("1.0.0").hashCode());
+
+		Set<Version> versions = new HashSet<>();
+		versions.add(new Version("1.2.0"));
+		versions.add(new Version("1.2"));
+		versions.add(new Version("1.2.1"));
+		Assert.assertEquals(2, versions.size());
+	}
+
+	@Test
+	void itShouldInternVersionsThatWereAlreadySeen() {
+		Assert.assertSame(Version.of("3.4.5"), Version.of("3.4.5"));
+		Assert.assertEquals("3.4.5", Version.of("3.4.5").getVersion());
+	}
+
+	@Test
+	void itShouldFollowSemVerPrecedence() {
+		String[] ordered = { "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0" };
+		for(int i = 0; i < ordered.length - 1; i++) {
+			Assert.assertTrue(ordered[i] + " < " + ordered[i + 1], new Version(ordered[i]).compareTo(new Version(ordered[i + 1])) < 0);
+			Assert.assertTrue(ordered[i + 1] + " > " + ordered[i], new Version(ordered[i + 1]).compareTo(new Version(ordered[i])) > 0);
+		}
+	}
+
+	@Test
+	void itShouldIgnoreBuildMetadataAndALeadingV() {
+		Version version = new Version("v2.0.0-alpine+build.5");
+
+		Assert.assertEquals(new Version("2.0.0-alpine"), version);
+		Assert.assertEquals(new Version("2.0.0-alpine").hashCode(), version.hashCode());
+		Assert.assertEquals("alpine", version.getPreRelease());
+		Assert.assertEquals("build.5", version.getBuild());
+		Assert.assertEquals(2, version.getMajor());
+		Assert.assertTrue(version.isPreRelease());
+	}
+
+	@Test
+	void itShouldReturnNullForTagsThatAreNotVersions() {
+		Assert.assertNull(Version.parse("latest"));
+		Assert.assertNull(Version.parse("1.0.0-"));
+		Assert.assertNull(Version.parse("1.0.0+"));
+		Assert.assertNull(Version.parse("1.0.0-rc..1"));
+		Assert.assertNotNull(Version.parse("1.2.3-rc1"));
+	}
+
+	@Test
+	void itShouldRejectInvalidVersions() {
+		for(String invalid : new String[] { "", ".", "1.", ".1", "1..2", "a.b", "99999999999", "latest" }) {
+			try {
+				new Version(invalid);
+				Assert.fail("Expected " + invalid + " to be rejected");
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
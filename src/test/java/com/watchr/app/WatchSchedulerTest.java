@@ -0,0 +1,111 @@
+package com.watchr.app;
+
+import com.app.watchr.PollPlanner;
+import com.app.watchr.WatchPoller;
+import com.app.watchr.WatchScheduler;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.StateStore;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the scheduler on a single poll thread so a poll holding the thread would stall every other watch
+ */
+public class WatchSchedulerTest {
+
+	private final WatchPoller watchPoller = mock(WatchPoller.class);
+	private final PollPlanner pollPlanner = mock(PollPlanner.class);
+	private WatchScheduler scheduler;
+
+	private WatchScheduler scheduler(long delay) {
+		when(pollPlanner.nextDelay(any(), any())).thenReturn(delay);
+		scheduler = new WatchScheduler();
+		ReflectionTestUtils.setField(scheduler, "watchPoller", watchPoller);
+		ReflectionTestUtils.setField(scheduler, "stateStore", mock(StateStore.class));
+		ReflectionTestUtils.setField(scheduler, "pollPlanner", pollPlanner);
+		ReflectionTestUtils.setField(scheduler, "pollingJitter", 0L);
+		ReflectionTestUtils.setField(scheduler, "pollingThreads", 1);
+		scheduler.init();
+		return scheduler;
+	}
+
+	@AfterEach
+	void stop() {
+		if(scheduler != null) scheduler.shutdown();
+	}
+
+	private static WatchState watch(String container) {
+		Watch watch = new Watch();
+		watch.setContainerName(container);
+		watch.setImageName("foo");
+		return new WatchState(watch);
+	}
+
+	private static boolean await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!condition.getAsBoolean()) {
+			if(System.currentTimeMillis() > deadline) return false;
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return true;
+	}
+
+	@Test
+	void itShouldKeepPollingOtherWatchesWhileOnePollIsSlow() throws Exception {
+		WatchState slow = watch("slow");
+		WatchState fast = watch("fast");
+		CompletableFuture<Void> pending = new CompletableFuture<>();
+		AtomicInteger fastPolls = new AtomicInteger();
+		when(watchPoller.poll(eq(slow), any())).thenReturn(pending);
+		when(watchPoller.poll(eq(fast), any())).thenAnswer(invocation -> {
+			fastPolls.incrementAndGet();
+			return CompletableFuture.completedFuture(null);
+		});
+		scheduler(10);
+
+		scheduler.start(slow);
+		scheduler.start(fast);
+		Assert.assertTrue(await(() -> fastPolls.get() >= 5));
+		Assert.assertTrue(slow.getInFlight().get());
+		Assert.assertFalse(pending.isDone());
+	}
+
+	@Test
+	void itShouldSkipAPollWhichIsStillInFlightAndRescheduleIt() throws Exception {
+		WatchState state = watch("web");
+		CompletableFuture<Void> pending = new CompletableFuture<>();
+		AtomicInteger polls = new AtomicInteger();
+		when(watchPoller.poll(eq(state), any())).thenAnswer(invocation ->
+				polls.incrementAndGet() == 1 ? pending : CompletableFuture.completedFuture(null));
+		scheduler(TimeUnit.HOURS.toMillis(1));
+
+		scheduler.start(state);
+		Assert.assertTrue(await(() -> polls.get() == 1));
+
+		// A second poll of the same watch is skipped while the first one is outstanding
+		scheduler.start(state);
+		scheduler.pollNow(state);
+		TimeUnit.MILLISECONDS.sleep(200);
+		Assert.assertEquals(1, polls.get());
+
+		// Once it completes the requested poll runs straight away instead of after the planned hour
+		pending.complete(null);
+		Assert.assertTrue(await(() -> polls.get() == 2));
+		Assert.assertTrue(await(() -> !state.getInFlight().get()));
+		TimeUnit.MILLISECONDS.sleep(200);
+		Assert.assertEquals(2, polls.get());
+	}
+}
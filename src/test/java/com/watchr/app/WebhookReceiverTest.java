@@ -0,0 +1,120 @@
+package com.watchr.app;
+
+import com.app.watchr.WatchRegistry;
+import com.app.watchr.WatchScheduler;
+import com.app.watchr.WebhookReceiver;
+import com.app.watchr.model.UpdatePolicy;
+import com.app.watchr.model.Watch;
+import com.app.watchr.model.WatchState;
+import com.app.watchr.service.DockerService;
+import com.app.watchr.service.EmbeddedServer;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class WebhookReceiverTest {
+
+	private static final String SECRET = "s3cret";
+
+	private EmbeddedServer server;
+	private WatchScheduler watchScheduler;
+	private WatchState nginx;
+	private WatchState app;
+	private WatchState privateApp;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new EmbeddedServer();
+		ReflectionTestUtils.setField(server, "enabled", true);
+		ReflectionTestUtils.setField(server, "port", 0);
+		ReflectionTestUtils.setField(server, "threads", 1);
+		server.start();
+
+		WatchRegistry watchRegistry = new WatchRegistry();
+		nginx = watchRegistry.register(new Watch("web", "library/nginx", UpdatePolicy.AUTO));
+		app = watchRegistry.register(new Watch("app", "cbartram/inventory_management", UpdatePolicy.AUTO));
+		privateApp = watchRegistry.register(new Watch("private-app", "registry.example.com:5000/cbartram/inventory_management", UpdatePolicy.AUTO));
+		watchScheduler = mock(WatchScheduler.class);
+
+		WebhookReceiver receiver = new WebhookReceiver();
+		ReflectionTestUtils.setField(receiver, "embeddedServer", server);
+		ReflectionTestUtils.setField(receiver, "watchRegistry", watchRegistry);
+		ReflectionTestUtils.setField(receiver, "watchScheduler", watchScheduler);
+		ReflectionTestUtils.setField(receiver, "dockerService", mock(DockerService.class));
+		ReflectionTestUtils.setField(receiver, "enabled", true);
+		ReflectionTestUtils.setField(receiver, "path", "/webhook");
+		ReflectionTestUtils.setField(receiver, "secret", SECRET);
+		receiver.init();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop();
+	}
+
+	private int post(String query, String signature, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/webhook" + query).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if(signature != null) connection.setRequestProperty("X-Hub-Signature-256", signature);
+		try(OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return connection.getResponseCode();
+	}
+
+	@Test
+	void itShouldPollTheWatchesOfAPushedImage() throws IOException {
+		String body = "{\"push_data\": {\"tag\": \"1.2.0\"}, \"repository\": {\"repo_name\": \"cbartram/inventory_management\"}}";
+		Assert.assertEquals(202, post("?token=" + SECRET, null, body));
+		verify(watchScheduler).pollNow(app);
+		verify(watchScheduler, never()).pollNow(nginx);
+		verify(watchScheduler, never()).pollNow(privateApp);
+	}
+
+	@Test
+	void itShouldMatchRegistryNotificationsByHost() throws IOException {
+		String body = "{\"events\": [{\"action\": \"push\", \"target\": {\"repository\": \"cbartram/inventory_management\", \"tag\": \"1.2.0\"}," +
+				"\"request\": {\"host\": \"registry.example.com:5000\"}}]}";
+		Assert.assertEquals(202, post("?token=" + SECRET, null, body));
+		verify(watchScheduler).pollNow(privateApp);
+		verify(watchScheduler, never()).pollNow(app);
+	}
+
+	@Test
+	void itShouldAcceptSignedRegistryNotifications() throws Exception {
+		String body = "{\"events\": [{\"action\": \"pull\", \"target\": {\"repository\": \"cbartram/inventory_management\"}}," +
+				"{\"action\": \"push\", \"target\": {\"repository\": \"nginx\", \"tag\": \"1.19.1\"}}]}";
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		StringBuilder hex = new StringBuilder("sha256=");
+		for(byte b : mac.doFinal(body.getBytes(StandardCharsets.UTF_8))) hex.append(String.format("%02x", b));
+
+		Assert.assertEquals(202, post("", hex.toString(), body));
+		verify(watchScheduler).pollNow(nginx);
+		verify(watchScheduler, never()).pollNow(app);
+	}
+
+	@Test
+	void itShouldRejectRequestsWithoutTheSecret() throws IOException {
+		String body = "{\"repository\": {\"repo_name\": \"cbartram/inventory_management\"}}";
+		Assert.assertEquals(401, post("?token=wrong", null, body));
+		Assert.assertEquals(401, post("", null, body));
+		Assert.assertEquals(401, post("", "sha256=00", body));
+		verify(watchScheduler, never()).pollNow(app);
+	}
+}